@@ -20,8 +20,11 @@ package absaliks.logxl;
 
 import absaliks.logxl.config.Config;
 import absaliks.logxl.config.ConfigSerializer;
+import absaliks.logxl.config.SourceConfig;
 import absaliks.logxl.filesource.LogFileSource;
+import absaliks.logxl.report.LiveReportService;
 import absaliks.logxl.report.ReportService;
+import absaliks.logxl.schedule.ReportScheduler;
 
 public interface AbstractFactory {
 
@@ -31,5 +34,11 @@ public interface AbstractFactory {
 
   LogFileSource createLogFileSource();
 
+  LogFileSource createLogFileSource(SourceConfig source);
+
   ReportService createReportService();
+
+  LiveReportService createLiveReportService();
+
+  ReportScheduler createReportScheduler();
 }
@@ -20,10 +20,14 @@ package absaliks.logxl;
 
 import absaliks.logxl.config.Config;
 import absaliks.logxl.config.ConfigSerializer;
+import absaliks.logxl.config.SourceConfig;
 import absaliks.logxl.filesource.FtpFileSource;
 import absaliks.logxl.filesource.LocalFileSource;
 import absaliks.logxl.filesource.LogFileSource;
+import absaliks.logxl.report.LiveReportService;
 import absaliks.logxl.report.ReportService;
+import absaliks.logxl.schedule.ReportScheduler;
+import absaliks.logxl.schedule.ScheduleSerializer;
 
 class Factory implements AbstractFactory {
   private final ConfigSerializer configSerializer;
@@ -46,11 +50,16 @@ class Factory implements AbstractFactory {
 
   @Override
   public LogFileSource createLogFileSource() {
-    switch (config.logsSource) {
+    return createLogFileSource(config.getPrimarySource());
+  }
+
+  @Override
+  public LogFileSource createLogFileSource(SourceConfig source) {
+    switch (source.logsSource) {
       case FTP:
-        return new FtpFileSource(config);
+        return new FtpFileSource(source, config.ftpMaxConnections);
       case LOCAL_DIR:
-        return new LocalFileSource(config.localDirectory);
+        return new LocalFileSource(source.directory);
     }
     throw new UnsupportedOperationException();
   }
@@ -59,4 +68,14 @@ class Factory implements AbstractFactory {
   public ReportService createReportService() {
     return new ReportService(this);
   }
+
+  @Override
+  public LiveReportService createLiveReportService() {
+    return new LiveReportService(this);
+  }
+
+  @Override
+  public ReportScheduler createReportScheduler() {
+    return new ReportScheduler(this, new ScheduleSerializer().load());
+  }
 }
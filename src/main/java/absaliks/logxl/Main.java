@@ -19,9 +19,14 @@
 package absaliks.logxl;
 
 import absaliks.logxl.config.Config;
+import absaliks.logxl.report.LiveReportService;
 import absaliks.logxl.report.ReportService;
+import absaliks.logxl.schedule.ReportScheduler;
+import absaliks.logxl.shard.ShardCoordinator;
+import absaliks.logxl.shard.ShardWorker;
 import absaliks.logxl.ui.JFXLauncher;
 import com.airhacks.afterburner.injection.Injector;
+import java.util.Arrays;
 import javafx.application.Application;
 
 public class Main {
@@ -32,11 +37,29 @@ public class Main {
 
   private static final AbstractFactory factory = new Factory();
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws InterruptedException {
+    if (Arrays.asList(args).contains(ShardCoordinator.WORKER_ARGUMENT)) {
+      // a part of a sharded report run, the task comes on the standard input
+      System.exit(new ShardWorker(factory).run() ? 0 : 1);
+    }
+    ReportService.warmUpExport();
+    final ReportScheduler scheduler = factory.createReportScheduler();
+    if (Arrays.asList(args).contains("--schedule")) {
+      // no window, only the scheduled jobs until the process is killed
+      scheduler.start();
+      if (scheduler.hasJobs()) {
+        scheduler.awaitTermination();
+      }
+      return;
+    }
+
     Injector.setModelOrService(Config.class, factory.getConfig());
     Injector.setModelOrService(ReportService.class, factory.createReportService());
+    Injector.setModelOrService(LiveReportService.class, factory.createLiveReportService());
 
+    scheduler.start();
     Application.launch(JFXLauncher.class);
+    scheduler.stop();
     factory.getConfigSerializer().save(factory.getConfig());
   }
 }
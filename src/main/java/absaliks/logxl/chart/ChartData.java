@@ -0,0 +1,135 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.chart;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records of a period aggregated to every averaged report type. A chart is drawn from the coarsest
+ * level that still has a point per pixel in the visible range, downsampled by {@link Lttb}.
+ */
+public class ChartData {
+
+  private final List<ReportType> levels; // from the finest to the coarsest
+  private final List<List<Record>> records;
+
+  /**
+   * Copies the records out, so the builder may be closed afterwards.
+   */
+  public ChartData(FanOutReportBuilder rollups) {
+    levels = new ArrayList<>(rollups.getReportTypes());
+    records = new ArrayList<>(levels.size());
+    for (ReportType level : levels) {
+      records.add(new ArrayList<>(rollups.getRecords(level)));
+    }
+  }
+
+  public boolean isEmpty() {
+    return levels.isEmpty() || records.get(0).isEmpty();
+  }
+
+  public LocalDateTime getStart() {
+    return records.get(0).get(0).datetime;
+  }
+
+  public LocalDateTime getEnd() {
+    final List<Record> finest = records.get(0);
+    return finest.get(finest.size() - 1).datetime;
+  }
+
+  /**
+   * @param channel index in {@code Record.values}
+   */
+  public Series sample(int channel, LocalDateTime from, LocalDateTime to, int maxPoints) {
+    int levelIx = 0;
+    List<Record> range = Collections.emptyList();
+    for (int i = levels.size() - 1; i >= 0; i--) {
+      range = subList(records.get(i), from, to);
+      if (range.size() >= maxPoints || i == 0) {
+        levelIx = i;
+        break;
+      }
+    }
+
+    final double[] x = new double[range.size()];
+    final double[] y = new double[range.size()];
+    for (int i = 0; i < x.length; i++) {
+      final Record rec = range.get(i);
+      x[i] = toEpochSecond(rec.datetime);
+      y[i] = rec.values[channel];
+    }
+    final int[] indexes = Lttb.downsample(x, y, maxPoints);
+    final double[] sampledX = new double[indexes.length];
+    final double[] sampledY = new double[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      sampledX[i] = x[indexes[i]];
+      sampledY[i] = y[indexes[i]];
+    }
+    return new Series(levels.get(levelIx), sampledX, sampledY);
+  }
+
+  public static double toEpochSecond(LocalDateTime datetime) {
+    return datetime.toEpochSecond(ZoneOffset.UTC);
+  }
+
+  public static LocalDateTime fromEpochSecond(double second) {
+    return LocalDateTime.ofEpochSecond((long) second, 0, ZoneOffset.UTC);
+  }
+
+  private static List<Record> subList(List<Record> records, LocalDateTime from, LocalDateTime to) {
+    return records.subList(lowerBound(records, from), lowerBound(records, to.plusNanos(1)));
+  }
+
+  /**
+   * @return index of the first record that is not before the given time
+   */
+  private static int lowerBound(List<Record> records, LocalDateTime datetime) {
+    int low = 0;
+    int high = records.size();
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (records.get(middle).datetime.isBefore(datetime)) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  public static class Series {
+
+    public final ReportType level;
+    public final double[] x; // local epoch seconds
+    public final double[] y;
+
+    Series(ReportType level, double[] x, double[] y) {
+      this.level = level;
+      this.x = x;
+      this.y = y;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.chart;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling: keeps the first and the last points and from every
+ * bucket in between the point that forms the largest triangle with the point kept from the
+ * previous bucket and the average of the next one, which preserves the visual shape of the line.
+ */
+public final class Lttb {
+
+  private Lttb() {
+  }
+
+  /**
+   * @return indexes of the points to keep, in ascending order
+   */
+  public static int[] downsample(double[] x, double[] y, int threshold) {
+    final int length = x.length;
+    if (threshold >= length || threshold < 3) {
+      final int[] all = new int[length];
+      for (int i = 0; i < length; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+
+    final int[] sampled = new int[threshold];
+    final double bucketSize = (double) (length - 2) / (threshold - 2);
+    int previous = 0;
+    for (int bucket = 0; bucket < threshold - 2; bucket++) {
+      final int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+      final int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, length);
+      double avgX = 0;
+      double avgY = 0;
+      for (int i = nextStart; i < nextEnd; i++) {
+        avgX += x[i];
+        avgY += y[i];
+      }
+      avgX /= nextEnd - nextStart;
+      avgY /= nextEnd - nextStart;
+
+      final int start = (int) (bucket * bucketSize) + 1;
+      final int end = nextStart;
+      double maxArea = -1;
+      int selected = start;
+      for (int i = start; i < end; i++) {
+        final double area = Math.abs((x[previous] - avgX) * (y[i] - y[previous])
+            - (x[previous] - x[i]) * (avgY - y[previous]));
+        if (area > maxArea) {
+          maxArea = area;
+          selected = i;
+        }
+      }
+      sampled[bucket + 1] = selected;
+      previous = selected;
+    }
+    sampled[threshold - 1] = length - 1;
+    return sampled;
+  }
+}
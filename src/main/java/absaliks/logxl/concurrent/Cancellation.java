@@ -0,0 +1,78 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cooperative cancellation of a report run. Long loops poll {@link #throwIfCancelled()}, blocking
+ * I/O registers an action that unblocks it.
+ */
+public class Cancellation {
+
+  private static final Logger log = Logger.getLogger(Cancellation.class.getName());
+
+  private final List<Runnable> actions = new CopyOnWriteArrayList<>();
+  private volatile boolean isCancelled;
+  private volatile boolean isPartialResultRequested;
+
+  /**
+   * @param isPartialResultRequested whether the records gathered so far should still be exported
+   */
+  public void cancel(boolean isPartialResultRequested) {
+    this.isPartialResultRequested = isPartialResultRequested;
+    this.isCancelled = true;
+    for (Runnable action : actions) {
+      try {
+        action.run();
+      } catch (Exception e) {
+        log.log(Level.WARNING, "Cancellation action failed", e);
+      }
+    }
+  }
+
+  public boolean isCancelled() {
+    return isCancelled;
+  }
+
+  public boolean isPartialResultRequested() {
+    return isPartialResultRequested;
+  }
+
+  public void throwIfCancelled() {
+    if (isCancelled) {
+      throw new CancellationException("Формирование отчета отменено");
+    }
+  }
+
+  public void onCancel(Runnable action) {
+    actions.add(action);
+    if (isCancelled) {
+      action.run();
+    }
+  }
+
+  public void removeOnCancel(Runnable action) {
+    actions.remove(action);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
+
+/**
+ * Bounds the memory taken by the data read ahead of the consumer, shared by all the controllers
+ * of a report run. Every file pipeline opens a {@link Stream} that admits its files strictly in
+ * order, so that a file which the consumer waits for is never held back by the files after it.
+ * A stream with nothing in flight is always admitted, which keeps a single oversized file, or a
+ * controller starved by the others, from blocking forever.
+ */
+public class MemoryBudget {
+
+  private static final Logger log = Logger.getLogger(MemoryBudget.class.getName());
+
+  private final long limit;
+  private long inUse;
+  private long rows;
+  private long peak;
+  private long peakRows;
+
+  public MemoryBudget(long limit) {
+    this.limit = limit;
+  }
+
+  public Stream openStream(Cancellation cancellation) {
+    return new Stream(cancellation);
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+
+  public synchronized long getPeak() {
+    return peak;
+  }
+
+  public synchronized long getPeakRows() {
+    return peakRows;
+  }
+
+  private void add(long bytes, long rowsDelta) {
+    inUse += bytes;
+    rows += rowsDelta;
+    peak = Math.max(peak, inUse);
+    peakRows = Math.max(peakRows, rows);
+    if (bytes < 0) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Files of a single pipeline, numbered from zero in the order the consumer takes them.
+   */
+  public class Stream implements AutoCloseable {
+
+    private final Cancellation cancellation;
+    private final Runnable wakeUp = this::wakeUp;
+    private int nextSequence;
+    private long streamInUse;
+    private long streamRows;
+    private boolean isClosed;
+
+    private Stream(Cancellation cancellation) {
+      this.cancellation = cancellation;
+      cancellation.onCancel(wakeUp);
+    }
+
+    /**
+     * Waits for the files before this one and for enough free memory, then reserves it.
+     *
+     * @throws CancellationException if the run is cancelled or the stream is closed meanwhile
+     */
+    public void acquire(int sequence, long bytes) {
+      synchronized (MemoryBudget.this) {
+        boolean isThrottled = false;
+        while (sequence != nextSequence
+            || (streamInUse > 0 && inUse + bytes > limit)) {
+          if (sequence == nextSequence && !isThrottled) {
+            isThrottled = true;
+            log.fine("Файл " + sequence + " ждет освобождения памяти: занято " + inUse / 1024
+                + " КБ из " + limit / 1024);
+          }
+          throwIfStopped();
+          try {
+            MemoryBudget.this.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ожидание памяти прервано");
+          }
+        }
+        throwIfStopped();
+        nextSequence++;
+        streamInUse += bytes;
+        add(bytes, 0);
+        MemoryBudget.this.notifyAll();
+      }
+    }
+
+    /**
+     * Lets the files after this one through when this one failed before {@link #acquire}.
+     */
+    public void skip(int sequence) {
+      synchronized (MemoryBudget.this) {
+        while (sequence != nextSequence && !isClosed && !cancellation.isCancelled()) {
+          try {
+            MemoryBudget.this.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+        nextSequence++;
+        MemoryBudget.this.notifyAll();
+      }
+    }
+
+    /**
+     * Replaces the estimate made before reading by the size of the parsed rows. A file finished
+     * after the stream is closed has nothing reserved any more, so it is not counted.
+     */
+    public void adjust(long oldBytes, long newBytes, long rowsCount) {
+      synchronized (MemoryBudget.this) {
+        if (isClosed) {
+          return;
+        }
+        streamInUse += newBytes - oldBytes;
+        streamRows += rowsCount;
+        add(newBytes - oldBytes, rowsCount);
+      }
+    }
+
+    public void release(long bytes, long rowsCount) {
+      synchronized (MemoryBudget.this) {
+        if (isClosed) {
+          return;
+        }
+        streamInUse -= bytes;
+        streamRows -= rowsCount;
+        add(-bytes, -rowsCount);
+      }
+    }
+
+    /**
+     * Returns whatever is still reserved and fails the pending acquisitions.
+     */
+    @Override
+    public void close() {
+      cancellation.removeOnCancel(wakeUp);
+      synchronized (MemoryBudget.this) {
+        isClosed = true;
+        add(-streamInUse, -streamRows);
+        streamInUse = 0;
+        streamRows = 0;
+        MemoryBudget.this.notifyAll();
+      }
+    }
+
+    private void throwIfStopped() {
+      cancellation.throwIfCancelled();
+      if (isClosed) {
+        throw new CancellationException("Обработка файлов остановлена");
+      }
+    }
+
+    private void wakeUp() {
+      synchronized (MemoryBudget.this) {
+        MemoryBudget.this.notifyAll();
+      }
+    }
+  }
+}
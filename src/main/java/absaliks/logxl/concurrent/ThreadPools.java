@@ -0,0 +1,91 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class ThreadPools {
+
+  private static final Logger log = Logger.getLogger(ThreadPools.class.getName());
+
+  private ThreadPools() {
+  }
+
+  /**
+   * Executor for blocking I/O: a virtual thread per task when the runtime supports them (looked
+   * up reflectively, so the code still runs on Java 8), otherwise a fixed pool of platform threads.
+   */
+  public static ExecutorService newIoExecutor(String name, int platformThreads) {
+    return newIoExecutor(name, platformThreads, "newVirtualThreadPerTaskExecutor");
+  }
+
+  /**
+   * @param virtualFactory name of the {@link Executors} method that makes the virtual threads
+   */
+  static ExecutorService newIoExecutor(String name, int platformThreads, String virtualFactory) {
+    try {
+      Method factory = Executors.class.getMethod(virtualFactory);
+      ExecutorService executor = (ExecutorService) factory.invoke(null);
+      log.fine("Using virtual threads for " + name);
+      return executor;
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      log.log(Level.FINE, "Virtual threads are not available, using platform threads for " + name,
+          e);
+      return Executors.newFixedThreadPool(platformThreads, daemonThreadFactory(name));
+    }
+  }
+
+  /**
+   * Executor for CPU bound tasks, bounded by the number of processors.
+   */
+  public static ExecutorService newCpuExecutor(String name) {
+    return Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), daemonThreadFactory(name));
+  }
+
+  /**
+   * Executor for background tasks that must not keep the application running.
+   */
+  public static ExecutorService newBackgroundExecutor(String name) {
+    return Executors.newSingleThreadExecutor(daemonThreadFactory(name));
+  }
+
+  /**
+   * Scheduler of background tasks that must not keep the application running.
+   */
+  public static ScheduledExecutorService newBackgroundScheduler(String name) {
+    return Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(name));
+  }
+
+  private static ThreadFactory daemonThreadFactory(String name) {
+    final AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
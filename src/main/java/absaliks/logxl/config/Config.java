@@ -18,14 +18,25 @@
 
 package absaliks.logxl.config;
 
+import static absaliks.logxl.log.LogsSource.LOCAL_DIR;
+
+import absaliks.logxl.log.ChannelSelection;
 import absaliks.logxl.log.LogsSource;
+import absaliks.logxl.report.ExportFormat;
+import absaliks.logxl.report.MultiSourceLayout;
 import absaliks.logxl.report.ReportType;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 import lombok.ToString;
 
 @ToString
 public class Config {
   public ReportType reportType;
+  public Set<ReportType> additionalReportTypes = EnumSet.noneOf(ReportType.class);
   public LocalDateTime dateFrom;
   public LocalDateTime dateTo;
   public LogsSource logsSource;
@@ -39,5 +50,47 @@ public class Config {
   public String userName;
   public String userPhone;
 
+  public int livePollSeconds;
+  public boolean parallelIo;
+  public int ioParallelism;
+  public int ftpMaxConnections;
+  public int straightBufferMb;
+  public int memoryBudgetMb; // half of the heap when not set
+  public int shardWorkers; // worker processes of a report run, none when less than 2
+  public String shardWorkerCommand; // local JVM when empty
+  public int shardTimeoutMinutes; // no limit when not set
+
+  public List<SourceConfig> sources = new ArrayList<>();
+  public MultiSourceLayout multiSourceLayout = MultiSourceLayout.SHEETS;
+
+  public ExportFormat exportFormat = ExportFormat.XLSX;
+  public boolean exportGzip;
+  public String outputDirectory; // working directory when empty
+  public String reportFileName = "report";
+  public int reportCacheSize = 5; // recent runs whose reports are kept, none when 0
+
   public boolean isSilent;
+  public boolean dropDuplicates = true;
+  public boolean dataQuality;
+  public List<Double> percentiles = Collections.emptyList(); // of every channel, ascending
+  public String rowFilter;
+  public ChannelSelection channels = ChannelSelection.ALL;
+
+  /**
+   * Returns additional controllers if configured, or the single source edited on the dashboard.
+   */
+  public List<SourceConfig> getSources() {
+    return sources.isEmpty() ? Collections.singletonList(getPrimarySource()) : sources;
+  }
+
+  public SourceConfig getPrimarySource() {
+    SourceConfig source = new SourceConfig();
+    source.logsSource = logsSource;
+    source.directory = logsSource == LOCAL_DIR ? localDirectory : ftpDirectory;
+    source.ftpServer = ftpServer;
+    source.ftpPort = ftpPort;
+    source.ftpLogin = ftpLogin;
+    source.ftpPassword = ftpPassword;
+    return source;
+  }
 }
@@ -20,6 +20,7 @@ package absaliks.logxl.config;
 
 interface ConfigProperties {
   String REPORT_TYPE = "reportType";
+  String ADDITIONAL_REPORT_TYPES = "additionalReportTypes";
   String DATE_FROM = "dateFrom";
   String DATE_TO = "dateTo";
   String LOGS_SOURCE = "logsSource";
@@ -37,5 +38,30 @@ interface ConfigProperties {
   String USER_NAME = "userName";
   String USER_PHONE = "userPhone";
 
+  String LIVE_POLL_SECONDS = "livePollSeconds";
+  String PARALLEL_IO = "parallelIo";
+  String IO_PARALLELISM = "ioParallelism";
+  String FTP_MAX_CONNECTIONS = "ftpMaxConnections";
+  String STRAIGHT_BUFFER_MB = "straightBufferMb";
+  String MEMORY_BUDGET_MB = "memoryBudgetMb";
+  String SHARD_WORKERS = "shardWorkers";
+  String SHARD_WORKER_COMMAND = "shardWorkerCommand";
+  String SHARD_TIMEOUT_MINUTES = "shardTimeoutMinutes";
+
+  String SOURCE_PREFIX = "source.";
+  String SOURCE_LOGS_SOURCE = "logsSource";
+  String SOURCE_DIRECTORY = "directory";
+  String MULTI_SOURCE_LAYOUT = "multiSourceLayout";
+  String EXPORT_FORMAT = "exportFormat";
+  String EXPORT_GZIP = "exportGzip";
+  String OUTPUT_DIRECTORY = "outputDirectory";
+  String REPORT_FILE_NAME = "reportFileName";
+  String REPORT_CACHE_SIZE = "reportCacheSize";
+  String DROP_DUPLICATES = "dropDuplicates";
+  String DATA_QUALITY = "dataQuality";
+  String PERCENTILES = "percentiles";
+  String ROW_FILTER = "rowFilter";
+  String CHANNELS = "channels";
+
   String SILENT = "silent";
 }
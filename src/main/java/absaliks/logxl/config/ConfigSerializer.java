@@ -18,22 +18,50 @@
 
 package absaliks.logxl.config;
 
+import static absaliks.logxl.config.ConfigProperties.ADDITIONAL_REPORT_TYPES;
+import static absaliks.logxl.config.ConfigProperties.CHANNELS;
+import static absaliks.logxl.config.ConfigProperties.DATA_QUALITY;
 import static absaliks.logxl.config.ConfigProperties.DATE_FROM;
 import static absaliks.logxl.config.ConfigProperties.DATE_TO;
+import static absaliks.logxl.config.ConfigProperties.DROP_DUPLICATES;
+import static absaliks.logxl.config.ConfigProperties.EXPORT_FORMAT;
+import static absaliks.logxl.config.ConfigProperties.EXPORT_GZIP;
 import static absaliks.logxl.config.ConfigProperties.FTP_DIRECTORY;
 import static absaliks.logxl.config.ConfigProperties.FTP_LOGIN;
+import static absaliks.logxl.config.ConfigProperties.FTP_MAX_CONNECTIONS;
 import static absaliks.logxl.config.ConfigProperties.FTP_PASSWORD;
 import static absaliks.logxl.config.ConfigProperties.FTP_PORT;
 import static absaliks.logxl.config.ConfigProperties.FTP_SERVER_NAME;
+import static absaliks.logxl.config.ConfigProperties.IO_PARALLELISM;
+import static absaliks.logxl.config.ConfigProperties.LIVE_POLL_SECONDS;
 import static absaliks.logxl.config.ConfigProperties.LOCAL_DIRECTORY;
 import static absaliks.logxl.config.ConfigProperties.LOGS_SOURCE;
+import static absaliks.logxl.config.ConfigProperties.MEMORY_BUDGET_MB;
+import static absaliks.logxl.config.ConfigProperties.MULTI_SOURCE_LAYOUT;
+import static absaliks.logxl.config.ConfigProperties.OUTPUT_DIRECTORY;
+import static absaliks.logxl.config.ConfigProperties.PARALLEL_IO;
+import static absaliks.logxl.config.ConfigProperties.PERCENTILES;
+import static absaliks.logxl.config.ConfigProperties.REPORT_CACHE_SIZE;
+import static absaliks.logxl.config.ConfigProperties.REPORT_FILE_NAME;
 import static absaliks.logxl.config.ConfigProperties.REPORT_TYPE;
+import static absaliks.logxl.config.ConfigProperties.ROW_FILTER;
 import static absaliks.logxl.config.ConfigProperties.SAVE_PASSWORD;
+import static absaliks.logxl.config.ConfigProperties.SHARD_TIMEOUT_MINUTES;
+import static absaliks.logxl.config.ConfigProperties.SHARD_WORKERS;
+import static absaliks.logxl.config.ConfigProperties.SHARD_WORKER_COMMAND;
 import static absaliks.logxl.config.ConfigProperties.SILENT;
+import static absaliks.logxl.config.ConfigProperties.SOURCE_DIRECTORY;
+import static absaliks.logxl.config.ConfigProperties.SOURCE_LOGS_SOURCE;
+import static absaliks.logxl.config.ConfigProperties.SOURCE_PREFIX;
+import static absaliks.logxl.config.ConfigProperties.STRAIGHT_BUFFER_MB;
 import static absaliks.logxl.config.ConfigProperties.USER_NAME;
 import static absaliks.logxl.config.ConfigProperties.USER_PHONE;
 
+import absaliks.logxl.log.ChannelSelection;
 import absaliks.logxl.log.LogsSource;
+import absaliks.logxl.report.Channels;
+import absaliks.logxl.report.ExportFormat;
+import absaliks.logxl.report.MultiSourceLayout;
 import absaliks.logxl.report.ReportType;
 import java.io.File;
 import java.io.FileInputStream;
@@ -43,10 +71,19 @@ import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
 public class ConfigSerializer {
@@ -54,12 +91,38 @@ public class ConfigSerializer {
   private static final Logger log = Logger.getLogger(ConfigSerializer.class.getName());
 
   private static final String PROPERTY_FILE_COMMENTS =
-      "reportType:   {MINUTELY, HOURLY, DAILY}\n" +
-      "date format:  1970-12-31T23:59:59";
+      "reportType:   {STRAIGHT, MINUTELY, MINUTES_5, MINUTES_10, MINUTES_15, HOURLY, SHIFT_8H,\n" +
+      "              DAILY}\n" +
+      "additionalReportTypes: comma separated report types exported in the same run\n" +
+      "date format:  1970-12-31T23:59:59\n" +
+      "source.<prefix>.{logsSource, directory, ftpServerName, ftpPort, ftpLogin, ftpPassword}:\n" +
+      "              additional controllers merged into one report\n" +
+      "multiSourceLayout: {SHEETS, WIDE}\n" +
+      "exportFormat: {XLSX, CSV, TSV}, exportGzip compresses CSV and TSV reports\n" +
+      "outputDirectory, reportFileName: where reports are written, e.g. report_hourly.xlsx\n" +
+      "reportCacheSize: reports of recent runs reused while settings and files stay the same,\n" +
+      "              0 turns it off\n" +
+      "dropDuplicates: keep only the first record of the same second from overlapping files\n" +
+      "dataQuality:  export samples, missing seconds, duplicates and out of order records of\n" +
+      "              every aggregated row\n" +
+      "percentiles:  e.g. 50, 95 - estimated percentiles of every channel in averaged reports\n" +
+      "rowFilter:    e.g. ch5 > 0,5 && (cable || !heater), ch<N> is the N-th measurement column\n" +
+      "channels:     e.g. 1,2,5,heater - parsed and exported columns, all when empty\n" +
+      "straightBufferMb: memory for raw records of STRAIGHT report, the rest goes to temp files\n" +
+      "memoryBudgetMb: memory for files read ahead of parsing, half of the heap when empty\n" +
+      "shardWorkers: worker processes sharing the files of an averaged report, e.g. 4\n" +
+      "shardWorkerCommand: command starting a worker, e.g. ssh host java -jar logxl.jar,\n" +
+      "              a local JVM when empty\n" +
+      "shardTimeoutMinutes: workers still running after it are stopped and the run fails,\n" +
+      "              e.g. 120, no limit when empty";
 
   private static final String CONFIG_FILE_PATH =
       System.getProperty("user.dir") + System.getProperty("file.separator") + "config.properties";
   private static final int DEFAULT_FTP_PORT = 21;
+  private static final int DEFAULT_LIVE_POLL_SECONDS = 10;
+  private static final int DEFAULT_IO_PARALLELISM = 64;
+  private static final int DEFAULT_FTP_MAX_CONNECTIONS = 4;
+  private static final int DEFAULT_STRAIGHT_BUFFER_MB = 64;
   private static final LocalDate TODAY = LocalDate.now();
 
   public Config load() {
@@ -84,12 +147,18 @@ public class ConfigSerializer {
     config.dateTo = LocalDateTime.of(TODAY, LocalTime.of(23, 59, 59));
     config.reportType = ReportType.DAILY;
     config.logsSource = LogsSource.FTP;
+    config.livePollSeconds = DEFAULT_LIVE_POLL_SECONDS;
+    config.ioParallelism = DEFAULT_IO_PARALLELISM;
+    config.ftpMaxConnections = DEFAULT_FTP_MAX_CONNECTIONS;
+    config.straightBufferMb = DEFAULT_STRAIGHT_BUFFER_MB;
     return config;
   }
 
   private Config mapPropertiesToConfig(Properties properties) {
     Config c = getDefaultConfig();
     c.reportType = getEnum(ReportType.class, properties.getProperty(REPORT_TYPE), c.reportType);
+    c.additionalReportTypes = getEnumSet(ReportType.class,
+        properties.getProperty(ADDITIONAL_REPORT_TYPES));
     c.dateFrom = parseDateTime(properties.getProperty(DATE_FROM), c.dateFrom);
     c.dateTo = parseDateTime(properties.getProperty(DATE_TO), c.dateTo);
     c.logsSource = getEnum(LogsSource.class, properties.getProperty(LOGS_SOURCE), c.logsSource);
@@ -102,11 +171,93 @@ public class ConfigSerializer {
     c.savePassword = BooleanUtils.toBoolean(properties.getProperty(SAVE_PASSWORD));
     c.userName = properties.getProperty(USER_NAME);
     c.userPhone = properties.getProperty(USER_PHONE);
+    c.livePollSeconds = NumberUtils.toInt(properties.getProperty(LIVE_POLL_SECONDS),
+        DEFAULT_LIVE_POLL_SECONDS);
+    c.parallelIo = BooleanUtils.toBoolean(properties.getProperty(PARALLEL_IO));
+    c.ioParallelism = NumberUtils.toInt(properties.getProperty(IO_PARALLELISM),
+        DEFAULT_IO_PARALLELISM);
+    c.ftpMaxConnections = NumberUtils.toInt(properties.getProperty(FTP_MAX_CONNECTIONS),
+        DEFAULT_FTP_MAX_CONNECTIONS);
+    c.straightBufferMb = NumberUtils.toInt(properties.getProperty(STRAIGHT_BUFFER_MB),
+        DEFAULT_STRAIGHT_BUFFER_MB);
+    c.memoryBudgetMb = NumberUtils.toInt(properties.getProperty(MEMORY_BUDGET_MB));
+    c.shardWorkers = NumberUtils.toInt(properties.getProperty(SHARD_WORKERS));
+    c.shardWorkerCommand = properties.getProperty(SHARD_WORKER_COMMAND);
+    c.shardTimeoutMinutes = NumberUtils.toInt(properties.getProperty(SHARD_TIMEOUT_MINUTES));
+
+    c.sources = parseSources(properties);
+    c.multiSourceLayout = getEnum(MultiSourceLayout.class,
+        properties.getProperty(MULTI_SOURCE_LAYOUT), c.multiSourceLayout);
+    c.exportFormat = getEnum(ExportFormat.class, properties.getProperty(EXPORT_FORMAT),
+        c.exportFormat);
+    c.exportGzip = BooleanUtils.toBoolean(properties.getProperty(EXPORT_GZIP));
+    c.outputDirectory = properties.getProperty(OUTPUT_DIRECTORY);
+    c.reportFileName = StringUtils.defaultIfBlank(properties.getProperty(REPORT_FILE_NAME),
+        c.reportFileName);
+    c.reportCacheSize = NumberUtils.toInt(properties.getProperty(REPORT_CACHE_SIZE),
+        c.reportCacheSize);
+    c.dropDuplicates = BooleanUtils.toBoolean(properties.getProperty(DROP_DUPLICATES, "true"));
+    c.dataQuality = BooleanUtils.toBoolean(properties.getProperty(DATA_QUALITY));
+    c.percentiles = parsePercentiles(properties.getProperty(PERCENTILES));
+    c.rowFilter = properties.getProperty(ROW_FILTER);
+    c.channels = parseChannels(properties.getProperty(CHANNELS));
 
     c.isSilent = BooleanUtils.toBoolean(properties.getProperty(SILENT, "true"));
     return c;
   }
 
+  private List<SourceConfig> parseSources(Properties properties) {
+    final Map<String, SourceConfig> sources = new TreeMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      int prefixEnd = key.lastIndexOf('.');
+      if (key.startsWith(SOURCE_PREFIX) && prefixEnd > SOURCE_PREFIX.length()) {
+        String prefix = key.substring(SOURCE_PREFIX.length(), prefixEnd);
+        sources.computeIfAbsent(prefix, p -> parseSource(properties, p));
+      }
+    }
+    return new ArrayList<>(sources.values());
+  }
+
+  private SourceConfig parseSource(Properties properties, String prefix) {
+    SourceConfig s = new SourceConfig();
+    s.prefix = prefix;
+    s.logsSource = getEnum(LogsSource.class,
+        properties.getProperty(sourceKey(prefix, SOURCE_LOGS_SOURCE)), LogsSource.FTP);
+    s.directory = properties.getProperty(sourceKey(prefix, SOURCE_DIRECTORY));
+    s.ftpServer = properties.getProperty(sourceKey(prefix, FTP_SERVER_NAME));
+    s.ftpPort = NumberUtils.toInt(properties.getProperty(sourceKey(prefix, FTP_PORT)),
+        DEFAULT_FTP_PORT);
+    s.ftpLogin = properties.getProperty(sourceKey(prefix, FTP_LOGIN));
+    s.ftpPassword = properties.getProperty(sourceKey(prefix, FTP_PASSWORD));
+    return s;
+  }
+
+  private ChannelSelection parseChannels(String text) {
+    try {
+      return ChannelSelection.parse(text);
+    } catch (IllegalArgumentException e) {
+      log.warning(e.getMessage() + ", выгружаются все каналы");
+      return ChannelSelection.ALL;
+    }
+  }
+
+  private List<Double> parsePercentiles(String text) {
+    final TreeSet<Double> percentiles = new TreeSet<>();
+    for (String item : StringUtils.split(StringUtils.defaultString(text), ", ")) {
+      final double percentile = NumberUtils.toDouble(item, Double.NaN);
+      if (percentile >= 0 && percentile <= 100) {
+        percentiles.add(percentile);
+      } else {
+        log.warning("Процентиль " + item + " пропущен, допустимы значения от 0 до 100");
+      }
+    }
+    return new ArrayList<>(percentiles);
+  }
+
+  private static String sourceKey(String prefix, String property) {
+    return SOURCE_PREFIX + prefix + "." + property;
+  }
+
   private <E extends Enum<E>> E getEnum(final Class<E> enumClass, final String enumName,
       E defaultValue) {
     try {
@@ -116,6 +267,24 @@ public class ConfigSerializer {
     }
   }
 
+  private <E extends Enum<E>> Set<E> getEnumSet(final Class<E> enumClass, final String names) {
+    final Set<E> result = EnumSet.noneOf(enumClass);
+    for (String name : StringUtils.split(StringUtils.defaultString(names), ", ")) {
+      E value = getEnum(enumClass, name.toUpperCase(), null);
+      if (value != null) {
+        result.add(value);
+      } else {
+        log.warning("Неизвестное значение " + name + " пропущено");
+      }
+    }
+    return result;
+  }
+
+  private String joinEnumSet(Set<? extends Enum<?>> values) {
+    return values.isEmpty() ? null
+        : values.stream().map(Enum::name).collect(Collectors.joining(","));
+  }
+
   private LocalDateTime parseDateTime(String text, LocalDateTime defaultValue) {
     try {
       return LocalDateTime.parse(text);
@@ -132,9 +301,42 @@ public class ConfigSerializer {
     }
   }
 
+  /**
+   * Returns an independent copy of the settings, including the passwords that are not saved.
+   */
+  public Config copy(Config config) {
+    final Config copy = mapPropertiesToConfig(mapConfigToProperties(config));
+    copy.ftpPassword = config.ftpPassword;
+    for (int i = 0; i < copy.sources.size(); i++) {
+      copy.sources.get(i).ftpPassword = config.sources.get(i).ftpPassword;
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the settings with the passwords that are not saved and the options that are only read
+   * from the file, to hand them over to a worker process.
+   */
+  public Properties toTransferProperties(Config config) {
+    final Properties properties = mapConfigToProperties(config);
+    properties.setProperty(FTP_PASSWORD, config.ftpPassword);
+    for (SourceConfig s : config.sources) {
+      properties.setProperty(sourceKey(s.prefix, FTP_PASSWORD), s.ftpPassword);
+    }
+    properties.setProperty(SILENT, Boolean.toString(config.isSilent));
+    final Properties plain = new Properties();
+    plain.putAll(properties);
+    return plain;
+  }
+
+  public Config fromTransferProperties(Properties properties) {
+    return mapPropertiesToConfig(properties);
+  }
+
   private Properties mapConfigToProperties(Config config) {
     Properties properties = new NullSafeProperties();
     properties.setProperty(REPORT_TYPE, config.reportType.name());
+    properties.setProperty(ADDITIONAL_REPORT_TYPES, joinEnumSet(config.additionalReportTypes));
     properties.setProperty(DATE_FROM, config.dateFrom.toString());
     properties.setProperty(DATE_TO, config.dateTo.toString());
     properties.setProperty(LOGS_SOURCE, config.logsSource.name());
@@ -153,6 +355,46 @@ public class ConfigSerializer {
 
     properties.setProperty(USER_NAME, config.userName);
     properties.setProperty(USER_PHONE, config.userPhone);
+    properties.setProperty(LIVE_POLL_SECONDS, Integer.toString(config.livePollSeconds));
+    properties.setProperty(PARALLEL_IO, Boolean.toString(config.parallelIo));
+    properties.setProperty(IO_PARALLELISM, Integer.toString(config.ioParallelism));
+    properties.setProperty(FTP_MAX_CONNECTIONS, Integer.toString(config.ftpMaxConnections));
+    properties.setProperty(STRAIGHT_BUFFER_MB, Integer.toString(config.straightBufferMb));
+    if (config.memoryBudgetMb > 0) {
+      properties.setProperty(MEMORY_BUDGET_MB, Integer.toString(config.memoryBudgetMb));
+    }
+    if (config.shardWorkers > 1) {
+      properties.setProperty(SHARD_WORKERS, Integer.toString(config.shardWorkers));
+    }
+    properties.setProperty(SHARD_WORKER_COMMAND, config.shardWorkerCommand);
+    if (config.shardTimeoutMinutes > 0) {
+      properties.setProperty(SHARD_TIMEOUT_MINUTES, Integer.toString(config.shardTimeoutMinutes));
+    }
+
+    for (SourceConfig s : config.sources) {
+      properties.setProperty(sourceKey(s.prefix, SOURCE_LOGS_SOURCE), s.logsSource.name());
+      properties.setProperty(sourceKey(s.prefix, SOURCE_DIRECTORY), s.directory);
+      properties.setProperty(sourceKey(s.prefix, FTP_SERVER_NAME), s.ftpServer);
+      properties.setProperty(sourceKey(s.prefix, FTP_PORT), Integer.toString(s.ftpPort));
+      properties.setProperty(sourceKey(s.prefix, FTP_LOGIN), s.ftpLogin);
+      if (config.savePassword) {
+        properties.setProperty(sourceKey(s.prefix, FTP_PASSWORD), s.ftpPassword);
+      }
+    }
+    properties.setProperty(MULTI_SOURCE_LAYOUT, config.multiSourceLayout.name());
+    properties.setProperty(EXPORT_FORMAT, config.exportFormat.name());
+    properties.setProperty(EXPORT_GZIP, Boolean.toString(config.exportGzip));
+    properties.setProperty(OUTPUT_DIRECTORY, config.outputDirectory);
+    properties.setProperty(REPORT_FILE_NAME, config.reportFileName);
+    properties.setProperty(REPORT_CACHE_SIZE, Integer.toString(config.reportCacheSize));
+    properties.setProperty(DROP_DUPLICATES, Boolean.toString(config.dropDuplicates));
+    properties.setProperty(DATA_QUALITY, Boolean.toString(config.dataQuality));
+    properties.setProperty(PERCENTILES, config.percentiles.stream()
+        .map(Channels::formatPercentile).collect(Collectors.joining(", ")));
+    properties.setProperty(ROW_FILTER, config.rowFilter);
+    if (config.channels != ChannelSelection.ALL) {
+      properties.setProperty(CHANNELS, config.channels.toString());
+    }
     return properties;
   }
 }
@@ -20,6 +20,10 @@ package absaliks.logxl.filesource;
 
 class ConnectionException extends RuntimeException {
 
+  ConnectionException(String message) {
+    super(message);
+  }
+
   ConnectionException(String message, Throwable cause) {
     super(message, cause);
   }
@@ -18,94 +18,280 @@
 
 package absaliks.logxl.filesource;
 
-import absaliks.logxl.config.Config;
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.config.SourceConfig;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 
+/**
+ * Files may be fetched from several threads at once, each download takes its own connection out of
+ * a pool of at most {@code maxConnections}.
+ */
 public class FtpFileSource implements LogFileSource {
 
   private static final Logger log = Logger.getLogger(FtpFileSource.class.getName());
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final SourceConfig source;
+  private final int maxConnections;
+  private final List<FTPClient> clients = new CopyOnWriteArrayList<>();
+  private final BlockingQueue<FTPClient> idleClients = new LinkedBlockingQueue<>();
+  private final Map<String, Long> remoteSizes = new ConcurrentHashMap<>();
+  private final Map<String, String> remoteStamps = new ConcurrentHashMap<>();
+  private final Map<String, Long> fetchedSizes = new ConcurrentHashMap<>();
+  private volatile Cancellation cancellation = new Cancellation();
+  private volatile boolean isDestroyed;
 
-  private final Config config;
-  private FTPClient ftpClient = new FTPClient();
+  public FtpFileSource(SourceConfig source) {
+    this(source, 1);
+  }
 
-  public FtpFileSource(Config config) {
-    this.config = config;
+  public FtpFileSource(SourceConfig source, int maxConnections) {
+    this.source = source;
+    this.maxConnections = Math.max(1, maxConnections);
   }
 
   @Override
   public void initialize() {
-    tryConnect();
-    tryLogin();
+    idleClients.add(openClient());
   }
 
+  /**
+   * Disconnects all the connections. A download still running after this fails instead of opening
+   * a new one.
+   */
   @Override
   public void destroy() {
-    tryDisconnect();
+    synchronized (clients) {
+      isDestroyed = true;
+    }
+    idleClients.clear();
+    for (FTPClient client : clients) {
+      tryDisconnect(client);
+    }
+    clients.clear();
+  }
+
+  @Override
+  public void setCancellation(Cancellation cancellation) {
+    this.cancellation = cancellation;
   }
 
   @Override
   public List<String> getFileList() throws IOException {
-    return Arrays.stream(ftpClient.listFiles(config.ftpDirectory))
-        .filter(FTPFile::isFile)
-        .map(FTPFile::getName)
-        .collect(Collectors.toList());
+    final FTPClient ftpClient = borrowClient();
+    try {
+      final List<FTPFile> files = new ArrayList<>();
+      for (FTPFile file : ftpClient.listFiles(source.directory)) {
+        if (file.isFile()) {
+          files.add(file);
+          remoteSizes.put(file.getName(), file.getSize());
+          remoteStamps.put(file.getName(), file.getTimestamp() != null
+              ? file.getSize() + "@" + file.getTimestamp().getTimeInMillis()
+              : Long.toString(file.getSize()));
+        }
+      }
+      return files.stream().map(FTPFile::getName).collect(Collectors.toList());
+    } finally {
+      releaseClient(ftpClient, true);
+    }
+  }
+
+  /**
+   * Known for the files of the last listing only; servers that do not report the time are told
+   * by the size, which is enough for logs that are only appended to.
+   */
+  @Override
+  public String getFileStamp(String filename) {
+    return remoteStamps.get(filename);
   }
 
   @Override
   public File getFile(String filename) {
-    File cachedFile = new File("cache/" + filename);
-    if (cachedFile.exists()) {
-      cachedFile.delete();
-    } else {
+    File cachedFile = getCachedFile(filename);
+    fetchedSizes.remove(filename);
+    retrieveFile(filename, cachedFile, false);
+    return cachedFile;
+  }
+
+  @Override
+  public File refreshFile(String filename) {
+    File cachedFile = getCachedFile(filename);
+    Long fetchedSize = fetchedSizes.get(filename);
+    Long remoteSize = remoteSizes.get(filename);
+    if (fetchedSize == null || !cachedFile.exists() || cachedFile.length() != fetchedSize
+        || remoteSize == null || remoteSize < fetchedSize) {
+      retrieveFile(filename, cachedFile, false);
+    } else if (remoteSize > fetchedSize) {
+      retrieveFile(filename, cachedFile, true);
+    }
+    return cachedFile;
+  }
+
+  private File getCachedFile(String filename) {
+    String cacheDir = source.prefix != null ? "cache/" + source.prefix + "/" : "cache/";
+    File cachedFile = new File(cacheDir + filename);
+    if (!cachedFile.exists()) {
       cachedFile.getParentFile().mkdirs();
     }
-    retrieveFile(filename, cachedFile);
     return cachedFile;
   }
 
-  private void retrieveFile(String remoteFilename, File localFile) {
-    try (FileOutputStream stream = new FileOutputStream(localFile)) {
-      this.ftpClient.retrieveFile(config.ftpDirectory + "/" + remoteFilename, stream);
+  /**
+   * Downloads the file in binary mode, so that the size of the local copy matches the size on the
+   * server and may be used as the REST offset of the next call.
+   */
+  private void retrieveFile(String remoteFilename, File localFile, boolean isAppend) {
+    final FTPClient ftpClient = borrowClient();
+    boolean isReusable = false;
+    try (FileOutputStream stream = new FileOutputStream(localFile, isAppend)) {
+      ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+      if (isAppend) {
+        ftpClient.setRestartOffset(localFile.length());
+      }
+      if (download(ftpClient, source.directory + "/" + remoteFilename, stream)) {
+        fetchedSizes.put(remoteFilename, localFile.length());
+      }
+      isReusable = true;
     } catch (IOException e) {
+      cancellation.throwIfCancelled();
       log.log(Level.WARNING, "Не удалось скачать файл " + remoteFilename);
       e.printStackTrace();
+    } finally {
+      releaseClient(ftpClient, isReusable);
     }
   }
 
-  private void tryLogin() {
+  /**
+   * Copies the file chunk by chunk, so that cancellation takes effect in the middle of a large
+   * file. Closing the data stream on cancel also unblocks a stalled transfer.
+   */
+  private boolean download(FTPClient ftpClient, String remotePath, FileOutputStream target)
+      throws IOException {
+    final InputStream stream = ftpClient.retrieveFileStream(remotePath);
+    if (stream == null) {
+      return false;
+    }
+    final Runnable closeStream = () -> {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        log.log(Level.FINE, "Unable to close data connection", e);
+      }
+    };
+    cancellation.onCancel(closeStream);
+    try {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while ((count = stream.read(buffer)) != -1) {
+        cancellation.throwIfCancelled();
+        target.write(buffer, 0, count);
+      }
+    } finally {
+      cancellation.removeOnCancel(closeStream);
+      stream.close();
+    }
+    return ftpClient.completePendingCommand();
+  }
+
+  private FTPClient borrowClient() {
+    throwIfDestroyed();
+    FTPClient client = idleClients.poll();
+    if (client != null) {
+      return client;
+    }
+    synchronized (clients) {
+      throwIfDestroyed();
+      if (clients.size() < maxConnections) {
+        return openClient();
+      }
+    }
+    try {
+      while ((client = idleClients.poll(1, TimeUnit.SECONDS)) == null) {
+        throwIfDestroyed();
+      }
+      return client;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConnectionException("Ожидание свободного соединения прервано", e);
+    }
+  }
+
+  /**
+   * A connection left in the middle of a transfer can not be reused, so a replacement is opened
+   * for the threads that may be waiting for it.
+   */
+  private void releaseClient(FTPClient client, boolean isReusable) {
+    if (isReusable && client.isConnected() && !isDestroyed) {
+      idleClients.add(client);
+      return;
+    }
+    clients.remove(client);
+    tryDisconnect(client);
+    synchronized (clients) {
+      if (!cancellation.isCancelled() && !isDestroyed) {
+        idleClients.add(openClient());
+      }
+    }
+  }
+
+  private void throwIfDestroyed() {
+    if (isDestroyed) {
+      throw new ConnectionException("Соединения с сервером уже закрыты");
+    }
+  }
+
+  private FTPClient openClient() {
+    final FTPClient client = new FTPClient();
+    tryConnect(client);
+    tryLogin(client);
+    clients.add(client);
+    return client;
+  }
+
+  private void tryLogin(FTPClient ftpClient) {
     try {
-      if (ftpClient.login(config.ftpLogin, config.ftpPassword)) {
+      if (ftpClient.login(source.ftpLogin, source.ftpPassword)) {
         log.info("Авторизация - OK");
       } else {
+        tryDisconnect(ftpClient);
         throw new LoginException("Сервер отклонил попытку авторизации - проверьте логин/пароль");
       }
     } catch (IOException e) {
+      tryDisconnect(ftpClient);
       throw new LoginException("Не удалось авторизоваться", e);
     }
   }
 
-  private void tryConnect() {
+  private void tryConnect(FTPClient ftpClient) {
     try {
-      ftpClient.connect(config.ftpServer, config.ftpPort);
+      ftpClient.connect(source.ftpServer, source.ftpPort);
       ftpClient.enterLocalPassiveMode();
       log.info("Подключение к FTP серверу - ОК");
     } catch (IOException e) {
-      tryDisconnect();
+      tryDisconnect(ftpClient);
       throw new ConnectionException(
           "Не удалось подключиться к серверу, проверьте параметры соединения", e);
     }
   }
 
-  private void tryDisconnect() {
+  private void tryDisconnect(FTPClient ftpClient) {
     if (ftpClient.isConnected()) {
       try {
         ftpClient.disconnect();
@@ -18,28 +18,39 @@
 
 package absaliks.logxl.filesource;
 
-import static java.util.Collections.emptyList;
-
 import java.io.File;
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class LocalFileSource implements LogFileSource {
 
+  private static final Logger log = Logger.getLogger(LocalFileSource.class.getName());
   private static final String FILE_SEPARATOR = System.getProperty("file.separator");
 
   private final File workdir;
+  private WatchService watchService;
+  private boolean isWatchUnsupported;
 
   public LocalFileSource(String workdir) {
     this.workdir = new File(workdir);
   }
 
   @Override
-  public List<String> getFileList() {
-    File[] files = workdir.listFiles();
-    return files == null ? emptyList() :
-        Arrays.stream(files).filter(File::isFile).map(File::getName).collect(Collectors.toList());
+  public List<String> getFileList() throws IOException {
+    return getFileList(null, null);
+  }
+
+  @Override
+  public List<String> getFileList(LocalDateTime from, LocalDateTime to) throws IOException {
+    return new PartitionedDirectoryLister(workdir.toPath(), from, to).list();
   }
 
   @Override
@@ -47,11 +58,59 @@ public class LocalFileSource implements LogFileSource {
     return new File(workdir.getAbsolutePath() + FILE_SEPARATOR + filename);
   }
 
+  @Override
+  public String getFileStamp(String filename) {
+    final File file = getFile(filename);
+    return file.length() + "@" + file.lastModified();
+  }
+
+  @Override
+  public void awaitChanges(long timeoutMillis) throws InterruptedException {
+    WatchService watcher = getWatchService();
+    if (watcher == null) {
+      Thread.sleep(timeoutMillis);
+      return;
+    }
+    WatchKey key = watcher.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    if (key != null) {
+      key.pollEvents();
+      key.reset();
+    }
+  }
+
+  private WatchService getWatchService() {
+    if (watchService == null && !isWatchUnsupported) {
+      try {
+        watchService = FileSystems.getDefault().newWatchService();
+        workdir.toPath().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      } catch (IOException | UnsupportedOperationException e) {
+        log.log(Level.WARNING, "Unable to watch directory " + workdir + ", falling back to polling",
+            e);
+        isWatchUnsupported = true;
+        closeWatchService();
+      }
+    }
+    return watchService;
+  }
+
+  private void closeWatchService() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Unable to close directory watcher", e);
+      }
+      watchService = null;
+    }
+  }
+
   @Override
   public void initialize() {
   }
 
   @Override
   public void destroy() {
+    closeWatchService();
   }
 }
@@ -18,17 +18,60 @@
 
 package absaliks.logxl.filesource;
 
+import absaliks.logxl.concurrent.Cancellation;
 import java.io.File;
 import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface LogFileSource {
 
   void initialize();
 
+  /**
+   * @return names of the files relative to the directory of the source, with {@code /} between
+   * the parts of a path
+   */
   List<String> getFileList() throws IOException;
 
+  /**
+   * Same as {@link #getFileList()}, but may leave out the files that cannot belong to the period
+   * without looking at them; the names are still to be filtered by the caller.
+   */
+  default List<String> getFileList(LocalDateTime from, LocalDateTime to) throws IOException {
+    return getFileList();
+  }
+
   File getFile(String filename);
 
+  /**
+   * @return text that changes whenever the content of a listed file does, e.g. its size and
+   * modification time, or {@code null} if the source cannot tell
+   */
+  default String getFileStamp(String filename) {
+    return null;
+  }
+
+  /**
+   * Same as {@link #getFile(String)}, but may reuse the content fetched by the previous call and
+   * transfer only the bytes appended since then.
+   */
+  default File refreshFile(String filename) {
+    return getFile(filename);
+  }
+
+  /**
+   * Blocks until the files of the source might have changed, but no longer than the timeout.
+   */
+  default void awaitChanges(long timeoutMillis) throws InterruptedException {
+    Thread.sleep(timeoutMillis);
+  }
+
   void destroy();
+
+  /**
+   * Allows a running download to be interrupted.
+   */
+  default void setCancellation(Cancellation cancellation) {
+  }
 }
@@ -0,0 +1,128 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.filesource;
+
+import static absaliks.logxl.log.LogFileProperties.FILE_EXTENSION;
+import static absaliks.logxl.log.LogFileProperties.FILE_NAME_PATTERN;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Lists log files of a directory and of its year and month partitions like {@code 2020/01/},
+ * descending only into the partitions that overlap the period. Files are told by their names
+ * alone, so that a directory of many thousands of them is read without a stat call per file;
+ * only the entries named like a partition are checked to be directories.
+ */
+class PartitionedDirectoryLister {
+
+  private static final Pattern YEAR = Pattern.compile("\\d{4}");
+  private static final Pattern MONTH = Pattern.compile("0[1-9]|1[0-2]");
+  private static final DateTimeFormatter FORMATTER =
+      DateTimeFormatter.ofPattern(FILE_NAME_PATTERN);
+
+  private final Path root;
+  private final YearMonth fromMonth;
+  private final YearMonth toMonth;
+  private final String fromName; // null when the period is not bounded
+  private final String toName;
+
+  /**
+   * @param from start of the period or {@code null} to list every log file
+   * @param to end of the period or {@code null}
+   */
+  PartitionedDirectoryLister(Path root, LocalDateTime from, LocalDateTime to) {
+    this.root = root;
+    this.fromMonth = from != null ? YearMonth.from(from) : YearMonth.of(Year.MIN_VALUE, 1);
+    this.toMonth = to != null ? YearMonth.from(to) : YearMonth.of(Year.MAX_VALUE, 12);
+    this.fromName = from != null ? FORMATTER.format(from) + FILE_EXTENSION : null;
+    this.toName = to != null ? FORMATTER.format(to) + FILE_EXTENSION : null;
+  }
+
+  /**
+   * @return names relative to the root, e.g. {@code 2020/01/2020.01.31_10_00.csv}, in no
+   * particular order
+   */
+  List<String> list() throws IOException {
+    final List<String> names = new ArrayList<>();
+    if (!Files.isDirectory(root)) {
+      return names;
+    }
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+      for (Path entry : entries) {
+        final String name = entry.getFileName().toString();
+        if (YEAR.matcher(name).matches()) {
+          final int year = Integer.parseInt(name);
+          if (year >= fromMonth.getYear() && year <= toMonth.getYear()
+              && Files.isDirectory(entry)) {
+            listYear(entry, year, name + "/", names);
+          }
+        } else if (isInPeriod(name)) {
+          names.add(name);
+        }
+      }
+    }
+    return names;
+  }
+
+  private void listYear(Path directory, int year, String prefix, List<String> names)
+      throws IOException {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        final String name = entry.getFileName().toString();
+        if (MONTH.matcher(name).matches()) {
+          final YearMonth month = YearMonth.of(year, Integer.parseInt(name));
+          if (!month.isBefore(fromMonth) && !month.isAfter(toMonth)
+              && Files.isDirectory(entry)) {
+            listMonth(entry, prefix + name + "/", names);
+          }
+        } else if (isInPeriod(name)) {
+          names.add(prefix + name);
+        }
+      }
+    }
+  }
+
+  private void listMonth(Path directory, String prefix, List<String> names) throws IOException {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        final String name = entry.getFileName().toString();
+        if (isInPeriod(name)) {
+          names.add(prefix + name);
+        }
+      }
+    }
+  }
+
+  private boolean isInPeriod(String name) {
+    return StringUtils.endsWithIgnoreCase(name, FILE_EXTENSION)
+        && (fromName == null || name.compareToIgnoreCase(fromName) >= 0)
+        && (toName == null || name.compareToIgnoreCase(toName) <= 0);
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.filter;
+
+/**
+ * Condition on the values of a log line, checked before the line is turned into a record.
+ */
+@FunctionalInterface
+public interface RowFilter {
+
+  RowFilter ACCEPT_ALL = row -> true;
+
+  boolean test(Row row);
+
+  /**
+   * Values of the line being filtered, decoded only when asked for.
+   */
+  interface Row {
+
+    /**
+     * @param channel index in {@code Record.values}
+     */
+    float getValue(int channel);
+
+    boolean isHeatingCableOn();
+
+    boolean isHeatingElementOn();
+  }
+}
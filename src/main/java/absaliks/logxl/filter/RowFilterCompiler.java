@@ -0,0 +1,269 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.filter;
+
+import absaliks.logxl.filter.RowFilter.Row;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Compiles a filter expression like {@code ch5 > 0,5 && (cable || !heater)} into a tree of
+ * lambdas specialised for each operator and operand kind, so that nothing is interpreted while
+ * lines are filtered.
+ *
+ * <pre>
+ * expression := and ('||' and)*
+ * and        := unary ('&&' unary)*
+ * unary      := '!' unary | '(' expression ')' | 'cable' | 'heater' | operand comparator operand
+ * operand    := 'ch'N | number
+ * comparator := '<' | '<=' | '>' | '>=' | '==' | '!='
+ * </pre>
+ * Channel N is the N-th measurement column of the report, starting from 1, {@code cable} and
+ * {@code heater} are the heating cable and heating element flags.
+ */
+public class RowFilterCompiler {
+
+  private static final String CHANNEL_PREFIX = "ch";
+  private static final String HEATING_CABLE = "cable";
+  private static final String HEATING_ELEMENT = "heater";
+
+  private final String expression;
+  private final int channelsCount;
+  private int position;
+
+  private interface Operand {
+    float get(Row row);
+  }
+
+  private RowFilterCompiler(String expression, int channelsCount) {
+    this.expression = expression;
+    this.channelsCount = channelsCount;
+  }
+
+  /**
+   * @return {@link RowFilter#ACCEPT_ALL} for a blank expression
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public static RowFilter compile(String expression, int channelsCount) {
+    if (StringUtils.isBlank(expression)) {
+      return RowFilter.ACCEPT_ALL;
+    }
+    RowFilterCompiler compiler = new RowFilterCompiler(expression, channelsCount);
+    RowFilter filter = compiler.parseOr();
+    compiler.skipSpaces();
+    if (compiler.position < expression.length()) {
+      throw compiler.error("лишние символы");
+    }
+    return filter;
+  }
+
+  private RowFilter parseOr() {
+    RowFilter left = parseAnd();
+    while (accept("||")) {
+      final RowFilter a = left;
+      final RowFilter b = parseAnd();
+      left = row -> a.test(row) || b.test(row);
+    }
+    return left;
+  }
+
+  private RowFilter parseAnd() {
+    RowFilter left = parseUnary();
+    while (accept("&&")) {
+      final RowFilter a = left;
+      final RowFilter b = parseUnary();
+      left = row -> a.test(row) && b.test(row);
+    }
+    return left;
+  }
+
+  private RowFilter parseUnary() {
+    if (accept("!")) {
+      final RowFilter negated = parseUnary();
+      return row -> !negated.test(row);
+    }
+    if (accept("(")) {
+      final RowFilter inner = parseOr();
+      if (!accept(")")) {
+        throw error("ожидается ')'");
+      }
+      return inner;
+    }
+    if (acceptWord(HEATING_CABLE)) {
+      return Row::isHeatingCableOn;
+    }
+    if (acceptWord(HEATING_ELEMENT)) {
+      return Row::isHeatingElementOn;
+    }
+    return parseComparison();
+  }
+
+  private RowFilter parseComparison() {
+    final int leftChannel = parseChannel();
+    final float leftConstant = leftChannel < 0 ? parseNumber() : 0;
+    final String comparator = parseComparator();
+    final int rightChannel = parseChannel();
+    final float rightConstant = rightChannel < 0 ? parseNumber() : 0;
+
+    if (leftChannel >= 0 && rightChannel < 0) {
+      return compareToConstant(leftChannel, comparator, rightConstant);
+    }
+    if (leftChannel < 0 && rightChannel >= 0) {
+      return compareToConstant(rightChannel, mirror(comparator), leftConstant);
+    }
+    return compare(operand(leftChannel, leftConstant), comparator,
+        operand(rightChannel, rightConstant));
+  }
+
+  private static RowFilter compareToConstant(int channel, String comparator, float constant) {
+    switch (comparator) {
+      case "<":
+        return row -> row.getValue(channel) < constant;
+      case "<=":
+        return row -> row.getValue(channel) <= constant;
+      case ">":
+        return row -> row.getValue(channel) > constant;
+      case ">=":
+        return row -> row.getValue(channel) >= constant;
+      case "==":
+        return row -> row.getValue(channel) == constant;
+      default:
+        return row -> row.getValue(channel) != constant;
+    }
+  }
+
+  private static RowFilter compare(Operand left, String comparator, Operand right) {
+    switch (comparator) {
+      case "<":
+        return row -> left.get(row) < right.get(row);
+      case "<=":
+        return row -> left.get(row) <= right.get(row);
+      case ">":
+        return row -> left.get(row) > right.get(row);
+      case ">=":
+        return row -> left.get(row) >= right.get(row);
+      case "==":
+        return row -> left.get(row) == right.get(row);
+      default:
+        return row -> left.get(row) != right.get(row);
+    }
+  }
+
+  private static Operand operand(int channel, float constant) {
+    return channel >= 0 ? row -> row.getValue(channel) : row -> constant;
+  }
+
+  private static String mirror(String comparator) {
+    switch (comparator) {
+      case "<":
+        return ">";
+      case "<=":
+        return ">=";
+      case ">":
+        return "<";
+      case ">=":
+        return "<=";
+      default:
+        return comparator;
+    }
+  }
+
+  private String parseComparator() {
+    for (String comparator : new String[] {"<=", ">=", "==", "!=", "<", ">"}) {
+      if (accept(comparator)) {
+        return comparator;
+      }
+    }
+    throw error("ожидается оператор сравнения");
+  }
+
+  /**
+   * @return index in {@code Record.values} or -1 if there is no channel at the position
+   */
+  private int parseChannel() {
+    skipSpaces();
+    if (!expression.startsWith(CHANNEL_PREFIX, position)) {
+      return -1;
+    }
+    int end = position + CHANNEL_PREFIX.length();
+    while (end < expression.length() && Character.isDigit(expression.charAt(end))) {
+      end++;
+    }
+    if (end == position + CHANNEL_PREFIX.length()) {
+      throw error("ожидается номер канала");
+    }
+    final int channel = Integer.parseInt(
+        expression.substring(position + CHANNEL_PREFIX.length(), end));
+    if (channel < 1 || channel > channelsCount) {
+      throw error("номер канала должен быть от 1 до " + channelsCount);
+    }
+    position = end;
+    return channel - 1;
+  }
+
+  private float parseNumber() {
+    skipSpaces();
+    int end = position;
+    if (end < expression.length() && expression.charAt(end) == '-') {
+      end++;
+    }
+    while (end < expression.length() && (Character.isDigit(expression.charAt(end))
+        || expression.charAt(end) == '.' || expression.charAt(end) == ',')) {
+      end++;
+    }
+    try {
+      final float value = Float.parseFloat(
+          expression.substring(position, end).replace(',', '.'));
+      position = end;
+      return value;
+    } catch (NumberFormatException e) {
+      throw error("ожидается канал или число");
+    }
+  }
+
+  private boolean acceptWord(String word) {
+    skipSpaces();
+    final int end = position + word.length();
+    if (expression.startsWith(word, position)
+        && (end == expression.length() || !Character.isLetterOrDigit(expression.charAt(end)))) {
+      position = end;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean accept(String token) {
+    skipSpaces();
+    if (expression.startsWith(token, position)) {
+      position += token.length();
+      return true;
+    }
+    return false;
+  }
+
+  private void skipSpaces() {
+    while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+      position++;
+    }
+  }
+
+  private IllegalArgumentException error(String reason) {
+    return new IllegalArgumentException("Ошибка в фильтре строк \"" + expression
+        + "\" в позиции " + (position + 1) + ": " + reason);
+  }
+}
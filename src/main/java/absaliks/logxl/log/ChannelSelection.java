@@ -0,0 +1,135 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Channels to parse and export. {@code Record.values} hold only the selected channels, in the
+ * ascending order of their numbers.
+ */
+public final class ChannelSelection {
+
+  public static final int CHANNELS_COUNT = 31;
+  private static final String HEATING_CABLE = "cable";
+  private static final String HEATING_ELEMENT = "heater";
+
+  public static final ChannelSelection ALL = new ChannelSelection(allChannels(), true, true);
+
+  private final int[] channels;
+  public final boolean isHeatingCableSelected;
+  public final boolean isHeatingElementSelected;
+
+  private ChannelSelection(int[] channels, boolean isHeatingCableSelected,
+      boolean isHeatingElementSelected) {
+    this.channels = channels;
+    this.isHeatingCableSelected = isHeatingCableSelected;
+    this.isHeatingElementSelected = isHeatingElementSelected;
+  }
+
+  /**
+   * @param text comma separated channel numbers starting from 1 and the {@code cable} and
+   * {@code heater} flags, e.g. {@code 1, 2, 5, heater}; blank text selects everything
+   * @throws IllegalArgumentException if the text contains unknown channels
+   */
+  public static ChannelSelection parse(String text) {
+    if (StringUtils.isBlank(text)) {
+      return ALL;
+    }
+    final TreeSet<Integer> numbers = new TreeSet<>();
+    boolean isHeatingCableSelected = false;
+    boolean isHeatingElementSelected = false;
+    for (String token : StringUtils.split(text, ", ")) {
+      if (HEATING_CABLE.equalsIgnoreCase(token)) {
+        isHeatingCableSelected = true;
+      } else if (HEATING_ELEMENT.equalsIgnoreCase(token)) {
+        isHeatingElementSelected = true;
+      } else {
+        final int number;
+        try {
+          number = Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Неизвестный канал " + token);
+        }
+        if (number < 1 || number > CHANNELS_COUNT) {
+          throw new IllegalArgumentException(
+              "Номер канала должен быть от 1 до " + CHANNELS_COUNT + ": " + token);
+        }
+        numbers.add(number - 1);
+      }
+    }
+    return new ChannelSelection(numbers.stream().mapToInt(Integer::intValue).toArray(),
+        isHeatingCableSelected, isHeatingElementSelected);
+  }
+
+  public int size() {
+    return channels.length;
+  }
+
+  /**
+   * @return index of the channel among all channels for the index in {@code Record.values}
+   */
+  public int getChannel(int valueIx) {
+    return channels[valueIx];
+  }
+
+  public boolean contains(int channel) {
+    for (int c : channels) {
+      if (c == channel) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public List<Integer> getChannels() {
+    final List<Integer> result = new ArrayList<>(channels.length);
+    for (int channel : channels) {
+      result.add(channel);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringJoiner joiner = new StringJoiner(",");
+    for (int channel : channels) {
+      joiner.add(Integer.toString(channel + 1));
+    }
+    if (isHeatingCableSelected) {
+      joiner.add(HEATING_CABLE);
+    }
+    if (isHeatingElementSelected) {
+      joiner.add(HEATING_ELEMENT);
+    }
+    return joiner.toString();
+  }
+
+  private static int[] allChannels() {
+    final int[] channels = new int[CHANNELS_COUNT];
+    for (int i = 0; i < CHANNELS_COUNT; i++) {
+      channels[i] = i;
+    }
+    return channels;
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.log;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * How well an aggregation period is covered by the log at the rate of a record per second.
+ */
+@EqualsAndHashCode
+@ToString
+public class DataQuality {
+  public int samples; // records averaged, including duplicates and out of order ones
+  public int missingSeconds; // seconds of the period without a record
+  public int duplicates; // records with the time of the previous one, dropped ones included
+  public int outOfOrder; // records earlier than the previous one
+}
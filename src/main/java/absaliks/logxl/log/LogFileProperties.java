@@ -22,5 +22,6 @@ public interface LogFileProperties {
   String TIMESTAMP_PATTERN = "yyyy.MM.dd_HH:mm:ss";
   char COLUMNS_SEPARATOR = ';';
   char DECIMAL_SEPARATOR = ',';
-  int COLUMNS_COUNT = 35; // overall CSV file columns count (including timestamp)
+  String FILE_NAME_PATTERN = "yyyy.MM.dd_HH_mm"; // time of the first line of a log file
+  String FILE_EXTENSION = ".csv";
 }
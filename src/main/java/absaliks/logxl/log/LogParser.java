@@ -22,23 +22,28 @@ import static absaliks.logxl.log.LogFileProperties.COLUMNS_SEPARATOR;
 import static absaliks.logxl.log.LogFileProperties.DECIMAL_SEPARATOR;
 import static absaliks.logxl.log.LogFileProperties.TIMESTAMP_PATTERN;
 import static java.lang.StrictMath.abs;
-import static java.util.Objects.nonNull;
 
+import absaliks.logxl.concurrent.Cancellation;
 import absaliks.logxl.config.Config;
-import java.io.BufferedReader;
+import absaliks.logxl.filter.RowFilter;
+import absaliks.logxl.filter.RowFilterCompiler;
+import absaliks.logxl.log.ParseErrors.Kind;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.lang3.StringUtils;
+import lombok.Setter;
 
 @RequiredArgsConstructor
 public class LogParser {
@@ -50,91 +55,339 @@ public class LogParser {
       .withZone(ZoneId.systemDefault());
 
   private static final int AVG_DATE_LINE_SIZE = 140;
-  private static final byte[] VALUE_FIELDS = new byte[] {
-      1, 2, 3, 4, 5, 6, 7, 8, 9, 10,
-      11, 12, 13, 14, 15, 16, 17, 18, 19,     // -20
-      21, 22, 23, 24, 25, 28, 26, 27, 29, 30, 31, 32
-  };
-  private static final int MIN_DATA_LINE_LENGTH = TIMESTAMP_PATTERN.length()
-      + VALUE_FIELDS.length * 2;
+  private static final int CANCELLATION_CHECK_INTERVAL = 4096; // lines
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_HEADER_LENGTH = 256; // chars kept for schema detection
+  private static final int YEAR_OFFSET = TIMESTAMP_PATTERN.indexOf("yyyy");
+  private static final int MONTH_OFFSET = TIMESTAMP_PATTERN.indexOf("MM");
+  private static final int DAY_OFFSET = TIMESTAMP_PATTERN.indexOf("dd");
+  private static final int HOUR_OFFSET = TIMESTAMP_PATTERN.indexOf("HH");
+  private static final int MINUTE_OFFSET = TIMESTAMP_PATTERN.indexOf("mm");
+  private static final int SECOND_OFFSET = TIMESTAMP_PATTERN.indexOf("ss");
 
   private final InputStream stream;
   private final Config config;
+  @Setter
+  private Cancellation cancellation = new Cancellation();
+  @Setter
+  private LogSchemas schemas = LogSchemas.getInstance();
+  private final StructuralIndex index = new StructuralIndex();
+  // positions of the separators that end the fields of the current line, the last field ends
+  // with the line itself
+  private int[] separators;
+  private char[] chars = new char[32];
+  private final LineValues lineValues = new LineValues();
+  @Getter
+  private final ParseErrors errors = new ParseErrors();
+  private boolean isBadNumberFound; // in the current line
+  private RowFilter filter;
+  @Getter
+  private LogSchema schema; // detected at the first data line
+  private ParsePlan plan;
+  private String headerLine;
+  private int headerColumns;
+  private int minDataLineLength;
   private int approxLinesCount;
+  private int lineNumber;
   private boolean isDataTableFound;
 
   public List<Record> parse() throws IOException {
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
-      approxLinesCount = stream.available() / AVG_DATE_LINE_SIZE;
-      return parseDataTable(reader);
+    filter = RowFilterCompiler.compile(config.rowFilter, ChannelSelection.CHANNELS_COUNT);
+    separators = new int[schemas.getMaxColumnsCount()];
+    minDataLineLength = TIMESTAMP_PATTERN.length() + (schemas.getMinColumnsCount() - 1) * 2;
+    try (InputStream in = stream) {
+      approxLinesCount = in.available() / AVG_DATE_LINE_SIZE;
+      return parseDataTable(in);
     }
   }
 
-  private List<Record> parseDataTable(BufferedReader reader) throws IOException {
-    List<Record> records = new ArrayList<>(approxLinesCount);
-    String line;
-    while (nonNull(line = reader.readLine())) {
-      if (!isDataTableFound && !(isDataTableFound = isDataLine(line))) {
-        continue;
-      }
-      Record rec = parseDataLine(line);
-      if (rec != null) {
-        records.add(rec);
+  private List<Record> parseDataTable(InputStream in) throws IOException {
+    final List<Record> records = new ArrayList<>(approxLinesCount);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int length = 0;
+    int read;
+    while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+      final int consumed = parseLines(buffer, length, false, records);
+      length -= consumed;
+      System.arraycopy(buffer, consumed, buffer, 0, length);
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
       }
     }
+    parseLines(buffer, length, true, records);
     return records;
   }
 
-  private boolean isDataLine(String line) {
-    if (line.length() < MIN_DATA_LINE_LENGTH) {
-      return false;
+  /**
+   * @return the number of bytes taken by the complete lines, the rest is an incomplete line that
+   * should be parsed again after more bytes are read
+   */
+  private int parseLines(byte[] buffer, int length, boolean isEndOfStream, List<Record> records) {
+    index.scan(buffer, 0, length);
+    int lineStart = 0;
+    int separatorsCount = 0;
+    for (int i = 0; i < index.size(); i++) {
+      final int position = index.get(i);
+      if (buffer[position] == '\n') {
+        parseLine(buffer, lineStart, position, separatorsCount, records);
+        lineStart = position + 1;
+        separatorsCount = 0;
+      } else if (separatorsCount < separators.length) {
+        separators[separatorsCount++] = position;
+      } else {
+        separatorsCount++; // counted for the schema detection only
+      }
     }
-    try {
-      final String datetime = line.substring(0, TIMESTAMP_PATTERN.length());
-      parseDateTime(datetime);
-      return true;
-    } catch (DateTimeParseException e) {
-      return false;
+    if (isEndOfStream && lineStart < length) {
+      parseLine(buffer, lineStart, length, separatorsCount, records);
+      lineStart = length;
     }
+    return lineStart;
   }
 
-  private Record parseDataLine(String line) {
-    try {
-      final String[] fields = StringUtils.splitPreserveAllTokens(line, COLUMNS_SEPARATOR);
-      final LocalDateTime datetime = parseDateTime(fields[0]);
-      if (datetime.isBefore(config.dateFrom) || datetime.isAfter(config.dateTo)) {
-        log.log(Level.FINE, "Skipping line that outside of time period: {}", line);
-        return null;
+  private void parseLine(byte[] buffer, int start, int end, int separatorsCount,
+      List<Record> records) {
+    if (++lineNumber % CANCELLATION_CHECK_INTERVAL == 0) {
+      cancellation.throwIfCancelled();
+    }
+    if (end > start && buffer[end - 1] == '\r') {
+      end--;
+    }
+    if (!isDataTableFound) {
+      if (!isDataLine(buffer, start, end)) {
+        rememberHeader(buffer, start, end, separatorsCount);
+        return;
       }
+      isDataTableFound = true;
+      detectSchema(buffer, start, end, separatorsCount);
+    }
+    if (separatorsCount < separators.length) {
+      separators[separatorsCount] = end;
+    }
+    Record rec = parseDataLine(buffer, start, end, separatorsCount);
+    if (rec != null) {
+      records.add(rec);
+    }
+  }
+
+  private boolean isDataLine(byte[] buffer, int start, int end) {
+    return end - start >= minDataLineLength
+        && parseTimestamp(buffer, start, start + TIMESTAMP_PATTERN.length()) != null;
+  }
 
-      final Record r = new Record();
-      r.datetime = datetime;
-      r.values = new float[VALUE_FIELDS.length];
-      for (int i = 0; i < VALUE_FIELDS.length; i++) {
-        final int fieldIx = VALUE_FIELDS[i];
-        r.values[i] = parseFloat(fields[fieldIx]);
+  /**
+   * Keeps the last line with columns above the data table, that is its header.
+   */
+  private void rememberHeader(byte[] buffer, int start, int end, int separatorsCount) {
+    if (separatorsCount > 0) {
+      headerLine = new String(buffer, start, Math.min(end - start, MAX_HEADER_LENGTH),
+          StandardCharsets.ISO_8859_1);
+      headerColumns = countColumns(buffer, start, end, separatorsCount);
+    }
+  }
+
+  private void detectSchema(byte[] buffer, int start, int end, int separatorsCount) {
+    schema = schemas.detect(headerLine, headerColumns,
+        countColumns(buffer, start, end, separatorsCount));
+    plan = schema.getPlan(config.channels);
+    log.fine("Detected log schema " + schema);
+  }
+
+  /**
+   * @return fields of the line without the trailing empty ones
+   */
+  private static int countColumns(byte[] buffer, int start, int end, int separatorsCount) {
+    int columns = separatorsCount + 1;
+    while (end > start && buffer[end - 1] == COLUMNS_SEPARATOR) {
+      end--;
+      columns--;
+    }
+    return columns;
+  }
+
+  /**
+   * Malformed lines are reported through {@link #errors} rather than exceptions, which would cost
+   * more than the parsing itself on a badly corrupted file.
+   */
+  private Record parseDataLine(byte[] buffer, int start, int end, int separatorsCount) {
+    if (separatorsCount < plan.columnsCount - 1) {
+      return error(Kind.NOT_ENOUGH_COLUMNS, buffer, start, end);
+    }
+    final LocalDateTime datetime = parseTimestamp(buffer, start, separators[0]);
+    if (datetime == null) {
+      return error(Kind.BAD_TIMESTAMP, buffer, start, end);
+    }
+    if (datetime.isBefore(config.dateFrom) || datetime.isAfter(config.dateTo)) {
+      if (log.isLoggable(Level.FINE)) {
+        log.log(Level.FINE, "Skipping line that outside of time period: {}",
+            new String(buffer, start, end - start));
       }
-      r.isHeatingCableOn = isNonZero(parseFloat(fields[33]));
-      r.isHeatingElementOn = isNonZero(parseFloat(fields[34]));
-      return r;
-    } catch (Exception e) {
-      log.severe("Failed to parse line: " + line);
-      if (!config.isSilent) {
-        throw new RuntimeException("Не удалось интерпретировать строку: " + line);
+      return null;
+    }
+    isBadNumberFound = false;
+    lineValues.buffer = buffer;
+    if (!filter.test(lineValues)) {
+      return isBadNumberFound ? error(Kind.BAD_NUMBER, buffer, start, end) : null;
+    }
+
+    final Record r = new Record();
+    r.datetime = datetime;
+    final int[] valueFields = plan.valueFields;
+    r.values = new float[valueFields.length];
+    for (int i = 0; i < valueFields.length; i++) {
+      r.values[i] = parseFloat(buffer, valueFields[i]);
+    }
+    r.isHeatingCableOn = isNonZero(parseFloat(buffer, plan.heatingCableField));
+    r.isHeatingElementOn = isNonZero(parseFloat(buffer, plan.heatingElementField));
+    return isBadNumberFound ? error(Kind.BAD_NUMBER, buffer, start, end) : r;
+  }
+
+  private Record error(Kind kind, byte[] buffer, int start, int end) {
+    if (!config.isSilent) {
+      throw new RuntimeException(
+          "Не удалось интерпретировать строку: " + new String(buffer, start, end - start));
+    }
+    errors.add(kind, lineNumber);
+    if (log.isLoggable(Level.FINE)) {
+      log.fine("Failed to parse line " + lineNumber + " (" + kind + "): "
+          + new String(buffer, start, end - start));
+    }
+    return null;
+  }
+
+  /**
+   * @return {@code null} unless the bytes match {@link LogFileProperties#TIMESTAMP_PATTERN};
+   * day of month past the end of the month is moved to the last day, as the formatter does
+   */
+  private static LocalDateTime parseTimestamp(byte[] buffer, int start, int end) {
+    if (end - start != TIMESTAMP_PATTERN.length()) {
+      return null;
+    }
+    for (int i = 0; i < TIMESTAMP_PATTERN.length(); i++) {
+      final char expected = TIMESTAMP_PATTERN.charAt(i);
+      final byte b = buffer[start + i];
+      if (Character.isLetter(expected) ? b < '0' || b > '9' : b != expected) {
+        return null;
       }
+    }
+    final int year = parseDigits(buffer, start + YEAR_OFFSET, 4);
+    final int month = parseDigits(buffer, start + MONTH_OFFSET, 2);
+    final int day = parseDigits(buffer, start + DAY_OFFSET, 2);
+    final int hour = parseDigits(buffer, start + HOUR_OFFSET, 2);
+    final int minute = parseDigits(buffer, start + MINUTE_OFFSET, 2);
+    final int second = parseDigits(buffer, start + SECOND_OFFSET, 2);
+    if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59
+        || second > 59) {
       return null;
     }
+    return LocalDateTime.of(year, month,
+        Math.min(day, Month.of(month).length(Year.isLeap(year))), hour, minute, second);
+  }
+
+  private static int parseDigits(byte[] buffer, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      value = value * 10 + buffer[i] - '0';
+    }
+    return value;
   }
 
-  private LocalDateTime parseDateTime(String field) {
-    return FORMATTER.parse(field, LocalDateTime::from);
+  /**
+   * @return {@code NaN} and sets {@link #isBadNumberFound} if the field is not a number, or just
+   * {@code NaN} if the schema has no such field
+   */
+  private float parseFloat(byte[] buffer, int fieldIx) {
+    if (fieldIx < 0) {
+      return Float.NaN;
+    }
+    final int start = separators[fieldIx - 1] + 1;
+    final int end = separators[fieldIx];
+    if (!isNumber(buffer, start, end)) {
+      isBadNumberFound = true;
+      return Float.NaN;
+    }
+    final int length = end - start;
+    if (length > chars.length) {
+      chars = new char[length];
+    }
+    for (int i = 0; i < length; i++) {
+      final char c = (char) (buffer[start + i] & 0xFF);
+      chars[i] = c == DECIMAL_SEPARATOR ? '.' : c;
+    }
+    return Float.parseFloat(new String(chars, 0, length));
   }
 
-  private float parseFloat(String stringValue) {
-    return Float.parseFloat(stringValue.replace(DECIMAL_SEPARATOR, '.'));
+  /**
+   * Decimal number with either decimal separator and an optional exponent, surrounded by optional
+   * whitespace, that is what {@link Float#parseFloat} accepts from the logs.
+   */
+  private static boolean isNumber(byte[] buffer, int start, int end) {
+    while (start < end && buffer[start] <= ' ' && buffer[start] >= 0) {
+      start++;
+    }
+    while (end > start && buffer[end - 1] <= ' ' && buffer[end - 1] >= 0) {
+      end--;
+    }
+    int i = start;
+    if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+      i++;
+    }
+    int digits = 0;
+    boolean isPointFound = false;
+    for (; i < end; i++) {
+      final byte b = buffer[i];
+      if (b >= '0' && b <= '9') {
+        digits++;
+      } else if ((b == DECIMAL_SEPARATOR || b == '.') && !isPointFound) {
+        isPointFound = true;
+      } else {
+        break;
+      }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+      i++;
+      if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+        i++;
+      }
+      final int exponentStart = i;
+      while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+        i++;
+      }
+      if (i == exponentStart) {
+        return false;
+      }
+    }
+    return i == end;
   }
 
   private boolean isNonZero(float value) {
     return abs(value) >= 0.000001;
   }
+
+  /**
+   * Decodes fields of the current line on demand, so a filter pays only for the fields it reads.
+   */
+  private class LineValues implements RowFilter.Row {
+
+    private byte[] buffer;
+
+    @Override
+    public float getValue(int channel) {
+      return parseFloat(buffer, plan.channelFields[channel]);
+    }
+
+    @Override
+    public boolean isHeatingCableOn() {
+      return isNonZero(parseFloat(buffer, plan.anyHeatingCableField));
+    }
+
+    @Override
+    public boolean isHeatingElementOn() {
+      return isNonZero(parseFloat(buffer, plan.anyHeatingElementField));
+    }
+  }
 }
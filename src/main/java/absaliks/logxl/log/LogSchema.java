@@ -0,0 +1,153 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Layout of the data table of a controller firmware, read from a descriptor like
+ * <pre>
+ * columns=35
+ * header=Timestamp;
+ * column.0=timestamp
+ * column.1=value,1,2
+ * column.33=heatingCable
+ * column.34=heatingElement
+ * </pre>
+ * A {@code value} column names the channel it holds, counting from 1 as the {@code channels}
+ * setting does, and the decimal places of the report; unlisted columns are skipped. The optional
+ * {@code header} is the beginning of the header line that tells the firmware apart from another
+ * one with the same number of columns.
+ */
+public final class LogSchema {
+
+  public static final int MAX_DECIMAL_PLACES = 6;
+  private static final String COLUMNS = "columns";
+  private static final String HEADER = "header";
+  private static final String COLUMN_PREFIX = "column.";
+  private static final String TIMESTAMP = "timestamp";
+  private static final String VALUE = "value";
+  private static final String HEATING_CABLE = "heatingCable";
+  private static final String HEATING_ELEMENT = "heatingElement";
+
+  @Getter
+  private final String name;
+  @Getter
+  private final int columnsCount;
+  private final String header;
+  private final int[] channelFields = new int[ChannelSelection.CHANNELS_COUNT];
+  private final byte[] decimalPlaces = new byte[ChannelSelection.CHANNELS_COUNT];
+  private int heatingCableField = -1;
+  private int heatingElementField = -1;
+  private final Map<ChannelSelection, ParsePlan> plans = new ConcurrentHashMap<>(2);
+
+  private LogSchema(String name, int columnsCount, String header) {
+    this.name = name;
+    this.columnsCount = columnsCount;
+    this.header = header;
+    Arrays.fill(channelFields, -1);
+  }
+
+  /**
+   * @throws IllegalArgumentException if the descriptor is incomplete or contradicts itself
+   */
+  static LogSchema parse(String name, Properties properties) {
+    final int columnsCount = NumberUtils.toInt(properties.getProperty(COLUMNS), 0);
+    Validate.isTrue(columnsCount > 1, "Не указано количество колонок");
+    final LogSchema schema =
+        new LogSchema(name, columnsCount, StringUtils.trimToNull(properties.getProperty(HEADER)));
+    boolean isTimestampFound = false;
+    for (int field = 0; field < columnsCount; field++) {
+      final String[] tokens =
+          StringUtils.split(properties.getProperty(COLUMN_PREFIX + field, ""), ", ");
+      if (tokens.length == 0) {
+        continue;
+      }
+      switch (tokens[0]) {
+        case TIMESTAMP:
+          Validate.isTrue(field == 0, "Время должно быть в первой колонке");
+          isTimestampFound = true;
+          break;
+        case VALUE:
+          schema.addValueColumn(field, tokens);
+          break;
+        case HEATING_CABLE:
+          schema.heatingCableField = field;
+          break;
+        case HEATING_ELEMENT:
+          schema.heatingElementField = field;
+          break;
+        default:
+          throw new IllegalArgumentException(
+              "Неизвестный тип колонки " + field + ": " + tokens[0]);
+      }
+    }
+    Validate.isTrue(isTimestampFound, "Не указана колонка времени");
+    return schema;
+  }
+
+  private void addValueColumn(int field, String[] tokens) {
+    Validate.isTrue(tokens.length == 3, "Колонка %d: ожидается value,<канал>,<знаков>", field);
+    final int channel = NumberUtils.toInt(tokens[1], 0) - 1;
+    final int places = NumberUtils.toInt(tokens[2], -1);
+    Validate.isTrue(channel >= 0 && channel < ChannelSelection.CHANNELS_COUNT,
+        "Колонка %d: номер канала должен быть от 1 до %d", field, ChannelSelection.CHANNELS_COUNT);
+    Validate.isTrue(channelFields[channel] == -1,
+        "Канал %d указан в нескольких колонках", channel + 1);
+    Validate.isTrue(places >= 0 && places <= MAX_DECIMAL_PLACES,
+        "Колонка %d: знаков после запятой должно быть от 0 до %d", field, MAX_DECIMAL_PLACES);
+    channelFields[channel] = field;
+    decimalPlaces[channel] = (byte) places;
+  }
+
+  /**
+   * @param headerLine the line above the data table, without the line break
+   */
+  boolean isHeaderMatched(String headerLine) {
+    return header != null && headerLine.startsWith(header);
+  }
+
+  boolean hasHeader() {
+    return header != null;
+  }
+
+  int getDecimalPlaces(int channel) {
+    return decimalPlaces[channel];
+  }
+
+  /**
+   * Plans are made once per channel selection and shared by the parsers of all files.
+   */
+  ParsePlan getPlan(ChannelSelection channels) {
+    return plans.computeIfAbsent(channels, selection -> new ParsePlan(selection, columnsCount,
+        channelFields, heatingCableField, heatingElementField));
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
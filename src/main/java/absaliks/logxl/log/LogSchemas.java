@@ -0,0 +1,227 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import lombok.Getter;
+
+/**
+ * Known layouts of log files: the built-in ones and the descriptors in the {@code schemas}
+ * directory next to {@code config.properties}. A descriptor named as a built-in one replaces it.
+ */
+public final class LogSchemas {
+
+  private static final Logger log = Logger.getLogger(LogSchemas.class.getName());
+
+  static final File SCHEMAS_DIRECTORY = new File(System.getProperty("user.dir"), "schemas");
+  private static final String BUILT_IN_DIRECTORY = "schemas/";
+  private static final List<String> BUILT_IN_NAMES = Collections.singletonList("mzs-35");
+  private static final String EXTENSION = ".properties";
+
+  private static volatile LogSchemas instance;
+
+  private final List<LogSchema> schemas; // the first one is the default
+  private final byte[] decimalPlaces = new byte[ChannelSelection.CHANNELS_COUNT];
+  @Getter
+  private final int minColumnsCount;
+  @Getter
+  private final int maxColumnsCount;
+  /**
+   * Hash of every descriptor read, so that cached reports are not reused after a descriptor has
+   * been edited.
+   */
+  @Getter
+  private final String fingerprint;
+
+  LogSchemas(List<LogSchema> schemas) {
+    this(schemas, "");
+  }
+
+  private LogSchemas(List<LogSchema> schemas, String fingerprint) {
+    this.schemas = Collections.unmodifiableList(new ArrayList<>(schemas));
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    for (LogSchema schema : schemas) {
+      min = Math.min(min, schema.getColumnsCount());
+      max = Math.max(max, schema.getColumnsCount());
+      for (int channel = 0; channel < decimalPlaces.length; channel++) {
+        decimalPlaces[channel] =
+            (byte) Math.max(decimalPlaces[channel], schema.getDecimalPlaces(channel));
+      }
+    }
+    this.minColumnsCount = min;
+    this.maxColumnsCount = max;
+    this.fingerprint = fingerprint;
+  }
+
+  public static LogSchemas getInstance() {
+    LogSchemas result = instance;
+    if (result == null) {
+      synchronized (LogSchemas.class) {
+        result = instance;
+        if (result == null) {
+          instance = result = load(SCHEMAS_DIRECTORY);
+        }
+      }
+    }
+    return result;
+  }
+
+  static LogSchemas load(File directory) {
+    final List<LogSchema> schemas = new ArrayList<>();
+    final MessageDigest digest = newDigest();
+    for (String name : BUILT_IN_NAMES) {
+      try (InputStream stream = LogSchemas.class.getClassLoader()
+          .getResourceAsStream(BUILT_IN_DIRECTORY + name + EXTENSION)) {
+        if (stream == null) {
+          throw new IllegalStateException("Описание формата логов не найдено: " + name);
+        }
+        schemas.add(LogSchema.parse(name, read(name, readFully(stream), digest)));
+      } catch (IOException e) {
+        throw new IllegalStateException("Не удалось прочесть описание формата логов " + name, e);
+      }
+    }
+    final File[] files = directory.listFiles((dir, filename) -> filename.endsWith(EXTENSION));
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        addExternal(schemas, file, digest);
+      }
+    }
+    return new LogSchemas(schemas, new BigInteger(1, digest.digest()).toString(16));
+  }
+
+  private static void addExternal(List<LogSchema> schemas, File file, MessageDigest digest) {
+    final String name =
+        file.getName().substring(0, file.getName().length() - EXTENSION.length());
+    final LogSchema schema;
+    try {
+      schema = LogSchema.parse(name, read(name, Files.readAllBytes(file.toPath()), digest));
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Не удалось прочесть файл " + file, e);
+      return;
+    } catch (IllegalArgumentException e) {
+      log.warning("Описание формата логов " + file + " пропущено: " + e.getMessage());
+      return;
+    }
+    for (int i = 0; i < schemas.size(); i++) {
+      if (schemas.get(i).getName().equals(name)) {
+        schemas.set(i, schema);
+        return;
+      }
+    }
+    schemas.add(schema);
+    log.info("Загружено описание формата логов " + name);
+  }
+
+  private static Properties read(String name, byte[] content, MessageDigest digest)
+      throws IOException {
+    digest.update(name.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(content);
+    digest.update((byte) 0);
+    final Properties properties = new Properties();
+    try (Reader reader =
+        new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    return properties;
+  }
+
+  private static byte[] readFully(InputStream stream) throws IOException {
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    for (int length; (length = stream.read(buffer)) != -1; ) {
+      content.write(buffer, 0, length);
+    }
+    return content.toByteArray();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public LogSchema getDefault() {
+    return schemas.get(0);
+  }
+
+  public List<LogSchema> getSchemas() {
+    return schemas;
+  }
+
+  /**
+   * @return the most decimal places any schema declares for the channel, so that a report mixing
+   * firmwares loses no digits
+   */
+  public int getDecimalPlaces(int channel) {
+    return decimalPlaces[channel];
+  }
+
+  /**
+   * A schema is picked by the header line first: the one whose {@code header} the line starts
+   * with, otherwise the one with as many columns as the header. Files without a recognizable
+   * header, like the tail of a file being written, are told by their first data line.
+   *
+   * @param headerLine the line above the data table or {@code null}
+   * @param headerColumns columns of the header line not counting the trailing empty ones
+   * @param dataColumns the same for the first data line
+   */
+  LogSchema detect(String headerLine, int headerColumns, int dataColumns) {
+    if (headerLine != null) {
+      for (LogSchema schema : schemas) {
+        if (schema.getColumnsCount() == headerColumns && schema.isHeaderMatched(headerLine)) {
+          return schema;
+        }
+      }
+      for (LogSchema schema : schemas) {
+        if (schema.getColumnsCount() == headerColumns && !schema.hasHeader()) {
+          return schema;
+        }
+      }
+    }
+    for (LogSchema schema : schemas) {
+      if (schema.getColumnsCount() == dataColumns) {
+        return schema;
+      }
+    }
+    return getDefault();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import static java.util.Collections.emptyList;
+
+import absaliks.logxl.config.Config;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Remembers how far each log file has been read and parses only the lines appended since then.
+ * The last line is left for the next call until its line break is written.
+ */
+@RequiredArgsConstructor
+public class LogTail {
+
+  private static final Logger log = Logger.getLogger(LogTail.class.getName());
+
+  private final Config config;
+  private final Map<String, Long> offsets = new HashMap<>();
+
+  public List<Record> readAppended(String filename, File file) throws IOException {
+    long offset = offsets.getOrDefault(filename, 0L);
+    final long length = file.length();
+    if (length < offset) {
+      log.info("Файл " + filename + " был перезаписан, читаю с начала");
+      offset = 0;
+    }
+    if (length == offset) {
+      return emptyList();
+    }
+
+    final byte[] chunk = read(file, offset, (int) (length - offset));
+    final int completeLinesLength = lastIndexOf(chunk, (byte) '\n') + 1;
+    if (completeLinesLength == 0) {
+      return emptyList();
+    }
+    offsets.put(filename, offset + completeLinesLength);
+    final LogParser parser =
+        new LogParser(new ByteArrayInputStream(chunk, 0, completeLinesLength), config);
+    final List<Record> records = parser.parse();
+    if (!parser.getErrors().isEmpty()) {
+      log.warning("Файл " + filename + ": " + parser.getErrors());
+    }
+    return records;
+  }
+
+  private byte[] read(File file, long offset, int length) throws IOException {
+    final byte[] bytes = new byte[length];
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      raf.seek(offset);
+      raf.readFully(bytes);
+    }
+    return bytes;
+  }
+
+  private static int lastIndexOf(byte[] bytes, byte value) {
+    for (int i = bytes.length - 1; i >= 0; i--) {
+      if (bytes[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Malformed lines of a log file: counts by kind and the numbers of the first few of them, so that
+ * a badly corrupted file costs a single log message.
+ */
+public class ParseErrors {
+
+  private static final int MAX_LINE_NUMBERS = 10;
+
+  public enum Kind {
+    NOT_ENOUGH_COLUMNS("мало столбцов"),
+    BAD_TIMESTAMP("неверное время"),
+    BAD_NUMBER("неверное число");
+
+    public final String description;
+
+    Kind(String description) {
+      this.description = description;
+    }
+  }
+
+  private final Map<Kind, Integer> counts = new EnumMap<>(Kind.class);
+  private final List<Integer> lineNumbers = new ArrayList<>(MAX_LINE_NUMBERS);
+  private int count;
+
+  void add(Kind kind, int lineNumber) {
+    counts.merge(kind, 1, Integer::sum);
+    if (lineNumbers.size() < MAX_LINE_NUMBERS) {
+      lineNumbers.add(lineNumber);
+    }
+    count++;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getCount(Kind kind) {
+    return counts.getOrDefault(kind, 0);
+  }
+
+  /**
+   * @return numbers of the first malformed lines, counted from 1
+   */
+  public List<Integer> getLineNumbers() {
+    return Collections.unmodifiableList(lineNumbers);
+  }
+
+  @Override
+  public String toString() {
+    final StringJoiner kinds = new StringJoiner(", ");
+    counts.forEach((kind, kindCount) -> kinds.add(kind.description + " - " + kindCount));
+    final StringJoiner lines = new StringJoiner(", ");
+    lineNumbers.forEach(lineNumber -> lines.add(lineNumber.toString()));
+    return "пропущено строк: " + count + " (" + kinds + "), строки " + lines
+        + (count > lineNumbers.size() ? "..." : "");
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+/**
+ * Fields of a {@link LogSchema} resolved for a channel selection, so that parsing a line is a walk
+ * over plain arrays. Absent fields are {@code -1}.
+ */
+final class ParsePlan {
+
+  final int columnsCount;
+  final int[] valueFields; // in the order of Record.values
+  final int heatingCableField; // -1 unless selected
+  final int heatingElementField;
+  // fields of all channels and heaters, a row filter may read those that are not selected
+  final int[] channelFields;
+  final int anyHeatingCableField;
+  final int anyHeatingElementField;
+
+  ParsePlan(ChannelSelection channels, int columnsCount, int[] channelFields,
+      int heatingCableField, int heatingElementField) {
+    this.columnsCount = columnsCount;
+    this.valueFields = new int[channels.size()];
+    for (int i = 0; i < valueFields.length; i++) {
+      valueFields[i] = channelFields[channels.getChannel(i)];
+    }
+    this.heatingCableField = channels.isHeatingCableSelected ? heatingCableField : -1;
+    this.heatingElementField = channels.isHeatingElementSelected ? heatingElementField : -1;
+    this.channelFields = channelFields.clone();
+    this.anyHeatingCableField = heatingCableField;
+    this.anyHeatingElementField = heatingElementField;
+  }
+}
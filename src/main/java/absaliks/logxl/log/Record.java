@@ -27,6 +27,12 @@ public class Record {
   public float[] values;
   public boolean isHeatingCableOn;
   public boolean isHeatingElementOn;
+  public DataQuality quality; // of averaged records only
+  /**
+   * Estimated configured percentiles of averaged records, all percentiles of a value one after
+   * another in the order of the values.
+   */
+  public float[] percentiles;
 
   @Override
   public String toString() {
@@ -35,6 +41,8 @@ public class Record {
         ", values=" + Arrays.toString(values) +
         ", isHeatingCableOn=" + isHeatingCableOn +
         ", isHeatingElementOn=" + isHeatingElementOn +
+        (quality != null ? ", quality=" + quality : "") +
+        (percentiles != null ? ", percentiles=" + Arrays.toString(percentiles) : "") +
         '}';
   }
 
@@ -50,13 +58,16 @@ public class Record {
     return isHeatingCableOn == record.isHeatingCableOn &&
         isHeatingElementOn == record.isHeatingElementOn &&
         datetime.equals(record.datetime) &&
-        Arrays.equals(values, record.values);
+        Arrays.equals(values, record.values) &&
+        Objects.equals(quality, record.quality) &&
+        Arrays.equals(percentiles, record.percentiles);
   }
 
   @Override
   public int hashCode() {
-    int result = Objects.hash(datetime, isHeatingCableOn, isHeatingElementOn);
+    int result = Objects.hash(datetime, isHeatingCableOn, isHeatingElementOn, quality);
     result = 31 * result + Arrays.hashCode(values);
+    result = 31 * result + Arrays.hashCode(percentiles);
     return result;
   }
 }
@@ -0,0 +1,142 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Merges records of log files that may overlap in time (e.g. after a controller restart) into a
+ * single time ordered stream. Files have to be added in the order of their first records, which
+ * is the order of their names. A file is held only until the records of the files added after it
+ * pass its last record, so memory depends on how many files overlap, not on their total count.
+ */
+public class RecordMerger {
+
+  private static final Logger log = Logger.getLogger(RecordMerger.class.getName());
+
+  private static final int BATCH_SIZE = 4096;
+
+  private final boolean isDropDuplicates;
+  private final Consumer<List<Record>> downstream;
+  private final Runnable duplicateListener;
+  private final PriorityQueue<Cursor> cursors = new PriorityQueue<>(
+      Comparator.comparing((Cursor cursor) -> cursor.head.datetime)
+          .thenComparingInt(cursor -> cursor.fileIx));
+  private List<Record> batch = new ArrayList<>(BATCH_SIZE);
+  private Record last;
+  private int filesCount;
+  private long duplicatesCount;
+
+  /**
+   * @param isDropDuplicates whether to pass on only the first of the records having the same
+   * timestamp
+   */
+  public RecordMerger(boolean isDropDuplicates, Consumer<List<Record>> downstream) {
+    this(isDropDuplicates, downstream, null);
+  }
+
+  /**
+   * @param duplicateListener notified of every dropped record right after the record it
+   * duplicates has been passed downstream
+   */
+  public RecordMerger(boolean isDropDuplicates, Consumer<List<Record>> downstream,
+      Runnable duplicateListener) {
+    this.isDropDuplicates = isDropDuplicates;
+    this.downstream = downstream;
+    this.duplicateListener = duplicateListener;
+  }
+
+  public void add(List<Record> fileRecords) {
+    final Iterator<Record> iterator = fileRecords.iterator();
+    if (!iterator.hasNext()) {
+      return;
+    }
+    final Cursor cursor = new Cursor(iterator, filesCount++);
+    while (!cursors.isEmpty() && cursors.peek().head.datetime.isBefore(cursor.head.datetime)) {
+      emitHead();
+    }
+    cursors.add(cursor);
+    emitBatch();
+  }
+
+  public void flush() {
+    while (!cursors.isEmpty()) {
+      emitHead();
+    }
+    emitBatch();
+    if (duplicatesCount > 0) {
+      log.info("Пропущено записей с повторяющимся временем: " + duplicatesCount);
+    }
+  }
+
+  private void emitHead() {
+    final Cursor cursor = cursors.poll();
+    final Record rec = cursor.head;
+    if (isDropDuplicates && last != null && last.datetime.equals(rec.datetime)) {
+      duplicatesCount++;
+      if (duplicateListener != null) {
+        emitBatch();
+        duplicateListener.run();
+      }
+    } else {
+      last = rec;
+      batch.add(rec);
+      if (batch.size() == BATCH_SIZE) {
+        emitBatch();
+      }
+    }
+    if (cursor.advance()) {
+      cursors.add(cursor);
+    }
+  }
+
+  private void emitBatch() {
+    if (!batch.isEmpty()) {
+      downstream.accept(batch);
+      batch = new ArrayList<>(BATCH_SIZE);
+    }
+  }
+
+  private static class Cursor {
+
+    final Iterator<Record> iterator;
+    final int fileIx;
+    Record head;
+
+    Cursor(Iterator<Record> iterator, int fileIx) {
+      this.iterator = iterator;
+      this.fileIx = fileIx;
+      this.head = iterator.next();
+    }
+
+    boolean advance() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      head = iterator.next();
+      return true;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import static absaliks.logxl.log.LogFileProperties.COLUMNS_SEPARATOR;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Positions of column separators and line feeds in a byte buffer. The buffer is scanned a long
+ * word (eight bytes) at a time, the matching bytes of a word are found with a few bitwise
+ * operations instead of comparing them one by one.
+ */
+final class StructuralIndex {
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+  private static final long SEPARATORS = ONES * COLUMNS_SEPARATOR;
+  private static final long LINE_FEEDS = ONES * '\n';
+
+  private int[] positions = new int[1024];
+  private int size;
+
+  void scan(byte[] buffer, int from, int to) {
+    size = 0;
+    final ByteBuffer words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    int i = from;
+    for (; i + Long.BYTES <= to; i += Long.BYTES) {
+      final long word = words.getLong(i);
+      long matches = zeroBytes(word ^ SEPARATORS) | zeroBytes(word ^ LINE_FEEDS);
+      while (matches != 0) {
+        add(i + (Long.numberOfTrailingZeros(matches) >>> 3));
+        matches &= matches - 1;
+      }
+    }
+    for (; i < to; i++) {
+      if (buffer[i] == COLUMNS_SEPARATOR || buffer[i] == '\n') {
+        add(i);
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  int get(int ix) {
+    return positions[ix];
+  }
+
+  /**
+   * @return the word with the high bit set in every byte that is zero and all other bits cleared
+   */
+  static long zeroBytes(long word) {
+    return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+  }
+
+  private void add(int position) {
+    if (size == positions.length) {
+      positions = Arrays.copyOf(positions, size * 2);
+    }
+    positions[size++] = position;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.preview;
+
+import absaliks.logxl.log.DataQuality;
+import absaliks.logxl.log.Record;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only copy of averaged records kept in primitive arrays instead of a {@link Record} with a
+ * {@link LocalDateTime} per row. A record is built on every {@link #get(int)}.
+ */
+class CompactRecordList extends AbstractList<Record> implements RandomAccess {
+
+  private static final int QUALITY_FIELDS = 4;
+  private static final byte HEATING_CABLE_FLAG = 1;
+  private static final byte HEATING_ELEMENT_FLAG = 2;
+
+  private final int size;
+  private final int valuesCount;
+  private final long[] epochSeconds;
+  private final float[] values; // valuesCount per row
+  private final byte[] flags;
+  private final int[] quality; // QUALITY_FIELDS per row, null if the records have none
+  private final int percentilesCount; // per row
+  private final float[] percentiles;
+
+  CompactRecordList(List<Record> records) {
+    size = records.size();
+    valuesCount = size == 0 ? 0 : records.get(0).values.length;
+    epochSeconds = new long[size];
+    values = new float[size * valuesCount];
+    flags = new byte[size];
+    quality = size > 0 && records.get(0).quality != null ? new int[size * QUALITY_FIELDS] : null;
+    percentilesCount = size > 0 && records.get(0).percentiles != null
+        ? records.get(0).percentiles.length : 0;
+    percentiles = new float[size * percentilesCount];
+    for (int i = 0; i < size; i++) {
+      final Record rec = records.get(i);
+      epochSeconds[i] = rec.datetime.toEpochSecond(ZoneOffset.UTC);
+      System.arraycopy(rec.values, 0, values, i * valuesCount, valuesCount);
+      flags[i] = (byte) ((rec.isHeatingCableOn ? HEATING_CABLE_FLAG : 0)
+          | (rec.isHeatingElementOn ? HEATING_ELEMENT_FLAG : 0));
+      if (quality != null) {
+        final int offset = i * QUALITY_FIELDS;
+        quality[offset] = rec.quality.samples;
+        quality[offset + 1] = rec.quality.missingSeconds;
+        quality[offset + 2] = rec.quality.duplicates;
+        quality[offset + 3] = rec.quality.outOfOrder;
+      }
+      if (percentilesCount > 0) {
+        System.arraycopy(rec.percentiles, 0, percentiles, i * percentilesCount,
+            percentilesCount);
+      }
+    }
+  }
+
+  @Override
+  public Record get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+    final Record rec = new Record();
+    rec.datetime = LocalDateTime.ofEpochSecond(epochSeconds[index], 0, ZoneOffset.UTC);
+    rec.values = new float[valuesCount];
+    System.arraycopy(values, index * valuesCount, rec.values, 0, valuesCount);
+    rec.isHeatingCableOn = (flags[index] & HEATING_CABLE_FLAG) != 0;
+    rec.isHeatingElementOn = (flags[index] & HEATING_ELEMENT_FLAG) != 0;
+    if (quality != null) {
+      final int offset = index * QUALITY_FIELDS;
+      rec.quality = new DataQuality();
+      rec.quality.samples = quality[offset];
+      rec.quality.missingSeconds = quality[offset + 1];
+      rec.quality.duplicates = quality[offset + 2];
+      rec.quality.outOfOrder = quality[offset + 3];
+    }
+    if (percentilesCount > 0) {
+      rec.percentiles = new float[percentilesCount];
+      System.arraycopy(percentiles, index * percentilesCount, rec.percentiles, 0,
+          percentilesCount);
+    }
+    return rec;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+}
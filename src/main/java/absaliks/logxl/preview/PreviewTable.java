@@ -0,0 +1,109 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.preview;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Rows of a single report type for a table that asks for the visible rows only. Averaged rows are
+ * compacted and the builder is released at once, raw rows of the straight report are read from
+ * its buffer, which may be spilled to disk, so the builder is kept until {@link #close()}. Rows
+ * are read by pages, the last few pages stay in memory while the table is scrolled.
+ */
+public class PreviewTable extends AbstractList<Record> implements RandomAccess, Closeable {
+
+  static final int PAGE_SIZE = 256;
+  private static final int CACHED_PAGES = 8;
+
+  private final ReportType reportType;
+  private final List<Record> rows;
+  private final FanOutReportBuilder builder; // null once the rows are compacted
+  private final Map<Integer, Record[]> pages =
+      new LinkedHashMap<Integer, Record[]>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Record[]> eldest) {
+          return size() > CACHED_PAGES;
+        }
+      };
+
+  /**
+   * Takes over the builder, which must be flushed and contain the given report type.
+   */
+  public PreviewTable(FanOutReportBuilder builder, ReportType reportType) {
+    this.reportType = reportType;
+    if (reportType == ReportType.STRAIGHT) {
+      this.rows = builder.getRecords(reportType);
+      this.builder = builder;
+    } else {
+      try {
+        this.rows = new CompactRecordList(builder.getRecords(reportType));
+      } finally {
+        builder.close();
+      }
+      this.builder = null;
+    }
+  }
+
+  public ReportType getReportType() {
+    return reportType;
+  }
+
+  @Override
+  public synchronized Record get(int index) {
+    if (index < 0 || index >= rows.size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + rows.size());
+    }
+    final int pageIx = index / PAGE_SIZE;
+    Record[] page = pages.get(pageIx);
+    if (page == null) {
+      page = readPage(pageIx);
+      pages.put(pageIx, page);
+    }
+    return page[index - pageIx * PAGE_SIZE];
+  }
+
+  private Record[] readPage(int pageIx) {
+    final int from = pageIx * PAGE_SIZE;
+    final Record[] page = new Record[Math.min(PAGE_SIZE, rows.size() - from)];
+    for (int i = 0; i < page.length; i++) {
+      page[i] = rows.get(from + i);
+    }
+    return page;
+  }
+
+  @Override
+  public int size() {
+    return rows.size();
+  }
+
+  @Override
+  public synchronized void close() {
+    pages.clear();
+    if (builder != null) {
+      builder.close();
+    }
+  }
+}
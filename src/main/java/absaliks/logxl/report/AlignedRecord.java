@@ -0,0 +1,73 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import absaliks.logxl.log.Record;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records of several controllers sharing the same timestamp, {@code null} where a controller has
+ * no record for it.
+ */
+class AlignedRecord {
+
+  final LocalDateTime datetime;
+  final Record[] records;
+
+  private AlignedRecord(LocalDateTime datetime, int sourcesCount) {
+    this.datetime = datetime;
+    this.records = new Record[sourcesCount];
+  }
+
+  /**
+   * Merges lists sorted by time into a single one, walking all of them at once.
+   */
+  static List<AlignedRecord> align(List<List<Record>> recordsBySource) {
+    final int sourcesCount = recordsBySource.size();
+    final int[] positions = new int[sourcesCount];
+    final List<AlignedRecord> result = new ArrayList<>(
+        recordsBySource.stream().mapToInt(List::size).max().orElse(0));
+    while (true) {
+      LocalDateTime next = null;
+      for (int s = 0; s < sourcesCount; s++) {
+        List<Record> records = recordsBySource.get(s);
+        if (positions[s] < records.size()) {
+          LocalDateTime datetime = records.get(positions[s]).datetime;
+          if (next == null || datetime.isBefore(next)) {
+            next = datetime;
+          }
+        }
+      }
+      if (next == null) {
+        return result;
+      }
+
+      final AlignedRecord aligned = new AlignedRecord(next, sourcesCount);
+      for (int s = 0; s < sourcesCount; s++) {
+        List<Record> records = recordsBySource.get(s);
+        if (positions[s] < records.size() && records.get(positions[s]).datetime.equals(next)) {
+          aligned.records[s] = records.get(positions[s]++);
+        }
+      }
+      result.add(aligned);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Names of the measurement channels in the order of {@code Record.values}, the channel header of
+ * template.xlsx flattened to a single row.
+ */
+public final class Channels {
+
+  public static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(
+      "РТ001, МПа", "ТТ001, °C", "РТ002, МПа", "ТТ002, °C", "РТ003, МПа", "ТТ006, °C",
+      "LT001, мм", "РТ006, МПа", "ТТ004, °C", "FT001, м³/ч", "FT001, нм³/ч", "FT001, нм³/сут",
+      "РТ007, МПа", "ТТ004, °C", "FT002, м³/ч", "FT002, нм³/ч", "FT002, нм³/сут",
+      "PT004, МПа", "МТ001, %", "FT003, кг/ч", "FT003, т/сут", "FT003, м³/ч", "FT003, м³/сут",
+      "FT003, кг/м³", "FT003, °C", "PT005, МПа", "TT003, °C", "PT008, МПа", "TT007, °C",
+      "TT009, °C", "TT008, °C"));
+  public static final String HEATING_CABLE = "Греющий кабель";
+  public static final String HEATING_ELEMENT = "ТЭН";
+  /** Columns of the data quality of a bucket, in the order of {@code DataQuality} fields. */
+  public static final List<String> QUALITY_NAMES = Collections.unmodifiableList(Arrays.asList(
+      "Записей", "Нет данных, с", "Повторы", "Не по порядку"));
+
+  private Channels() {
+  }
+
+  /**
+   * @return e.g. {@code P95 РТ001, МПа}
+   */
+  public static String getPercentileName(int channel, double percentile) {
+    return "P" + formatPercentile(percentile) + " " + NAMES.get(channel);
+  }
+
+  /**
+   * @return e.g. {@code 95} or {@code 99.9}
+   */
+  public static String formatPercentile(double percentile) {
+    return BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString();
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.log.Record;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+interface Exporter {
+
+  void setCancellation(Cancellation cancellation);
+
+  void export(List<Record> records) throws IOException;
+
+  /**
+   * Writes records of each controller separately, labelled with the map key.
+   */
+  void exportSheets(Map<String, List<Record>> recordsBySheet) throws IOException;
+
+  /**
+   * Writes records of all controllers to a single table, a block of columns per controller.
+   */
+  void exportWide(List<String> prefixes, List<AlignedRecord> records) throws IOException;
+}
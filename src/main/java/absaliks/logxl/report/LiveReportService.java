@@ -0,0 +1,97 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import absaliks.logxl.AbstractFactory;
+import absaliks.logxl.config.Config;
+import absaliks.logxl.filesource.LogFileSource;
+import absaliks.logxl.log.LogTail;
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the report up to date while the current log file is still being written: on every change
+ * of the source only the appended lines are parsed and the rolling aggregates are re-exported.
+ */
+public class LiveReportService {
+
+  private static final Logger log = Logger.getLogger(LiveReportService.class.getName());
+
+  private final AbstractFactory factory;
+  private final Config config;
+
+  public LiveReportService(AbstractFactory factory) {
+    this.config = factory.getConfig();
+    this.factory = factory;
+  }
+
+  /**
+   * Runs until the calling thread is interrupted.
+   */
+  public void run() throws IOException {
+    final LogFileSource fileSource = factory.createLogFileSource();
+    final LogTail tail = new LogTail(config);
+    final FanOutReportBuilder builder =
+        new FanOutReportBuilder(EnumSet.of(config.reportType), config.percentiles);
+    try {
+      fileSource.initialize();
+      log.info("Режим реального времени запущен");
+      while (!Thread.currentThread().isInterrupted()) {
+        if (consumeAppendedRecords(fileSource, tail, builder)) {
+          export(builder.snapshot(config.reportType));
+        }
+        fileSource.awaitChanges(config.livePollSeconds * 1000L);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      fileSource.destroy();
+      log.info("Режим реального времени остановлен");
+    }
+  }
+
+  private boolean consumeAppendedRecords(LogFileSource fileSource, LogTail tail,
+      FanOutReportBuilder builder) throws IOException {
+    final List<String> fileList = ReportService.filterFileList(
+        fileSource.getFileList(config.dateFrom, config.dateTo), config);
+    boolean isUpdated = false;
+    for (String filename : fileList) {
+      File logFile = fileSource.refreshFile(filename);
+      List<Record> records = tail.readAppended(filename, logFile);
+      if (!records.isEmpty()) {
+        builder.consume(records);
+        isUpdated = true;
+      }
+    }
+    return isUpdated;
+  }
+
+  private void export(List<Record> records) throws IOException {
+    if (!records.isEmpty()) {
+      new ReportExporter(config, config.reportType, ReportExporter.OUTPUT_FILE,
+          config.dataQuality && config.reportType != ReportType.STRAIGHT,
+          ReportService.getExportedPercentiles(config, config.reportType)).export(records);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Output files of the recent report runs keyed by a fingerprint of the settings and the input
+ * files, so that a run repeated with nothing changed copies the stored files instead of building
+ * them again. The least recently used entries beyond {@code maxEntries} are evicted.
+ */
+class ReportCache {
+
+  private static final Logger log = Logger.getLogger(ReportCache.class.getName());
+
+  static final File DIRECTORY = new File(System.getProperty("user.dir"), "report-cache");
+  private static final String TEMP_PREFIX = "tmp-";
+
+  private final File directory;
+  private final int maxEntries;
+
+  ReportCache(File directory, int maxEntries) {
+    this.directory = directory;
+    this.maxEntries = maxEntries;
+  }
+
+  boolean isEnabled() {
+    return maxEntries > 0;
+  }
+
+  /**
+   * @param outputFiles where the files stored under the fingerprint are copied to, in the order
+   * they were stored in
+   * @return {@code false} if nothing is stored under the fingerprint or it could not be copied
+   */
+  boolean restore(String fingerprint, List<File> outputFiles) {
+    final File entry = new File(directory, hash(fingerprint));
+    if (!entry.isDirectory()) {
+      return false;
+    }
+    try {
+      for (int i = 0; i < outputFiles.size(); i++) {
+        final File stored = new File(entry, Integer.toString(i));
+        if (!stored.isFile()) {
+          return false;
+        }
+        Files.copy(stored.toPath(), outputFiles.get(i).toPath(), REPLACE_EXISTING);
+      }
+      if (!entry.setLastModified(System.currentTimeMillis())) {
+        log.fine("Failed to touch report cache entry " + entry);
+      }
+      return true;
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Не удалось взять отчет из кэша " + entry, e);
+      return false;
+    }
+  }
+
+  /**
+   * Failures are only logged, the report itself is already written.
+   */
+  void store(String fingerprint, List<File> outputFiles) {
+    final String hash = hash(fingerprint);
+    final File temp = new File(directory, TEMP_PREFIX + hash + "-" + System.nanoTime());
+    try {
+      Files.createDirectories(temp.toPath());
+      for (int i = 0; i < outputFiles.size(); i++) {
+        Files.copy(outputFiles.get(i).toPath(), new File(temp, Integer.toString(i)).toPath());
+      }
+      final File entry = new File(directory, hash);
+      delete(entry);
+      Files.move(temp.toPath(), entry.toPath(), ATOMIC_MOVE);
+      evict();
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Не удалось сохранить отчет в кэш " + directory, e);
+      try {
+        delete(temp);
+      } catch (IOException ignored) {
+        // left for the next eviction to skip
+      }
+    }
+  }
+
+  private void evict() throws IOException {
+    final File[] entries = directory.listFiles(
+        file -> file.isDirectory() && !file.getName().startsWith(TEMP_PREFIX));
+    if (entries == null || entries.length <= maxEntries) {
+      return;
+    }
+    Arrays.sort(entries, Comparator.comparingLong(File::lastModified).reversed());
+    for (int i = maxEntries; i < entries.length; i++) {
+      delete(entries[i]);
+    }
+  }
+
+  private static void delete(File entry) throws IOException {
+    if (!entry.exists()) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(entry.toPath())) {
+      final Iterator<Path> iterator =
+          paths.sorted(Comparator.reverseOrder()).iterator();
+      while (iterator.hasNext()) {
+        Files.delete(iterator.next());
+      }
+    }
+  }
+
+  private static String hash(String fingerprint) {
+    try {
+      final byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(fingerprint.getBytes(UTF_8));
+      final StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -18,85 +18,386 @@
 
 package absaliks.logxl.report;
 
+import absaliks.logxl.concurrent.Cancellation;
 import absaliks.logxl.config.Config;
+import absaliks.logxl.log.DataQuality;
+import absaliks.logxl.log.LogSchemas;
+import absaliks.logxl.log.ChannelSelection;
 import absaliks.logxl.log.Record;
+import absaliks.logxl.report.XlsxStreamWriter.SheetRows;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.Validate;
-import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.util.DateFormatConverter;
-import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
-class ReportExporter {
+class ReportExporter implements Exporter {
 
   private static final Logger log = Logger.getLogger(ReportExporter.class.getName());
 
-  private static final String TEMPLATE_FILE = "template.xlsx";
-  private static final File OUTPUT_FILE = new File("report.xlsx");
+  static final File OUTPUT_FILE = new File("report.xlsx");
   private static final int ROW_OFFSET = 8;
-  private static final Byte[] VALUES_DECIMAL_PLACES = {
-      2, 2, 2, 2, 2, 2, 1, 2, 2, 3, 3, 3, 2, 2, 3, 3, 3, 2, 1, 3, 3, 3, 3, 2, 2, 2, 2, 2, 2, 2, 2
-  };
+  private static final int SOURCE_LABEL_ROW = 3;
+  private static final int CHANNEL_HEADER_FIRST_ROW = 4;
+  private static final int CHANNEL_COLUMNS = 33; // measurements and heater columns of controller
+  private static final int HEATING_CABLE_COLUMN = ChannelSelection.CHANNELS_COUNT;
+  private static final int HEATING_ELEMENT_COLUMN = ChannelSelection.CHANNELS_COUNT + 1;
+  private static final int CANCELLATION_CHECK_INTERVAL = 1000; // rows
+  private static final String QUALITY_SHEET_NAME = "Качество данных";
+  private static final String PERCENTILES_SHEET_NAME = "Процентили";
 
   private final Config config;
-  private SXSSFWorkbook workbook;
+  private final ReportType reportType;
+  private final File outputFile;
+  private final boolean isQualityExported;
+  private final double[] percentiles;
+  private ReportTemplate reportTemplate;
+  private XSSFWorkbook workbook;
   private CellStyle borderedCellStyle;
   private CellStyle dateStyle;
-  private Map<Byte, CellStyle> floatRoundStyles;
+  private CellStyle[] floatRoundStyles; // by decimal places
+  private Cancellation cancellation = new Cancellation();
 
-  ReportExporter(Config config) {
+  /**
+   * Cells of a row of an extra sheet that follow the controller and the time of the record.
+   */
+  private interface RecordCells {
+    void add(XlsxStreamWriter rows, int column, Record rec) throws IOException;
+  }
+
+  /**
+   * @param isQualityExported whether {@link Record#quality} of the records is written to a sheet
+   * of its own after the data sheets
+   * @param percentiles {@link Record#percentiles} written to a sheet of their own after the data
+   * and quality sheets, none if empty
+   */
+  ReportExporter(Config config, ReportType reportType, File outputFile,
+      boolean isQualityExported, List<Double> percentiles) {
     this.config = config;
+    this.reportType = reportType;
+    this.outputFile = outputFile;
+    this.isQualityExported = isQualityExported;
+    this.percentiles = percentiles.stream().mapToDouble(Double::doubleValue).toArray();
   }
 
-  void export(List<Record> records) throws IOException {
+  @Override
+  public void setCancellation(Cancellation cancellation) {
+    this.cancellation = cancellation;
+  }
+
+  @Override
+  public void export(List<Record> records) throws IOException {
     Validate.notEmpty(records, "Результат пустой, нечего выгружать");
-    deleteReportFile();
+    exportSheets(Collections.singletonMap(null, records));
+  }
 
-    log.info("Выгружаю отчет в файл " + OUTPUT_FILE.getAbsolutePath());
+  /**
+   * Writes records of each controller to a separate sheet named after the map key.
+   */
+  @Override
+  public void exportSheets(Map<String, List<Record>> recordsBySheet) throws IOException {
+    Validate.isTrue(recordsBySheet.values().stream().anyMatch(records -> !records.isEmpty()),
+        "Результат пустой, нечего выгружать");
+    XSSFWorkbook template = openTemplate();
+    List<String> sheetNames = new ArrayList<>(recordsBySheet.keySet());
+    for (int i = 1; i < sheetNames.size(); i++) {
+      template.cloneSheet(0, sheetNames.get(i));
+    }
+    if (sheetNames.get(0) != null) {
+      template.setSheetName(0, sheetNames.get(0));
+    }
+    for (int i = 0; i < sheetNames.size(); i++) {
+      fillMetaData(template.getSheetAt(i));
+      hideUnselectedColumns(template.getSheetAt(i), 1);
+    }
+
+    createStyles(template);
+    final List<SheetRows> sheets = new ArrayList<>(recordsBySheet.size());
+    for (List<Record> records : recordsBySheet.values()) {
+      sheets.add(rows -> {
+        for (int i = 0; i < records.size(); i++) {
+          throwIfCancelled(i);
+          rows.startRow(i + ROW_OFFSET);
+          Record rec = records.get(i);
+          addDateCell(rec.datetime, rows);
+          addRecordCells(rec, rows, 1);
+          rows.endRow();
+        }
+      });
+    }
+    final boolean hasSourceColumn = sheetNames.get(0) != null;
+    if (isQualityExported) {
+      createExtraSheet(template, QUALITY_SHEET_NAME, Channels.QUALITY_NAMES, hasSourceColumn);
+      sheets.add(createExtraRows(recordsBySheet, hasSourceColumn, this::addQualityCells));
+    }
+    if (percentiles.length > 0) {
+      createExtraSheet(template, PERCENTILES_SHEET_NAME, getPercentileNames(), hasSourceColumn);
+      sheets.add(createExtraRows(recordsBySheet, hasSourceColumn, this::addPercentileCells));
+    }
+    writeWorkbook(sheets);
+  }
+
+  /**
+   * Writes records of all controllers to a single sheet, a block of columns per controller.
+   */
+  @Override
+  public void exportWide(List<String> prefixes, List<AlignedRecord> records) throws IOException {
+    Validate.notEmpty(records, "Результат пустой, нечего выгружать");
+    XSSFWorkbook template = openTemplate();
+    Sheet templateSheet = template.getSheetAt(0);
+    fillMetaData(templateSheet);
+    for (int s = 0; s < prefixes.size(); s++) {
+      if (s > 0) {
+        copyChannelHeader(templateSheet, s * CHANNEL_COLUMNS);
+      }
+      addSourceLabel(templateSheet, prefixes.get(s), s * CHANNEL_COLUMNS);
+    }
+    hideUnselectedColumns(templateSheet, prefixes.size());
+
+    createStyles(template);
+    final List<SheetRows> sheets = new ArrayList<>(2);
+    sheets.add(rows -> {
+      for (int i = 0; i < records.size(); i++) {
+        throwIfCancelled(i);
+        rows.startRow(i + ROW_OFFSET);
+        AlignedRecord aligned = records.get(i);
+        addDateCell(aligned.datetime, rows);
+        for (int s = 0; s < aligned.records.length; s++) {
+          if (aligned.records[s] != null) {
+            addRecordCells(aligned.records[s], rows, 1 + s * CHANNEL_COLUMNS);
+          }
+        }
+        rows.endRow();
+      }
+    });
+    if (isQualityExported) {
+      createExtraSheet(template, QUALITY_SHEET_NAME, Channels.QUALITY_NAMES, true);
+      sheets.add(createExtraRows(prefixes, records, this::addQualityCells));
+    }
+    if (percentiles.length > 0) {
+      createExtraSheet(template, PERCENTILES_SHEET_NAME, getPercentileNames(), true);
+      sheets.add(createExtraRows(prefixes, records, this::addPercentileCells));
+    }
+    writeWorkbook(sheets);
+  }
 
-    XSSFWorkbook template = new XSSFWorkbook(getTemplateFileStream());
-    fillMetaData(template.getSheetAt(0));
-    this.workbook = new SXSSFWorkbook(template, 100);
-    Sheet sheet = this.workbook.getSheetAt(0);
-    floatRoundStyles = createFloatRoundStyles();
-    dateStyle = createDateStyle();
-    borderedCellStyle = createBorderedCellStyle();
-    for (int i = 0; i < records.size(); i++) {
-      Row row = sheet.createRow(i + ROW_OFFSET);
-      Record rec = records.get(i);
-      addDateCell(rec, row);
-      addMeasurementsCells(rec.values, row);
-      addBooleanCell(rec.isHeatingCableOn, row, 32);
-      addBooleanCell(rec.isHeatingElementOn, row, 33);
+  /**
+   * Creates a sheet with a row per record of every controller, e.g. for the data quality.
+   */
+  private void createExtraSheet(XSSFWorkbook template, String sheetName, List<String> names,
+      boolean hasSourceColumn) {
+    final Sheet sheet = template.createSheet(sheetName);
+    final Row header = sheet.createRow(0);
+    int column = 0;
+    if (hasSourceColumn) {
+      createHeaderCell(header, column++, "Контроллер");
+    }
+    createHeaderCell(header, column++, "Дата/Время");
+    for (String name : names) {
+      createHeaderCell(header, column++, name);
+    }
+    for (int x = 0; x < column; x++) {
+      final String name = header.getCell(x).getStringCellValue();
+      sheet.setColumnWidth(x, Math.max(16, name.length() + 2) * 256);
     }
+  }
 
-    FileOutputStream out = new FileOutputStream(OUTPUT_FILE);
-    this.workbook.write(out);
-    out.close();
+  private SheetRows createExtraRows(Map<String, List<Record>> recordsBySheet,
+      boolean hasSourceColumn, RecordCells cells) {
+    return rows -> {
+      int rowIx = 1;
+      for (Map.Entry<String, List<Record>> entry : recordsBySheet.entrySet()) {
+        for (Record rec : entry.getValue()) {
+          throwIfCancelled(rowIx);
+          addExtraRow(rows, rowIx++, hasSourceColumn ? entry.getKey() : null, rec, cells);
+        }
+      }
+    };
+  }
 
-    this.workbook.dispose();
+  private SheetRows createExtraRows(List<String> prefixes, List<AlignedRecord> records,
+      RecordCells cells) {
+    return rows -> {
+      int rowIx = 1;
+      for (AlignedRecord aligned : records) {
+        for (int s = 0; s < aligned.records.length; s++) {
+          if (aligned.records[s] != null) {
+            throwIfCancelled(rowIx);
+            addExtraRow(rows, rowIx++, prefixes.get(s), aligned.records[s], cells);
+          }
+        }
+      }
+    };
   }
 
-  private InputStream getTemplateFileStream() {
-    InputStream stream = ReportExporter.class.getClassLoader().getResourceAsStream(TEMPLATE_FILE);
-    if (stream == null) {
-      log.severe("Template file not found " + TEMPLATE_FILE);
-      throw new RuntimeException("Шаблон для выгрузки не найден: " + TEMPLATE_FILE);
+  private List<String> getPercentileNames() {
+    final List<String> names = new ArrayList<>(config.channels.size() * percentiles.length);
+    for (int channel : config.channels.getChannels()) {
+      for (double percentile : percentiles) {
+        names.add(Channels.getPercentileName(channel, percentile));
+      }
     }
-    return stream;
+    return names;
+  }
+
+  private void createHeaderCell(Row header, int column, String value) {
+    final Cell cell = header.createCell(column);
+    cell.setCellValue(value);
+    cell.setCellStyle(borderedCellStyle);
+  }
+
+  private void addExtraRow(XlsxStreamWriter rows, int rowIx, String source, Record rec,
+      RecordCells cells) throws IOException {
+    rows.startRow(rowIx);
+    int column = 0;
+    if (source != null) {
+      rows.addStringCell(column++, borderedCellStyle.getIndex(), source);
+    }
+    rows.addDateCell(column++, dateStyle.getIndex(), rec.datetime);
+    cells.add(rows, column, rec);
+    rows.endRow();
+  }
+
+  private void addQualityCells(XlsxStreamWriter rows, int firstColumn, Record rec)
+      throws IOException {
+    int column = firstColumn;
+    final DataQuality quality = rec.quality;
+    final int style = borderedCellStyle.getIndex();
+    rows.addNumberCell(column++, style, quality.samples);
+    rows.addNumberCell(column++, style, quality.missingSeconds);
+    rows.addNumberCell(column++, style, quality.duplicates);
+    rows.addNumberCell(column, style, quality.outOfOrder);
+  }
+
+  private void addPercentileCells(XlsxStreamWriter rows, int firstColumn, Record rec)
+      throws IOException {
+    final LogSchemas schemas = LogSchemas.getInstance();
+    for (int i = 0; i < rec.percentiles.length; i++) {
+      final int channel = config.channels.getChannel(i / percentiles.length);
+      rows.addNumberCell(firstColumn + i,
+          floatRoundStyles[schemas.getDecimalPlaces(channel)].getIndex(), rec.percentiles[i]);
+    }
+  }
+
+  private void throwIfCancelled(int rowIx) {
+    if (rowIx % CANCELLATION_CHECK_INTERVAL == 0) {
+      cancellation.throwIfCancelled();
+    }
+  }
+
+  private XSSFWorkbook openTemplate() throws IOException {
+    deleteReportFile(outputFile);
+    log.info("Выгружаю отчет в файл " + outputFile.getAbsolutePath());
+    reportTemplate = ReportTemplate.take();
+    return reportTemplate.workbook;
+  }
+
+  /**
+   * The styles are created along with the template, before the export needs them.
+   */
+  private void createStyles(XSSFWorkbook workbook) {
+    this.workbook = workbook;
+    floatRoundStyles = reportTemplate.floatRoundStyles;
+    dateStyle = reportTemplate.getDateStyle(reportType);
+    borderedCellStyle = reportTemplate.borderedCellStyle;
+  }
+
+  /**
+   * Serializes the prepared template and streams the data rows of its sheets into the output
+   * file, in the order of the sheets.
+   */
+  private void writeWorkbook(List<SheetRows> sheets) throws IOException {
+    final Map<String, SheetRows> rowsByPart = new HashMap<>(sheets.size());
+    final ByteArrayOutputStream template = new ByteArrayOutputStream();
+    try (XSSFWorkbook templateWorkbook = this.workbook) {
+      for (int i = 0; i < sheets.size(); i++) {
+        rowsByPart.put(
+            templateWorkbook.getSheetAt(i).getPackagePart().getPartName().getName().substring(1),
+            sheets.get(i));
+      }
+      templateWorkbook.write(template);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+      XlsxStreamWriter.write(template.toByteArray(), rowsByPart, out);
+    } catch (IOException | RuntimeException e) {
+      if (!outputFile.delete()) {
+        log.warning("Не удалось удалить недописанный файл " + outputFile.getAbsolutePath());
+      }
+      throw e;
+    }
+  }
+
+  private void copyChannelHeader(Sheet sheet, int columnOffset) {
+    for (int y = CHANNEL_HEADER_FIRST_ROW; y < ROW_OFFSET; y++) {
+      Row row = sheet.getRow(y);
+      if (row == null) {
+        continue;
+      }
+      for (int x = 1; x <= CHANNEL_COLUMNS; x++) {
+        Cell source = row.getCell(x);
+        if (source != null) {
+          Cell target = row.createCell(x + columnOffset);
+          target.setCellStyle(source.getCellStyle());
+          if (source.getCellType() == CellType.STRING) {
+            target.setCellValue(source.getStringCellValue());
+          }
+        }
+      }
+    }
+    for (int x = 1; x <= CHANNEL_COLUMNS; x++) {
+      sheet.setColumnWidth(x + columnOffset, sheet.getColumnWidth(x));
+    }
+    for (CellRangeAddress region : new ArrayList<>(sheet.getMergedRegions())) {
+      if (region.getFirstRow() >= CHANNEL_HEADER_FIRST_ROW && region.getFirstColumn() >= 1
+          && region.getLastColumn() <= CHANNEL_COLUMNS) {
+        sheet.addMergedRegion(new CellRangeAddress(region.getFirstRow(), region.getLastRow(),
+            region.getFirstColumn() + columnOffset, region.getLastColumn() + columnOffset));
+      }
+    }
+  }
+
+  /**
+   * Columns keep their template positions, those of channels that were not parsed are hidden.
+   */
+  private void hideUnselectedColumns(Sheet sheet, int blocksCount) {
+    final ChannelSelection channels = config.channels;
+    for (int s = 0; s < blocksCount; s++) {
+      final int firstColumn = 1 + s * CHANNEL_COLUMNS;
+      for (int channel = 0; channel < ChannelSelection.CHANNELS_COUNT; channel++) {
+        if (!channels.contains(channel)) {
+          sheet.setColumnHidden(firstColumn + channel, true);
+        }
+      }
+      sheet.setColumnHidden(firstColumn + HEATING_CABLE_COLUMN, !channels.isHeatingCableSelected);
+      sheet.setColumnHidden(firstColumn + HEATING_ELEMENT_COLUMN,
+          !channels.isHeatingElementSelected);
+    }
+  }
+
+  private void addSourceLabel(Sheet sheet, String prefix, int columnOffset) {
+    Row row = sheet.getRow(SOURCE_LABEL_ROW);
+    row = row != null ? row : sheet.createRow(SOURCE_LABEL_ROW);
+    Cell cell = row.createCell(1 + columnOffset);
+    cell.setCellValue(prefix);
+    cell.setCellStyle(sheet.getRow(CHANNEL_HEADER_FIRST_ROW).getCell(1).getCellStyle());
+    sheet.addMergedRegion(new CellRangeAddress(SOURCE_LABEL_ROW, SOURCE_LABEL_ROW,
+        1 + columnOffset, CHANNEL_COLUMNS + columnOffset));
   }
 
   private void fillMetaData(Sheet sheet) {
@@ -111,81 +412,43 @@ class ReportExporter {
     return cell != null ? cell : row.createCell(3);
   }
 
-  private Map<Byte, CellStyle> createFloatRoundStyles() {
-    final Map<Byte, CellStyle> styles = new HashMap<>(3);
-    for (byte i = 1; i <= 3; i++) {
-      CellStyle dataStyle = createBorderedCellStyle();
-      String format;
-      switch (i) {
-        case 1:
-          format = "0.#";
-          break;
-        case 2:
-          format = "0.##";
-          break;
-        case 3:
-          format = "0.###";
-          break;
-        default:
-          throw new IllegalStateException();
+  static void deleteReportFile(File outputFile) throws IOException {
+    if (outputFile.exists()) {
+      if (!outputFile.delete()) {
+        throw new IOException("Не могу удалить файл " + outputFile.getAbsolutePath());
       }
-      dataStyle.setDataFormat(workbook.createDataFormat().getFormat(format));
-      styles.put(i, dataStyle);
     }
-    return styles;
-  }
-
-  private CellStyle createBorderedCellStyle() {
-    CellStyle style = workbook.createCellStyle();
-    style.setBorderBottom(BorderStyle.THIN);
-    style.setBorderLeft(BorderStyle.THIN);
-    style.setBorderRight(BorderStyle.THIN);
-    return style;
   }
 
-  private CellStyle createDateStyle() {
-    CellStyle style = workbook.createCellStyle();
-    String excelFormatPattern = DateFormatConverter.convert(Locale.US, getDateFormat());
-    DataFormat poiFormat = workbook.createDataFormat();
-    style.setDataFormat(poiFormat.getFormat(excelFormatPattern));
-    style.setBorderBottom(BorderStyle.THIN);
-    style.setBorderLeft(BorderStyle.THIN);
-    return style;
+  private void addDateCell(LocalDateTime datetime, XlsxStreamWriter rows) throws IOException {
+    rows.addDateCell(0, dateStyle.getIndex(), datetime);
   }
 
-  private String getDateFormat() {
-    switch (config.reportType) {
-      case DAILY: return "dd.MM.yyyy";
-      case STRAIGHT: return "dd.MM.yyyy HH:mm:ss";
-      default: return "dd.MM.yyyy HH:mm";
+  private void addRecordCells(Record rec, XlsxStreamWriter rows, int firstColumn)
+      throws IOException {
+    addMeasurementsCells(rec.values, rows, firstColumn);
+    final ChannelSelection channels = config.channels;
+    if (channels.isHeatingCableSelected) {
+      addBooleanCell(rec.isHeatingCableOn, rows, firstColumn + HEATING_CABLE_COLUMN);
     }
-  }
-
-  static void deleteReportFile() throws IOException {
-    if (OUTPUT_FILE.exists()) {
-      if (!OUTPUT_FILE.delete()) {
-        throw new IOException("Не могу удалить файл " + OUTPUT_FILE.getAbsolutePath());
-      }
+    if (channels.isHeatingElementSelected) {
+      addBooleanCell(rec.isHeatingElementOn, rows, firstColumn + HEATING_ELEMENT_COLUMN);
     }
   }
 
-  private void addDateCell(Record rec, Row row) {
-    Cell cell = row.createCell(0);
-    cell.setCellValue(java.sql.Timestamp.valueOf(rec.datetime));
-    cell.setCellStyle(dateStyle);
-  }
-
-  private void addMeasurementsCells(float[] values, Row row) {
+  private void addMeasurementsCells(float[] values, XlsxStreamWriter rows, int firstColumn)
+      throws IOException {
+    final ChannelSelection channels = config.channels;
+    final LogSchemas schemas = LogSchemas.getInstance();
     for (int i = 0; i < values.length; i++) {
-      Cell cell = row.createCell(i + 1);
-      cell.setCellValue(values[i]);
-      cell.setCellStyle(floatRoundStyles.get(VALUES_DECIMAL_PLACES[i]));
+      final int channel = channels.getChannel(i);
+      rows.addNumberCell(channel + firstColumn,
+          floatRoundStyles[schemas.getDecimalPlaces(channel)].getIndex(), values[i]);
     }
   }
 
-  private void addBooleanCell(boolean value, Row row, int columnNumber) {
-    final Cell cell = row.createCell(columnNumber);
-    cell.setCellValue(value ? "ВКЛ" : "ВЫКЛ");
-    cell.setCellStyle(borderedCellStyle);
+  private void addBooleanCell(boolean value, XlsxStreamWriter rows, int columnNumber)
+      throws IOException {
+    rows.addStringCell(columnNumber, borderedCellStyle.getIndex(), value ? "ВКЛ" : "ВЫКЛ");
   }
 }
@@ -18,82 +18,606 @@
 
 package absaliks.logxl.report;
 
+import static absaliks.logxl.log.LogFileProperties.FILE_EXTENSION;
+import static absaliks.logxl.log.LogFileProperties.FILE_NAME_PATTERN;
+
 import absaliks.logxl.AbstractFactory;
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.concurrent.MemoryBudget;
+import absaliks.logxl.concurrent.ThreadPools;
 import absaliks.logxl.config.Config;
+import absaliks.logxl.config.SourceConfig;
 import absaliks.logxl.filesource.LogFileSource;
+import absaliks.logxl.filter.RowFilterCompiler;
 import absaliks.logxl.log.LogParser;
+import absaliks.logxl.log.LogSchemas;
 import absaliks.logxl.log.Record;
-import absaliks.logxl.report.builder.ReportBuilder;
+import absaliks.logxl.log.RecordMerger;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import absaliks.logxl.report.builder.PartialReport;
+import absaliks.logxl.shard.ShardCoordinator;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.DoubleConsumer;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 
 public class ReportService {
 
   private static final Logger log = Logger.getLogger(ReportService.class.getName());
   private static final DateTimeFormatter FORMATTER = DateTimeFormatter
-      .ofPattern("yyyy.MM.dd_HH_mm")
+      .ofPattern(FILE_NAME_PATTERN)
       .withZone(ZoneId.systemDefault());
+  private static final int FILE_SIZE_FACTOR = 3; // file bytes plus the records parsed from them
+  private static final int RECORD_OVERHEAD = 120; // bytes
 
   private final DoubleProperty progress = new SimpleDoubleProperty();
   private final AbstractFactory factory;
   private final Config config;
+  private final ExecutorService ioExecutor;
+  private final ExecutorService cpuExecutor;
+  private final MemoryBudget memoryBudget;
+  private final ReportCache reportCache;
 
   public ReportService(AbstractFactory factory) {
-    this.config = factory.getConfig();
+    this(factory, factory.getConfig());
+  }
+
+  /**
+   * @param config settings of this service, e.g. a copy adjusted for a scheduled run
+   */
+  public ReportService(AbstractFactory factory, Config config) {
+    this.config = config;
     this.factory = factory;
+    this.ioExecutor = ThreadPools.newIoExecutor("logxl-io", Math.max(1, config.ioParallelism));
+    this.cpuExecutor = ThreadPools.newCpuExecutor("logxl-parser");
+    this.memoryBudget = new MemoryBudget(getMemoryBudget(config));
+    this.reportCache = new ReportCache(ReportCache.DIRECTORY, config.reportCacheSize);
+  }
+
+  /**
+   * Half of the heap unless configured, the other half is left for the builders and the export.
+   */
+  private static long getMemoryBudget(Config config) {
+    return config.memoryBudgetMb > 0
+        ? config.memoryBudgetMb * 1024L * 1024 : Runtime.getRuntime().maxMemory() / 2;
+  }
+
+  /**
+   * Prepares the Excel export in the background, so that the first report after the start does
+   * not wait for the template to be parsed and the classes of the export to be loaded.
+   */
+  public static void warmUpExport() {
+    ReportTemplate.warmUp();
   }
 
   public DoubleProperty progress() {
     return progress;
   }
 
+  public void shutdown() {
+    ioExecutor.shutdownNow();
+    cpuExecutor.shutdownNow();
+  }
+
   public void createReport() throws IOException {
+    createReport(new Cancellation());
+  }
+
+  /**
+   * @return {@code false} if the run was cancelled and only the records gathered before that were
+   * exported
+   */
+  public boolean createReport(Cancellation cancellation) throws IOException {
+    resetProgress();
+    validateConfiguration();
+    final Set<ReportType> reportTypes = getReportTypes();
+    final List<File> outputFiles =
+        reportTypes.stream().map(this::getOutputFile).collect(Collectors.toList());
+    final String fingerprint = reportCache.isEnabled() ? getFingerprint(reportTypes) : null;
+    if (fingerprint != null && reportCache.restore(fingerprint, outputFiles)) {
+      log.info("Настройки и файлы логов не изменились, отчет взят из кэша");
+      progress.setValue(1);
+      return true;
+    }
+    for (File outputFile : outputFiles) {
+      ReportExporter.deleteReportFile(outputFile);
+    }
+
+    final List<SourceConfig> sources = config.getSources();
+    if (sources.size() == 1 && config.shardWorkers > 1) {
+      final PartialReport report = buildSharded(sources.get(0), cancellation);
+      final Cancellation exportCancellation = getExportCancellation(cancellation);
+      for (ReportType reportType : reportTypes) {
+        Exporter exporter = createExporter(reportType);
+        exporter.setCancellation(exportCancellation);
+        exporter.export(report.getRecords(reportType));
+      }
+    } else if (sources.size() == 1) {
+      try (FanOutReportBuilder builder = buildReport(
+          factory.createLogFileSource(sources.get(0)), reportTypes, cancellation,
+          progress::setValue)) {
+        final Cancellation exportCancellation = getExportCancellation(cancellation);
+        for (ReportType reportType : reportTypes) {
+          Exporter exporter = createExporter(reportType);
+          exporter.setCancellation(exportCancellation);
+          exporter.export(builder.getRecords(reportType));
+        }
+      }
+    } else {
+      final List<FanOutReportBuilder> builders = buildReports(sources, reportTypes, cancellation);
+      try {
+        final Cancellation exportCancellation = getExportCancellation(cancellation);
+        for (ReportType reportType : reportTypes) {
+          exportMerged(sources, builders, reportType, exportCancellation);
+        }
+      } finally {
+        builders.forEach(FanOutReportBuilder::close);
+      }
+    }
+    if (config.parallelIo) {
+      log.info("Пик данных в обработке: " + memoryBudget.getPeak() / 1024 / 1024 + " МБ из "
+          + memoryBudget.getLimit() / 1024 / 1024 + " МБ, " + memoryBudget.getPeakRows()
+          + " записей");
+    }
+    if (fingerprint != null && !cancellation.isCancelled()) {
+      reportCache.store(fingerprint, outputFiles);
+    }
+    progress.setValue(1);
+    return !cancellation.isCancelled();
+  }
+
+  /**
+   * Everything the content of the reports depends on: the settings, the log schemas and the name
+   * and stamp of every input file. Where the reports are written to is not a part of it.
+   *
+   * @return {@code null} if a source cannot tell whether its files have changed
+   */
+  private String getFingerprint(Set<ReportType> reportTypes) throws IOException {
+    final StringBuilder text = new StringBuilder()
+        .append(reportTypes).append('|').append(config.dateFrom).append('|')
+        .append(config.dateTo).append('|').append(config.channels).append('|')
+        .append(config.rowFilter).append('|').append(config.dropDuplicates).append('|')
+        .append(config.dataQuality).append('|').append(config.percentiles).append('|')
+        .append(config.isSilent).append('|')
+        .append(config.exportFormat).append('|').append(config.exportGzip).append('|')
+        .append(config.multiSourceLayout).append('|').append(config.userName).append('|')
+        .append(config.userPhone).append('|').append(LogSchemas.getInstance().getFingerprint());
+    for (SourceConfig source : config.getSources()) {
+      text.append('\n').append(source.prefix).append('|').append(source.logsSource).append('|')
+          .append(source.directory).append('|').append(source.ftpServer).append('|')
+          .append(source.ftpPort).append('|').append(source.ftpLogin);
+      final LogFileSource fileSource = factory.createLogFileSource(source);
+      try {
+        fileSource.initialize();
+        for (String filename : filterFileList(getFileList(fileSource), config)) {
+          final String stamp = fileSource.getFileStamp(filename);
+          if (stamp == null) {
+            return null;
+          }
+          text.append('\n').append(filename).append('=').append(stamp);
+        }
+      } finally {
+        fileSource.destroy();
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * Aggregates the period of the first controller to every averaged report type at once, so that
+   * a chart of any range can be drawn from a level of a suitable resolution. The raw records are
+   * not kept, the caller must close the builder.
+   */
+  public FanOutReportBuilder buildRollups(Cancellation cancellation) throws IOException {
+    resetProgress();
+    validateConfiguration();
+    final FanOutReportBuilder rollups = buildReport(
+        factory.createLogFileSource(config.getSources().get(0)),
+        EnumSet.complementOf(EnumSet.of(ReportType.STRAIGHT)), cancellation, progress::setValue);
+    progress.setValue(1);
+    return rollups;
+  }
+
+  /**
+   * Aggregates the period of the first controller to the selected report type without exporting
+   * it, the caller must close the builder.
+   */
+  public FanOutReportBuilder buildPreview(Cancellation cancellation) throws IOException {
     resetProgress();
-    final LogFileSource fileSource = factory.createLogFileSource();
     validateConfiguration();
-    ReportExporter.deleteReportFile();
+    final FanOutReportBuilder preview = buildReport(
+        factory.createLogFileSource(config.getSources().get(0)),
+        EnumSet.of(config.reportType), cancellation, progress::setValue);
+    progress.setValue(1);
+    return preview;
+  }
+
+  /**
+   * Exports the rows of a {@link #buildPreview(Cancellation) preview} to the file of the selected
+   * report type, so that a report that has been checked is not built once again.
+   */
+  public void exportPreview(List<Record> records, Cancellation cancellation) throws IOException {
+    resetProgress();
+    ReportExporter.deleteReportFile(getOutputFile(config.reportType));
+    final Exporter exporter = createExporter(config.reportType);
+    exporter.setCancellation(cancellation);
+    exporter.export(records);
+    progress.setValue(1);
+  }
+
+  /**
+   * Aggregates the given files only, for the coordinator of a sharded run that merges the result
+   * with the parts of the other workers.
+   */
+  public PartialReport buildPartialReport(List<String> fileList, Cancellation cancellation)
+      throws IOException {
+    try (FanOutReportBuilder builder =
+        FanOutReportBuilder.partial(getReportTypes(), config.percentiles)) {
+      buildReport(factory.createLogFileSource(config.getSources().get(0)), files -> fileList,
+          builder, cancellation, progress::setValue);
+      return builder.toPartialReport();
+    }
+  }
+
+  /**
+   * Lists the files here and leaves the parsing and aggregation to worker processes, a partial
+   * result is not available in this mode.
+   */
+  private PartialReport buildSharded(SourceConfig source, Cancellation cancellation)
+      throws IOException {
+    final List<String> fileList;
+    final LogFileSource fileSource = factory.createLogFileSource(source);
     try {
+      fileSource.setCancellation(cancellation);
       fileSource.initialize();
+      fileList = filterFileList(getFileList(fileSource), config);
+    } finally {
+      fileSource.destroy();
+    }
+    Validate.isTrue(!fileList.isEmpty(),
+        "Не найдено ни одного файла удовлетворяющего выбранным датам");
+    return new ShardCoordinator(factory.getConfigSerializer(), config)
+        .build(fileList, cancellation, progress::setValue);
+  }
+
+  /**
+   * Partial result is exported with no regard to the cancellation that caused it.
+   */
+  private Cancellation getExportCancellation(Cancellation cancellation) {
+    return cancellation.isCancelled() ? new Cancellation() : cancellation;
+  }
 
-      List<String> fileList = filterFileList(fileSource.getFileList());
+  private FanOutReportBuilder buildReport(LogFileSource fileSource, Set<ReportType> reportTypes,
+      Cancellation cancellation, DoubleConsumer progressListener) throws IOException {
+    final FanOutReportBuilder builder = new FanOutReportBuilder(reportTypes,
+        config.straightBufferMb * 1024L * 1024, config.percentiles);
+    try {
+      buildReport(fileSource, files -> filterFileList(files, config), builder, cancellation,
+          progressListener);
+    } catch (IOException | RuntimeException e) {
+      builder.close();
+      throw e;
+    }
+    return builder;
+  }
+
+  /**
+   * @param fileSelector picks the files to aggregate from all the files of the source
+   */
+  private void buildReport(LogFileSource fileSource, UnaryOperator<List<String>> fileSelector,
+      FanOutReportBuilder builder, Cancellation cancellation, DoubleConsumer progressListener)
+      throws IOException {
+    // the merger flushes its batch before every notification, so it is only asked for if counted
+    final Runnable duplicateListener = config.dataQuality ? builder::onDroppedDuplicate : null;
+    final RecordMerger merger =
+        new RecordMerger(config.dropDuplicates, builder::consume, duplicateListener);
+    try {
+      fileSource.setCancellation(cancellation);
+      fileSource.initialize();
+
+      List<String> fileList = fileSelector.apply(getFileList(fileSource));
       Validate.isTrue(!fileList.isEmpty(),
           "Не найдено ни одного файла удовлетворяющего выбранным датам");
-      final int filesCount = fileList.size();
-
-      final ReportBuilder builder = ReportBuilder.create(config.reportType);
-      for (int i = 0; i < fileList.size(); i++) {
-        String filename = fileList.get(i);
-        log.info("Обработка файла " + filename);
-        File logFile = fileSource.getFile(filename);
-        try (InputStream stream = new FileInputStream(logFile)) {
-          List<Record> records = new LogParser(stream, config).parse();
-          builder.consume(records);
-        } catch (Exception e) {
-          log.log(Level.SEVERE, "Parse error in file " + filename, e);
-          throw new RuntimeException(
-              "Ошибка при обработке файла " + filename + ":\n" + e.getMessage());
+      if (config.parallelIo) {
+        parseConcurrently(fileSource, fileList, merger, cancellation, progressListener);
+      } else {
+        parseSequentially(fileSource, fileList, merger, cancellation, progressListener);
+      }
+    } catch (CancellationException e) {
+      if (!cancellation.isPartialResultRequested()) {
+        throw e;
+      }
+      log.info("Формирование отчета отменено, выгружаю частичный результат");
+    } finally {
+      fileSource.destroy();
+    }
+    merger.flush();
+    builder.flush();
+  }
+
+  private void parseSequentially(LogFileSource fileSource, List<String> fileList,
+      RecordMerger merger, Cancellation cancellation, DoubleConsumer progressListener)
+      throws IOException {
+    final int filesCount = fileList.size();
+    for (int i = 0; i < filesCount; i++) {
+      cancellation.throwIfCancelled();
+      String filename = fileList.get(i);
+      log.info("Обработка файла " + filename);
+      File logFile = fileSource.getFile(filename);
+      try (InputStream stream = new FileInputStream(logFile)) {
+        merger.add(parse(stream, filename, cancellation));
+      } catch (CancellationException e) {
+        throw e;
+      } catch (Exception e) {
+        throw parseError(filename, e);
+      }
+      progressListener.accept((0.0 + i) / filesCount);
+    }
+  }
+
+  /**
+   * Downloads and reads up to {@code config.ioParallelism} files ahead on the I/O executor, parses
+   * them on the CPU executor and feeds the merger strictly in file order. Files are read into
+   * memory only as long as the shared {@link MemoryBudget} allows, so the downloads go on while
+   * the parsing waits for the consumer.
+   *
+   * <p>The tasks run under a cancellation of their own, so that a failed file stops the files
+   * read ahead of it too. The method returns only once all of them are settled, the file source
+   * is then safe to destroy.
+   */
+  private void parseConcurrently(LogFileSource fileSource, List<String> fileList,
+      RecordMerger merger, Cancellation cancellation, DoubleConsumer progressListener) {
+    final int filesCount = fileList.size();
+    final int window = Math.max(1, config.ioParallelism);
+    final Deque<CompletableFuture<List<Record>>> pending = new ArrayDeque<>(window);
+    final Cancellation run = new Cancellation();
+    final Runnable cancelRun = () -> run.cancel(cancellation.isPartialResultRequested());
+    cancellation.onCancel(cancelRun);
+    fileSource.setCancellation(run);
+    int submitted = 0;
+    try (MemoryBudget.Stream budget = memoryBudget.openStream(run)) {
+      try {
+        for (int i = 0; i < filesCount; i++) {
+          while (submitted < filesCount && submitted < i + window) {
+            pending.add(submitParse(fileSource, fileList.get(submitted), submitted, budget, run));
+            submitted++;
+          }
+          cancellation.throwIfCancelled();
+          final List<Record> records = join(pending.poll(), fileList.get(i));
+          merger.add(records);
+          budget.release(estimateSize(records), records.size());
+          progressListener.accept((0.0 + i) / filesCount);
+        }
+      } finally {
+        if (!pending.isEmpty()) {
+          run.cancel(cancellation.isPartialResultRequested());
+          pending.forEach(ReportService::awaitQuietly);
         }
-        progress.setValue((0.0 + i) / filesCount);
       }
+    } finally {
+      cancellation.removeOnCancel(cancelRun);
+      fileSource.setCancellation(cancellation);
+    }
+  }
 
-      builder.flush();
-      new ReportExporter(config).export(builder.getRecords());
-      progress.setValue(1);
-    } catch (Exception e) {
-      fileSource.destroy();
-      throw e;
+  private static void awaitQuietly(CompletableFuture<?> future) {
+    try {
+      future.join();
+    } catch (CompletionException | CancellationException e) {
+      log.log(Level.FINE, "Задача прервана после остановки обработки", e);
+    }
+  }
+
+  private CompletableFuture<List<Record>> submitParse(LogFileSource fileSource, String filename,
+      int sequence, MemoryBudget.Stream budget, Cancellation cancellation) {
+    return CompletableFuture
+        .supplyAsync(() -> {
+          cancellation.throwIfCancelled();
+          log.info("Обработка файла " + filename);
+          return fileSource.getFile(filename);
+        }, ioExecutor)
+        .whenComplete((file, e) -> {
+          if (e != null) {
+            budget.skip(sequence);
+          }
+        })
+        .thenApplyAsync(file -> {
+          final long reserved = file.length() * FILE_SIZE_FACTOR;
+          budget.acquire(sequence, reserved);
+          try {
+            return new ReadFile(Files.readAllBytes(file.toPath()), reserved);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, ioExecutor)
+        .thenApplyAsync(read -> {
+          try {
+            final List<Record> records =
+                parse(new ByteArrayInputStream(read.bytes), filename, cancellation);
+            budget.adjust(read.reserved, estimateSize(records), records.size());
+            return records;
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, cpuExecutor);
+  }
+
+  private static class ReadFile {
+    final byte[] bytes;
+    final long reserved;
+
+    ReadFile(byte[] bytes, long reserved) {
+      this.bytes = bytes;
+      this.reserved = reserved;
+    }
+  }
+
+  /**
+   * Rough heap size of parsed records: the record, its date and time and the values array.
+   */
+  private static long estimateSize(List<Record> records) {
+    return records.isEmpty() ? 0
+        : records.size() * (RECORD_OVERHEAD + 4L * records.get(0).values.length);
+  }
+
+  private List<Record> join(CompletableFuture<List<Record>> future, String filename) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CancellationException) {
+        throw (CancellationException) cause;
+      }
+      throw parseError(filename, cause instanceof UncheckedIOException ? cause.getCause() : cause);
+    }
+  }
+
+  private List<Record> parse(InputStream stream, String filename, Cancellation cancellation)
+      throws IOException {
+    LogParser parser = new LogParser(stream, config);
+    parser.setCancellation(cancellation);
+    final List<Record> records = parser.parse();
+    if (!parser.getErrors().isEmpty()) {
+      log.warning("Файл " + filename + ": " + parser.getErrors());
+    }
+    return records;
+  }
+
+  private RuntimeException parseError(String filename, Throwable e) {
+    log.log(Level.SEVERE, "Parse error in file " + filename, e);
+    return new RuntimeException(
+        "Ошибка при обработке файла " + filename + ":\n" + e.getMessage());
+  }
+
+  /**
+   * Fetches and aggregates logs of all the controllers concurrently. If one of them fails, the
+   * others are cancelled and every builder made so far is closed.
+   */
+  private List<FanOutReportBuilder> buildReports(List<SourceConfig> sources,
+      Set<ReportType> reportTypes, Cancellation cancellation) throws IOException {
+    final double[] sourceProgress = new double[sources.size()];
+    final ExecutorService executor = Executors.newFixedThreadPool(sources.size());
+    final Cancellation sourcesCancellation = new Cancellation();
+    final Runnable cancelSources =
+        () -> sourcesCancellation.cancel(cancellation.isPartialResultRequested());
+    cancellation.onCancel(cancelSources);
+    final List<Future<FanOutReportBuilder>> futures = new ArrayList<>(sources.size());
+    final List<FanOutReportBuilder> builders = new ArrayList<>(sources.size());
+    boolean isBuilt = false;
+    try {
+      for (int s = 0; s < sources.size(); s++) {
+        final int sourceIx = s;
+        final SourceConfig source = sources.get(s);
+        futures.add(executor.submit(() -> {
+          log.info("Обработка контроллера " + source.prefix);
+          return buildReport(factory.createLogFileSource(source), reportTypes,
+              sourcesCancellation, value -> {
+                synchronized (sourceProgress) {
+                  sourceProgress[sourceIx] = value;
+                  progress.setValue(Arrays.stream(sourceProgress).sum() / sourceProgress.length);
+                }
+              });
+        }));
+      }
+
+      for (int s = 0; s < futures.size(); s++) {
+        builders.add(getResult(futures.get(s), sources.get(s)));
+      }
+      isBuilt = true;
+      return builders;
+    } finally {
+      if (!isBuilt) {
+        sourcesCancellation.cancel(false);
+        for (int s = builders.size(); s < futures.size(); s++) {
+          closeQuietly(futures.get(s));
+        }
+        builders.forEach(FanOutReportBuilder::close);
+      }
+      cancellation.removeOnCancel(cancelSources);
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for a source that is being cancelled and closes its builder if it still made one.
+   */
+  private static void closeQuietly(Future<FanOutReportBuilder> future) {
+    try {
+      future.get().close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | CancellationException e) {
+      log.log(Level.FINE, "Контроллер остановлен после ошибки другого", e.getCause());
+    }
+  }
+
+  private FanOutReportBuilder getResult(Future<FanOutReportBuilder> future, SourceConfig source)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Обработка прервана", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CancellationException) {
+        throw (CancellationException) cause;
+      }
+      log.log(Level.SEVERE, "Failed to process source " + source, cause);
+      throw new RuntimeException(
+          "Ошибка при обработке контроллера " + source.prefix + ":\n" + cause.getMessage(), cause);
+    }
+  }
+
+  private void exportMerged(List<SourceConfig> sources, List<FanOutReportBuilder> builders,
+      ReportType reportType, Cancellation cancellation) throws IOException {
+    final Exporter exporter = createExporter(reportType);
+    exporter.setCancellation(cancellation);
+    if (config.multiSourceLayout == MultiSourceLayout.WIDE) {
+      exporter.exportWide(
+          sources.stream().map(source -> source.prefix).collect(Collectors.toList()),
+          AlignedRecord.align(builders.stream()
+              .map(builder -> builder.getRecords(reportType))
+              .collect(Collectors.toList())));
+    } else {
+      final Map<String, List<Record>> recordsBySheet = new LinkedHashMap<>();
+      for (int s = 0; s < sources.size(); s++) {
+        recordsBySheet.put(sources.get(s).prefix, builders.get(s).getRecords(reportType));
+      }
+      exporter.exportSheets(recordsBySheet);
     }
   }
 
@@ -101,20 +625,80 @@ public class ReportService {
     progress.setValue(0);
   }
 
+  private Set<ReportType> getReportTypes() {
+    final Set<ReportType> reportTypes = EnumSet.of(config.reportType);
+    reportTypes.addAll(config.additionalReportTypes);
+    return reportTypes;
+  }
+
+  private Exporter createExporter(ReportType reportType) {
+    final File outputFile = getOutputFile(reportType);
+    if (config.exportFormat.isText()) {
+      return new TextReportExporter(config.exportFormat, config.exportGzip, config.channels,
+          isQualityExported(reportType), getExportedPercentiles(reportType), reportType,
+          outputFile, cpuExecutor);
+    }
+    return new ReportExporter(config, reportType, outputFile, isQualityExported(reportType),
+        getExportedPercentiles(reportType));
+  }
+
+  private boolean isQualityExported(ReportType reportType) {
+    return config.dataQuality && reportType != ReportType.STRAIGHT;
+  }
+
+  static List<Double> getExportedPercentiles(Config config, ReportType reportType) {
+    return reportType != ReportType.STRAIGHT ? config.percentiles : Collections.emptyList();
+  }
+
+  private List<Double> getExportedPercentiles(ReportType reportType) {
+    return getExportedPercentiles(config, reportType);
+  }
+
+  private File getOutputFile(ReportType reportType) {
+    final String name = reportType == config.reportType
+        ? config.reportFileName : config.reportFileName + "_" + reportType.name().toLowerCase();
+    final String extension = config.exportFormat.isText() && config.exportGzip
+        ? config.exportFormat.extension + ".gz" : config.exportFormat.extension;
+    return new File(StringUtils.defaultIfEmpty(config.outputDirectory, null),
+        name + "." + extension);
+  }
+
   private void validateConfiguration() {
     LocalDateTime dateFrom = config.dateFrom;
     LocalDateTime dateTo = config.dateTo;
     Validate.notNull(dateFrom, "Параметр дата начала (dateFrom) не установлен");
     Validate.notNull(dateTo, "Параметр дата начала (dateTo) не установлен");
     Validate.isTrue(dateTo.isAfter(dateFrom), "Дата начала должна быть до даты конца");
+    RowFilterCompiler.compile(config.rowFilter, Channels.NAMES.size());
+    Validate.isTrue(config.straightBufferMb > 0,
+        "Объем памяти для записей прямого отчета (straightBufferMb) должен быть больше нуля");
+    Validate.isTrue(config.shardWorkers < 2 || config.getSources().size() > 1
+            || !getReportTypes().contains(ReportType.STRAIGHT),
+        "Прямой отчет нельзя формировать несколькими обработчиками (shardWorkers)");
   }
 
-  private List<String> filterFileList(List<String> fileList) {
+  private List<String> getFileList(LogFileSource fileSource) throws IOException {
+    return fileSource.getFileList(config.dateFrom, config.dateTo);
+  }
+
+  /**
+   * @return names of the files of the period in the order of time, which is that of the names
+   * without the partition folders; the aggregation and the split between shard workers rely on it
+   */
+  static List<String> filterFileList(List<String> fileList, Config config) {
     Validate.isTrue(!fileList.isEmpty(), "Нет файлов в выбранной папке");
-    String from = FORMATTER.format(config.dateFrom) + ".csv";
-    String to = FORMATTER.format(config.dateTo) + ".csv";
+    String from = FORMATTER.format(config.dateFrom) + FILE_EXTENSION;
+    String to = FORMATTER.format(config.dateTo) + FILE_EXTENSION;
     return fileList.stream()
-        .filter(name -> name.compareToIgnoreCase(from) >= 0 && name.compareToIgnoreCase(to) <= 0)
+        .filter(path -> {
+          final String name = getBaseName(path);
+          return name.compareToIgnoreCase(from) >= 0 && name.compareToIgnoreCase(to) <= 0;
+        })
+        .sorted(Comparator.comparing(ReportService::getBaseName, String.CASE_INSENSITIVE_ORDER))
         .collect(Collectors.toList());
   }
+
+  private static String getBaseName(String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
 }
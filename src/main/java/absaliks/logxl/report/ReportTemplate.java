@@ -0,0 +1,206 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.report;
+
+import absaliks.logxl.concurrent.ThreadPools;
+import absaliks.logxl.log.LogSchema;
+import absaliks.logxl.report.XlsxStreamWriter.SheetRows;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.util.DateFormatConverter;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Workbook of template.xlsx with the cell styles of the data rows already created. An export
+ * changes the workbook it takes, so the next one is parsed in the background right away and the
+ * file itself is read from the classpath only once.
+ */
+final class ReportTemplate {
+
+  private static final Logger log = Logger.getLogger(ReportTemplate.class.getName());
+
+  private static final String TEMPLATE_FILE = "template.xlsx";
+  private static final ExecutorService executor =
+      ThreadPools.newBackgroundExecutor("logxl-template");
+  private static byte[] templateBytes;
+  private static Future<ReportTemplate> next;
+
+  final XSSFWorkbook workbook;
+  final CellStyle borderedCellStyle;
+  final CellStyle[] floatRoundStyles; // by decimal places
+  private final Map<ReportType, CellStyle> dateStyles = new EnumMap<>(ReportType.class);
+
+  private ReportTemplate(XSSFWorkbook workbook) {
+    this.workbook = workbook;
+    this.borderedCellStyle = createBorderedCellStyle();
+    this.floatRoundStyles = createFloatRoundStyles();
+    final Map<String, CellStyle> stylesByFormat = new HashMap<>();
+    for (ReportType reportType : ReportType.values()) {
+      dateStyles.put(reportType, stylesByFormat.computeIfAbsent(reportType.getDateFormat(),
+          this::createDateStyle));
+    }
+  }
+
+  /**
+   * Returns a template of its own to every caller.
+   */
+  static ReportTemplate take() throws IOException {
+    final Future<ReportTemplate> prepared;
+    synchronized (ReportTemplate.class) {
+      prepared = next;
+      next = executor.submit(ReportTemplate::parse);
+    }
+    return prepared != null ? get(prepared) : parse();
+  }
+
+  /**
+   * Loads the classes of the export and parses the template for the first report in the
+   * background, by exporting a row of every kind of cell to nowhere.
+   */
+  static void warmUp() {
+    synchronized (ReportTemplate.class) {
+      if (next != null) {
+        return;
+      }
+      next = executor.submit(() -> {
+        final long start = System.nanoTime();
+        try {
+          final ReportTemplate template = parse();
+          final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          template.workbook.write(bytes);
+          final String sheetPart =
+              template.workbook.getSheetAt(0).getPackagePart().getPartName().getName();
+          final SheetRows rows = writer -> {
+            writer.startRow(0);
+            writer.addDateCell(0, template.dateStyles.get(ReportType.HOURLY).getIndex(),
+                LocalDateTime.now());
+            writer.addNumberCell(1, template.floatRoundStyles[2].getIndex(), 1.5f);
+            writer.addStringCell(2, template.borderedCellStyle.getIndex(), "ВКЛ");
+            writer.endRow();
+          };
+          XlsxStreamWriter.write(bytes.toByteArray(),
+              Collections.singletonMap(sheetPart.substring(1), rows), new DiscardingStream());
+          template.workbook.close();
+          log.fine("Export warmed up in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException | RuntimeException e) {
+          log.log(Level.WARNING, "Не удалось подготовить выгрузку заранее", e);
+        }
+        return parse();
+      });
+    }
+  }
+
+  CellStyle getDateStyle(ReportType reportType) {
+    return dateStyles.get(reportType);
+  }
+
+  private static ReportTemplate parse() throws IOException {
+    return new ReportTemplate(new XSSFWorkbook(new ByteArrayInputStream(getTemplateBytes())));
+  }
+
+  private static ReportTemplate get(Future<ReportTemplate> prepared) throws IOException {
+    try {
+      return prepared.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Подготовка шаблона прервана", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static synchronized byte[] getTemplateBytes() throws IOException {
+    if (templateBytes == null) {
+      try (InputStream stream =
+          ReportTemplate.class.getClassLoader().getResourceAsStream(TEMPLATE_FILE)) {
+        if (stream == null) {
+          log.severe("Template file not found " + TEMPLATE_FILE);
+          throw new RuntimeException("Шаблон для выгрузки не найден: " + TEMPLATE_FILE);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int read; (read = stream.read(buffer)) >= 0; ) {
+          bytes.write(buffer, 0, read);
+        }
+        templateBytes = bytes.toByteArray();
+      }
+    }
+    return templateBytes;
+  }
+
+  private CellStyle[] createFloatRoundStyles() {
+    final CellStyle[] styles = new CellStyle[LogSchema.MAX_DECIMAL_PLACES + 1];
+    final StringBuilder format = new StringBuilder("0"); // "0", "0.#", "0.##" and so on
+    for (int i = 0; i < styles.length; i++) {
+      CellStyle dataStyle = createBorderedCellStyle();
+      dataStyle.setDataFormat(workbook.createDataFormat().getFormat(format.toString()));
+      styles[i] = dataStyle;
+      format.append(i == 0 ? ".#" : "#");
+    }
+    return styles;
+  }
+
+  private CellStyle createBorderedCellStyle() {
+    CellStyle style = workbook.createCellStyle();
+    style.setBorderBottom(BorderStyle.THIN);
+    style.setBorderLeft(BorderStyle.THIN);
+    style.setBorderRight(BorderStyle.THIN);
+    return style;
+  }
+
+  private CellStyle createDateStyle(String dateFormat) {
+    CellStyle style = workbook.createCellStyle();
+    String excelFormatPattern = DateFormatConverter.convert(Locale.US, dateFormat);
+    style.setDataFormat(workbook.createDataFormat().getFormat(excelFormatPattern));
+    style.setBorderBottom(BorderStyle.THIN);
+    style.setBorderLeft(BorderStyle.THIN);
+    return style;
+  }
+
+  private static class DiscardingStream extends OutputStream {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+}
@@ -18,25 +18,43 @@
 
 package absaliks.logxl.report;
 
-import java.time.temporal.ChronoField;
-import java.time.temporal.ChronoUnit;
-import java.time.temporal.TemporalUnit;
-
+/**
+ * Intervals a report can be averaged by. The set is fixed rather than configured: the constants
+ * key the reports in {@link java.util.EnumMap}s, the settings, the schedule and the report cache,
+ * so an interval of another length is added as a new constant. The builders themselves work with
+ * any {@link #intervalSeconds} that divides a day.
+ */
 public enum ReportType {
-  STRAIGHT("Посекундный", null, null),
-  MINUTELY("Поминутный", ChronoUnit.MINUTES, ChronoField.MINUTE_OF_HOUR),
-  HOURLY("Часовой", ChronoUnit.HOURS, ChronoField.HOUR_OF_DAY),
-  DAILY("Суточный", ChronoUnit.DAYS, ChronoField.DAY_OF_MONTH);
+  STRAIGHT("Посекундный", 0),
+  MINUTELY("Поминутный", 60),
+  MINUTES_5("5-минутный", 5 * 60),
+  MINUTES_10("10-минутный", 10 * 60),
+  MINUTES_15("15-минутный", 15 * 60),
+  HOURLY("Часовой", 60 * 60),
+  SHIFT_8H("Посменный (8 часов)", 8 * 60 * 60),
+  DAILY("Суточный", 24 * 60 * 60);
 
   public final String description;
-  public final TemporalUnit relatedTemporalUnit;
-  public final ChronoField relatedChronoField;
+  /**
+   * Length of the averaging period, buckets are aligned to the local midnight. Constants are
+   * declared in the ascending order of it.
+   */
+  public final int intervalSeconds;
 
-  ReportType(String description, TemporalUnit relatedTemporalUnit,
-      ChronoField relatedChronoField) {
+  ReportType(String description, int intervalSeconds) {
     this.description = description;
-    this.relatedTemporalUnit = relatedTemporalUnit;
-    this.relatedChronoField = relatedChronoField;
+    this.intervalSeconds = intervalSeconds;
+  }
+
+  /**
+   * Pattern of the time of a row, in both the Excel and the text reports.
+   */
+  public String getDateFormat() {
+    switch (this) {
+      case DAILY: return "dd.MM.yyyy";
+      case STRAIGHT: return "dd.MM.yyyy HH:mm:ss";
+      default: return "dd.MM.yyyy HH:mm";
+    }
   }
 
   @Override
@@ -0,0 +1,334 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.log.ChannelSelection;
+import absaliks.logxl.log.LogSchemas;
+import absaliks.logxl.log.Record;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Exports records to CSV or TSV. Rows are formatted in chunks on the given executor and the
+ * chunks are written in their original order by the calling thread.
+ */
+class TextReportExporter implements Exporter {
+
+  private static final Logger log = Logger.getLogger(TextReportExporter.class.getName());
+
+  private static final int CHUNK_SIZE = 4096; // rows
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final String LINE_SEPARATOR = "\r\n";
+  private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10_000, 100_000, 1_000_000};
+
+  private final ExportFormat format;
+  private final ChannelSelection channels;
+  private final boolean isQualityExported;
+  private final double[] percentiles;
+  private final LogSchemas schemas = LogSchemas.getInstance();
+  private final List<String> channelNames;
+  private final boolean isGzip;
+  private final File outputFile;
+  private final Executor executor;
+  private final int maxPendingChunks;
+  private final DateTimeFormatter dateFormatter;
+  private Cancellation cancellation = new Cancellation();
+
+  interface RowFormatter<T> {
+    void append(T row, StringBuilder line);
+  }
+
+  /**
+   * @param isQualityExported whether the columns of {@link Record#quality} follow the channels of
+   * every controller
+   * @param percentiles {@link Record#percentiles} exported after the channels, none if empty
+   */
+  TextReportExporter(ExportFormat format, boolean isGzip, ChannelSelection channels,
+      boolean isQualityExported, List<Double> percentiles, ReportType reportType,
+      File outputFile, Executor executor) {
+    Validate.isTrue(format.isText(), "Формат " + format + " не является текстовым");
+    this.format = format;
+    this.channels = channels;
+    this.isQualityExported = isQualityExported;
+    this.percentiles = percentiles.stream().mapToDouble(Double::doubleValue).toArray();
+    this.channelNames = getChannelNames(channels, isQualityExported, this.percentiles);
+    this.isGzip = isGzip;
+    this.outputFile = outputFile;
+    this.executor = executor;
+    this.maxPendingChunks = 2 * Runtime.getRuntime().availableProcessors();
+    this.dateFormatter = DateTimeFormatter.ofPattern(reportType.getDateFormat());
+  }
+
+  @Override
+  public void setCancellation(Cancellation cancellation) {
+    this.cancellation = cancellation;
+  }
+
+  @Override
+  public void export(List<Record> records) throws IOException {
+    Validate.notEmpty(records, "Результат пустой, нечего выгружать");
+    try (OutputStream out = openOutput()) {
+      writeHeader(out, Collections.singletonList(null), false);
+      writeRows(out, records, (rec, line) -> {
+        appendDate(rec, line);
+        appendRecord(rec, line);
+      });
+    } catch (IOException | RuntimeException e) {
+      deletePartialFile();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the records one controller after another, each row starts with the controller name.
+   */
+  @Override
+  public void exportSheets(Map<String, List<Record>> recordsBySheet) throws IOException {
+    Validate.isTrue(recordsBySheet.values().stream().anyMatch(records -> !records.isEmpty()),
+        "Результат пустой, нечего выгружать");
+    try (OutputStream out = openOutput()) {
+      writeHeader(out, Collections.singletonList(null), true);
+      for (Map.Entry<String, List<Record>> entry : recordsBySheet.entrySet()) {
+        final String prefix = quote(entry.getKey());
+        writeRows(out, entry.getValue(), (rec, line) -> {
+          line.append(prefix).append(format.separator);
+          appendDate(rec, line);
+          appendRecord(rec, line);
+        });
+      }
+    } catch (IOException | RuntimeException e) {
+      deletePartialFile();
+      throw e;
+    }
+  }
+
+  @Override
+  public void exportWide(List<String> prefixes, List<AlignedRecord> records) throws IOException {
+    Validate.notEmpty(records, "Результат пустой, нечего выгружать");
+    try (OutputStream out = openOutput()) {
+      writeHeader(out, prefixes, false);
+      writeRows(out, records, (aligned, line) -> {
+        line.append(dateFormatter.format(aligned.datetime));
+        for (Record rec : aligned.records) {
+          if (rec != null) {
+            appendRecord(rec, line);
+          } else {
+            for (int i = 0; i < channelNames.size(); i++) {
+              line.append(format.separator);
+            }
+          }
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      deletePartialFile();
+      throw e;
+    }
+  }
+
+  private static List<String> getChannelNames(ChannelSelection channels,
+      boolean isQualityExported, double[] percentiles) {
+    final List<String> names =
+        new ArrayList<>(channels.size() * (1 + percentiles.length) + 6);
+    for (int channel : channels.getChannels()) {
+      names.add(Channels.NAMES.get(channel));
+    }
+    if (channels.isHeatingCableSelected) {
+      names.add(Channels.HEATING_CABLE);
+    }
+    if (channels.isHeatingElementSelected) {
+      names.add(Channels.HEATING_ELEMENT);
+    }
+    for (int channel : channels.getChannels()) {
+      for (double percentile : percentiles) {
+        names.add(Channels.getPercentileName(channel, percentile));
+      }
+    }
+    if (isQualityExported) {
+      names.addAll(Channels.QUALITY_NAMES);
+    }
+    return names;
+  }
+
+  private OutputStream openOutput() throws IOException {
+    ReportExporter.deleteReportFile(outputFile);
+    log.info("Выгружаю отчет в файл " + outputFile.getAbsolutePath());
+    OutputStream out = new FileOutputStream(outputFile);
+    if (isGzip) {
+      out = new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+    return new BufferedOutputStream(out, BUFFER_SIZE);
+  }
+
+  private void writeHeader(OutputStream out, List<String> prefixes, boolean withSourceColumn)
+      throws IOException {
+    final StringBuilder line = new StringBuilder();
+    if (withSourceColumn) {
+      line.append("Контроллер").append(format.separator);
+    }
+    line.append("Дата/Время");
+    for (String prefix : prefixes) {
+      for (String name : channelNames) {
+        line.append(format.separator).append(quote(prefix == null ? name : prefix + ": " + name));
+      }
+    }
+    out.write(line.append(LINE_SEPARATOR).toString().getBytes(UTF_8));
+  }
+
+  /**
+   * Keeps at most {@code maxPendingChunks} chunks formatted ahead of the writer.
+   */
+  private <T> void writeRows(OutputStream out, List<T> rows, RowFormatter<T> formatter)
+      throws IOException {
+    final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>(maxPendingChunks);
+    try {
+      for (int from = 0; from < rows.size(); from += CHUNK_SIZE) {
+        cancellation.throwIfCancelled();
+        if (pending.size() == maxPendingChunks) {
+          out.write(join(pending.poll()));
+        }
+        final List<T> chunk = rows.subList(from, Math.min(from + CHUNK_SIZE, rows.size()));
+        pending.add(CompletableFuture.supplyAsync(() -> formatChunk(chunk, formatter), executor));
+      }
+      while (!pending.isEmpty()) {
+        cancellation.throwIfCancelled();
+        out.write(join(pending.poll()));
+      }
+    } finally {
+      pending.forEach(future -> future.cancel(false));
+    }
+  }
+
+  private <T> byte[] formatChunk(List<T> chunk, RowFormatter<T> formatter) {
+    final StringBuilder text = new StringBuilder(chunk.size() * 256);
+    for (T row : chunk) {
+      formatter.append(row, text);
+      text.append(LINE_SEPARATOR);
+    }
+    return text.toString().getBytes(UTF_8);
+  }
+
+  private static byte[] join(CompletableFuture<byte[]> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private void appendDate(Record rec, StringBuilder line) {
+    line.append(dateFormatter.format(rec.datetime));
+  }
+
+  private void appendRecord(Record rec, StringBuilder line) {
+    for (int i = 0; i < rec.values.length; i++) {
+      line.append(format.separator);
+      appendRounded(rec.values[i], schemas.getDecimalPlaces(channels.getChannel(i)), line);
+    }
+    if (channels.isHeatingCableSelected) {
+      line.append(format.separator).append(rec.isHeatingCableOn ? "ВКЛ" : "ВЫКЛ");
+    }
+    if (channels.isHeatingElementSelected) {
+      line.append(format.separator).append(rec.isHeatingElementOn ? "ВКЛ" : "ВЫКЛ");
+    }
+    if (percentiles.length > 0) {
+      for (int i = 0; i < rec.percentiles.length; i++) {
+        line.append(format.separator);
+        appendRounded(rec.percentiles[i],
+            schemas.getDecimalPlaces(channels.getChannel(i / percentiles.length)), line);
+      }
+    }
+    if (isQualityExported) {
+      line.append(format.separator).append(rec.quality.samples)
+          .append(format.separator).append(rec.quality.missingSeconds)
+          .append(format.separator).append(rec.quality.duplicates)
+          .append(format.separator).append(rec.quality.outOfOrder);
+    }
+  }
+
+  /**
+   * Same as the "0.##" like formats of the Excel report: at most {@code decimalPlaces} digits
+   * after the point and no trailing zeros.
+   */
+  static void appendRounded(float value, int decimalPlaces, StringBuilder line) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      line.append(value);
+      return;
+    }
+    final long scale = POWERS_OF_TEN[decimalPlaces];
+    final long scaled = Math.round(Math.abs((double) value) * scale);
+    if (scaled == 0) {
+      line.append('0');
+      return;
+    }
+    if (value < 0) {
+      line.append('-');
+    }
+    line.append(scaled / scale);
+    long fraction = scaled % scale;
+    if (fraction == 0) {
+      return;
+    }
+    int digits = decimalPlaces;
+    while (fraction % 10 == 0) {
+      fraction /= 10;
+      digits--;
+    }
+    line.append('.');
+    for (long power = POWERS_OF_TEN[digits - 1]; power > fraction; power /= 10) {
+      line.append('0');
+    }
+    line.append(fraction);
+  }
+
+  private String quote(String value) {
+    if (value.indexOf(format.separator) < 0 && value.indexOf('"') < 0
+        && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private void deletePartialFile() {
+    if (outputFile.exists() && !outputFile.delete()) {
+      log.warning("Не удалось удалить недописанный файл " + outputFile.getAbsolutePath());
+    }
+  }
+}
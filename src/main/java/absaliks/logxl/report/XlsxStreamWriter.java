@@ -0,0 +1,297 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes an xlsx package by copying all the parts of an already prepared template and streaming
+ * data rows straight into the XML of its sheets, without creating an object per cell. Numbers are
+ * written as plain numeric cells and strings as inline strings, so no shared strings table has to
+ * be kept in memory. Styles are referenced by the indexes registered in the template.
+ */
+final class XlsxStreamWriter {
+
+  private static final byte[] SHEET_DATA_START = ascii("<sheetData>");
+  private static final byte[] SHEET_DATA_END = ascii("</sheetData>");
+  private static final byte[] SHEET_DATA_EMPTY = ascii("<sheetData/>");
+  private static final byte[] ROW_START = ascii("<row r=\"");
+  private static final byte[] ROW_END = ascii("</row>");
+  private static final byte[] CELL_START = ascii("<c s=\"");
+  private static final byte[] CELL_REFERENCE = ascii("\" r=\"");
+  private static final byte[] NUMBER_VALUE_START = ascii("\"><v>");
+  private static final byte[] NUMBER_VALUE_END = ascii("</v></c>");
+  private static final byte[] STRING_VALUE_START = ascii("\" t=\"inlineStr\"><is><t>");
+  private static final byte[] STRING_VALUE_END = ascii("</t></is></c>");
+  private static final byte[] NOT_AVAILABLE_VALUE = ascii("\" t=\"e\"><v>#N/A</v></c>");
+  private static final byte[] TAG_END = ascii("\">");
+  private static final LocalDate EXCEL_EPOCH = LocalDate.of(1899, 12, 30);
+  private static final double SECONDS_PER_DAY = 24 * 60 * 60;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  interface SheetRows {
+    void write(XlsxStreamWriter rows) throws IOException;
+  }
+
+  private final OutputStream out;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final byte[][] columnNames = new byte[256][];
+  private final byte[][] styles = new byte[256][];
+  private final Map<String, byte[]> strings = new HashMap<>();
+  private int position;
+  private byte[] rowNumber;
+  private int nextColumn;
+
+  private XlsxStreamWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * @param rowsByPart producers of the data rows keyed by the name of the sheet part in the
+   * package, e.g. {@code xl/worksheets/sheet1.xml}
+   */
+  static void write(byte[] template, Map<String, SheetRows> rowsByPart, OutputStream target)
+      throws IOException {
+    final ZipOutputStream zip = new ZipOutputStream(target);
+    zip.setLevel(Deflater.BEST_SPEED);
+    try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(template))) {
+      ZipEntry entry;
+      while ((entry = in.getNextEntry()) != null) {
+        zip.putNextEntry(new ZipEntry(entry.getName()));
+        final SheetRows rows = rowsByPart.get(entry.getName());
+        if (rows == null) {
+          copy(in, zip);
+        } else {
+          new XlsxStreamWriter(zip).writeSheet(readBytes(in), rows);
+        }
+        zip.closeEntry();
+      }
+    }
+    zip.finish();
+    zip.flush();
+  }
+
+  private void writeSheet(byte[] templateXml, SheetRows rows) throws IOException {
+    final boolean isEmpty;
+    int headEnd = indexOf(templateXml, SHEET_DATA_END);
+    if (headEnd >= 0) {
+      isEmpty = false;
+    } else {
+      headEnd = indexOf(templateXml, SHEET_DATA_EMPTY);
+      if (headEnd < 0) {
+        throw new IOException("В шаблоне листа нет раздела sheetData");
+      }
+      isEmpty = true;
+    }
+    final int tailStart = isEmpty ? headEnd + SHEET_DATA_EMPTY.length : headEnd;
+
+    write(templateXml, 0, headEnd);
+    if (isEmpty) {
+      write(SHEET_DATA_START);
+    }
+    rows.write(this);
+    if (isEmpty) {
+      write(SHEET_DATA_END);
+    }
+    write(templateXml, tailStart, templateXml.length - tailStart);
+    flush();
+  }
+
+  void startRow(int rowIx) throws IOException {
+    rowNumber = ascii(Integer.toString(rowIx + 1));
+    write(ROW_START);
+    write(rowNumber);
+    write(TAG_END);
+    nextColumn = 0;
+  }
+
+  void endRow() throws IOException {
+    write(ROW_END);
+  }
+
+  /**
+   * NaN and infinities have no representation in a numeric cell, Excel deems the whole file
+   * corrupted, so they are written as the #N/A error.
+   */
+  void addNumberCell(int column, int style, double value) throws IOException {
+    if (Double.isFinite(value)) {
+      addNumberCell(column, style, Double.toString(value));
+    } else {
+      addNotAvailableCell(column, style);
+    }
+  }
+
+  /**
+   * Writes the shortest decimal that identifies the float, not the expansion of its binary
+   * value, i.e. 24.98 rather than 24.979999542236328. A value missing in the log, i.e. NaN, is
+   * written as #N/A.
+   */
+  void addNumberCell(int column, int style, float value) throws IOException {
+    if (Float.isFinite(value)) {
+      addNumberCell(column, style, Float.toString(value));
+    } else {
+      addNotAvailableCell(column, style);
+    }
+  }
+
+  void addDateCell(int column, int style, LocalDateTime datetime) throws IOException {
+    addNumberCell(column, style, ChronoUnit.DAYS.between(EXCEL_EPOCH, datetime.toLocalDate())
+        + datetime.toLocalTime().toSecondOfDay() / SECONDS_PER_DAY);
+  }
+
+  void addStringCell(int column, int style, String value) throws IOException {
+    startCell(column, style);
+    write(STRING_VALUE_START);
+    write(strings.computeIfAbsent(value, XlsxStreamWriter::escape));
+    write(STRING_VALUE_END);
+  }
+
+  private void addNumberCell(int column, int style, String value) throws IOException {
+    startCell(column, style);
+    write(NUMBER_VALUE_START);
+    writeAscii(value);
+    write(NUMBER_VALUE_END);
+  }
+
+  private void addNotAvailableCell(int column, int style) throws IOException {
+    startCell(column, style);
+    write(NOT_AVAILABLE_VALUE);
+  }
+
+  /**
+   * The reference of the cell is omitted when it directly follows the previous one.
+   */
+  private void startCell(int column, int style) throws IOException {
+    write(CELL_START);
+    write(getStyle(style));
+    if (column != nextColumn) {
+      write(CELL_REFERENCE);
+      write(getColumnName(column));
+      write(rowNumber);
+    }
+    nextColumn = column + 1;
+  }
+
+  private byte[] getStyle(int style) {
+    if (style >= styles.length) {
+      return ascii(Integer.toString(style));
+    }
+    if (styles[style] == null) {
+      styles[style] = ascii(Integer.toString(style));
+    }
+    return styles[style];
+  }
+
+  private byte[] getColumnName(int column) {
+    byte[] name = column < columnNames.length ? columnNames[column] : null;
+    if (name == null) {
+      final StringBuilder builder = new StringBuilder();
+      for (int n = column + 1; n > 0; n = (n - 1) / 26) {
+        builder.insert(0, (char) ('A' + (n - 1) % 26));
+      }
+      name = ascii(builder.toString());
+      if (column < columnNames.length) {
+        columnNames[column] = name;
+      }
+    }
+    return name;
+  }
+
+  private void writeAscii(String value) throws IOException {
+    final int length = value.length();
+    if (BUFFER_SIZE - position < length) {
+      flush();
+    }
+    for (int i = 0; i < length; i++) {
+      buffer[position++] = (byte) value.charAt(i);
+    }
+  }
+
+  private void write(byte[] bytes) throws IOException {
+    write(bytes, 0, bytes.length);
+  }
+
+  private void write(byte[] bytes, int offset, int length) throws IOException {
+    if (BUFFER_SIZE - position < length) {
+      flush();
+      if (length > BUFFER_SIZE) {
+        out.write(bytes, offset, length);
+        return;
+      }
+    }
+    System.arraycopy(bytes, offset, buffer, position, length);
+    position += length;
+  }
+
+  private void flush() throws IOException {
+    out.write(buffer, 0, position);
+    position = 0;
+  }
+
+  private static byte[] escape(String value) {
+    return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").getBytes(UTF_8);
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(US_ASCII);
+  }
+
+  private static int indexOf(byte[] bytes, byte[] pattern) {
+    outer:
+    for (int i = 0; i <= bytes.length - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (bytes[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private static byte[] readBytes(InputStream in) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    copy(in, bytes);
+    return bytes.toByteArray();
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+  }
+}
@@ -21,101 +21,124 @@ package absaliks.logxl.report.builder;
 import absaliks.logxl.log.Record;
 import absaliks.logxl.report.ReportType;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 
 public class AvgReportBuilder extends ReportBuilder {
 
-  private final ReportType reportType;
-  // TODO: set initial size
-  private List<Record> buffer;
+  private final long interval; // seconds
+  private final double[] percentiles;
+  private final List<AvgReportBuilder> coarser = new ArrayList<>(1);
+  private Bucket bucket;
+  private long lastSecond = Long.MIN_VALUE;
+  private List<Bucket> buckets; // kept instead of the records for a partial report
 
-  private LocalDateTime nextCutOffDateTime;
+  private long nextCutOff; // local epoch second
 
   public AvgReportBuilder(ReportType reportType) {
-    this.reportType = reportType;
-    initBuffer();
+    this(reportType, Bucket.NO_PERCENTILES);
   }
 
-  private void initBuffer() {
-    this.buffer = new ArrayList<>(getInitialBufferSize());
+  /**
+   * @param percentiles percentiles of every channel estimated in addition to the average, e.g.
+   * 50 for the median
+   */
+  AvgReportBuilder(ReportType reportType, double[] percentiles) {
+    this.interval = reportType.intervalSeconds;
+    this.percentiles = percentiles;
   }
 
-  private int getInitialBufferSize() {
-    switch (reportType) {
-      case MINUTELY:
-        return 60;
-      case HOURLY:
-        return 60 * 60;
-      case DAILY:
-        return 24 * 60 * 60;
-      default:
-        return 16;
-    }
+  /**
+   * @param builder builder of a longer period, a multiple of this one, that receives every
+   * completed bucket of this one
+   */
+  void addCoarser(AvgReportBuilder builder) {
+    coarser.add(builder);
+  }
+
+  /**
+   * Makes the builder keep the completed buckets themselves rather than their averages, so that
+   * they can be merged with the buckets of another part of the period.
+   */
+  void keepBuckets() {
+    buckets = new ArrayList<>();
+  }
+
+  List<Bucket> getBuckets() {
+    return buckets;
   }
 
   public void consume(List<Record> rawRecords) {
-    if (!rawRecords.isEmpty()) {
-      if (nextCutOffDateTime == null) {
-        nextCutOffDateTime = calcNextCutOffTimeOf(rawRecords.get(0).datetime);
+    rawRecords.forEach(rec -> {
+      final long second = toLocalEpochSecond(rec.datetime);
+      if (bucket == null || second >= nextCutOff) {
+        completeBucket();
+        startBucket(second);
       }
-      rawRecords.forEach(rec -> {
-        if (!rec.datetime.isBefore(nextCutOffDateTime)) {
-          nextCutOffDateTime = calcNextCutOffTimeOf(rec.datetime); // TODO: is there better way?
-          records.add(createReportRecord());
-          initBuffer();
-        }
-        buffer.add(rec);
-      });
-    }
+      bucket.add(rec);
+      bucket.addQuality(second, lastSecond);
+      lastSecond = Math.max(lastSecond, second);
+    });
   }
 
-  private LocalDateTime calcNextCutOffTimeOf(LocalDateTime firstRecord) {
-    return truncateTime(firstRecord).plus(1, reportType.relatedTemporalUnit);
+  @Override
+  public void onDroppedDuplicate() {
+    if (bucket != null) {
+      bucket.addDroppedDuplicate();
+    }
   }
 
-  private LocalDateTime truncateTime(LocalDateTime firstRecord) {
-    int minute = firstRecord.getMinute(),
-        hour = firstRecord.getHour();
-    switch (reportType) {
-      case DAILY:
-        hour = 0;
-      case HOURLY:
-        minute = 0;
+  private void consume(Bucket finerBucket) {
+    final long second = toLocalEpochSecond(finerBucket.datetime);
+    if (bucket == null || second >= nextCutOff) {
+      completeBucket();
+      startBucket(second);
     }
-    return LocalDateTime.of(firstRecord.toLocalDate(), LocalTime.of(hour, minute));
+    bucket.merge(finerBucket);
   }
 
-  private Record createReportRecord() {
-    final Record result = new Record();
-    result.datetime = truncateTime(buffer.get(0).datetime);
-    setValues(result);
-    return result;
+  private void startBucket(long second) {
+    final long start = second - Math.floorMod(second, interval);
+    bucket = new Bucket(LocalDateTime.ofEpochSecond(start, 0, ZoneOffset.UTC), interval,
+        percentiles);
+    nextCutOff = start + interval;
   }
 
-  private void setValues(final Record result) {
-    final int valuesCount = buffer.get(0).values.length;
-    result.values = new float[valuesCount];
-    for (Record rec : buffer) {
-      for (int i = 0; i < valuesCount; i++) {
-        result.values[i] += rec.values[i];
+  private void completeBucket() {
+    if (bucket != null && !bucket.isEmpty()) {
+      if (buckets != null) {
+        buckets.add(bucket);
+      } else {
+        records.add(bucket.toRecord());
       }
-      if (rec.isHeatingCableOn) {
-        result.isHeatingCableOn = true;
-      }
-      if (rec.isHeatingElementOn) {
-        result.isHeatingElementOn = true;
+      for (AvgReportBuilder builder : coarser) {
+        builder.consume(bucket);
       }
     }
-    for (int i = 0; i < valuesCount; i++) {
-      result.values[i] /= buffer.size();
+    bucket = null;
+  }
+
+  /**
+   * Local date and time counted as if it were UTC, so that buckets of any length start at the
+   * local midnight and do not depend on DST shifts.
+   */
+  private static long toLocalEpochSecond(LocalDateTime datetime) {
+    return datetime.toEpochSecond(ZoneOffset.UTC);
+  }
+
+  @Override
+  public List<Record> snapshot() {
+    final List<Record> snapshot = new ArrayList<>(records.size() + 1);
+    snapshot.addAll(records);
+    if (bucket != null && !bucket.isEmpty()) {
+      snapshot.add(bucket.toRecord());
     }
+    return snapshot;
   }
 
   public void flush() {
-    if (!buffer.isEmpty()) {
-      records.add(createReportRecord());
-    }
+    completeBucket();
+    coarser.forEach(AvgReportBuilder::flush);
   }
 }
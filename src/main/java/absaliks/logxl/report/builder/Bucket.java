@@ -0,0 +1,178 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report.builder;
+
+import absaliks.logxl.log.DataQuality;
+import absaliks.logxl.log.Record;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+
+/**
+ * Running sums of a single aggregation period, mergeable into a bucket of a coarser period or
+ * into the bucket of the same period built by another worker process.
+ */
+class Bucket implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  static final double[] NO_PERCENTILES = new double[0];
+
+  final LocalDateTime datetime;
+  private final long interval; // seconds
+  private final double[] percentiles; // estimated per channel, no sketches are kept if empty
+  private double[] sums;
+  private QuantileSketch[] sketches;
+  private int count;
+  private boolean isHeatingCableOn;
+  private boolean isHeatingElementOn;
+  private int distinctSeconds;
+  private transient BitSet seenSeconds; // by the second of the interval, while records are added
+  private int duplicates;
+  private int outOfOrder;
+
+  Bucket(LocalDateTime datetime, long interval) {
+    this(datetime, interval, NO_PERCENTILES);
+  }
+
+  Bucket(LocalDateTime datetime, long interval, double[] percentiles) {
+    this.datetime = datetime;
+    this.interval = interval;
+    this.percentiles = percentiles;
+  }
+
+  boolean isEmpty() {
+    return count == 0;
+  }
+
+  void add(Record rec) {
+    ensureCapacity(rec.values.length);
+    for (int i = 0; i < rec.values.length; i++) {
+      sums[i] += rec.values[i];
+    }
+    if (sketches != null) {
+      for (int i = 0; i < rec.values.length; i++) {
+        sketches[i].add(rec.values[i]);
+      }
+    }
+    count++;
+    isHeatingCableOn |= rec.isHeatingCableOn;
+    isHeatingElementOn |= rec.isHeatingElementOn;
+  }
+
+  /**
+   * Counts the record against the one before it, that may belong to the previous bucket. A record
+   * out of order still fills its second if no other record has.
+   *
+   * @param second local epoch second of the record
+   */
+  void addQuality(long second, long previousSecond) {
+    if (second == previousSecond) {
+      duplicates++;
+      return;
+    }
+    if (second < previousSecond) {
+      outOfOrder++;
+    }
+    if (markSeen(second)) {
+      distinctSeconds++;
+    }
+  }
+
+  /**
+   * @return whether it is the first record of a second within the interval
+   */
+  private boolean markSeen(long second) {
+    if (seenSeconds == null) {
+      seenSeconds = new BitSet();
+    }
+    final long offset = second - datetime.toEpochSecond(ZoneOffset.UTC);
+    if (offset < 0 || offset >= interval || seenSeconds.get((int) offset)) {
+      return false;
+    }
+    seenSeconds.set((int) offset);
+    return true;
+  }
+
+  /**
+   * Counts a record the merger has dropped as a duplicate of the last added one.
+   */
+  void addDroppedDuplicate() {
+    duplicates++;
+  }
+
+  void merge(Bucket other) {
+    if (other.isEmpty()) {
+      return;
+    }
+    ensureCapacity(other.sums.length);
+    for (int i = 0; i < other.sums.length; i++) {
+      sums[i] += other.sums[i];
+    }
+    if (sketches != null && other.sketches != null) {
+      for (int i = 0; i < other.sketches.length; i++) {
+        sketches[i].merge(other.sketches[i]);
+      }
+    }
+    count += other.count;
+    isHeatingCableOn |= other.isHeatingCableOn;
+    isHeatingElementOn |= other.isHeatingElementOn;
+    distinctSeconds += other.distinctSeconds;
+    duplicates += other.duplicates;
+    outOfOrder += other.outOfOrder;
+  }
+
+  private void ensureCapacity(int valuesCount) {
+    if (sums == null) {
+      sums = new double[valuesCount];
+      if (percentiles.length > 0) {
+        sketches = new QuantileSketch[valuesCount];
+        for (int i = 0; i < valuesCount; i++) {
+          sketches[i] = new QuantileSketch();
+        }
+      }
+    }
+  }
+
+  Record toRecord() {
+    final Record result = new Record();
+    result.datetime = datetime;
+    result.values = new float[sums.length];
+    for (int i = 0; i < sums.length; i++) {
+      result.values[i] = (float) (sums[i] / count);
+    }
+    result.isHeatingCableOn = isHeatingCableOn;
+    result.isHeatingElementOn = isHeatingElementOn;
+    result.quality = new DataQuality();
+    result.quality.samples = count;
+    result.quality.missingSeconds = (int) Math.max(0, interval - distinctSeconds);
+    result.quality.duplicates = duplicates;
+    result.quality.outOfOrder = outOfOrder;
+    if (sketches != null) {
+      result.percentiles = new float[sketches.length * percentiles.length];
+      for (int i = 0; i < sketches.length; i++) {
+        for (int p = 0; p < percentiles.length; p++) {
+          result.percentiles[i * percentiles.length + p] =
+              (float) sketches[i].getQuantile(percentiles[p] / 100);
+        }
+      }
+    }
+    return result;
+  }
+}
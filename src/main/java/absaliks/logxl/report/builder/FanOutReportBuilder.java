@@ -0,0 +1,159 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report.builder;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Feeds a single stream of raw records into builders of several report types at once. Averaging
+ * builders are cascaded, so that e.g. the daily one is fed with hourly buckets, not raw records.
+ */
+public class FanOutReportBuilder implements Closeable {
+
+  private final Map<ReportType, ReportBuilder> builders = new EnumMap<>(ReportType.class);
+  private final List<ReportBuilder> roots = new ArrayList<>(2);
+
+  public FanOutReportBuilder(Collection<ReportType> reportTypes) {
+    this(reportTypes, RecordBuffer.DEFAULT_MEMORY_BUDGET);
+  }
+
+  public FanOutReportBuilder(Collection<ReportType> reportTypes, List<Double> percentiles) {
+    this(reportTypes, RecordBuffer.DEFAULT_MEMORY_BUDGET, percentiles);
+  }
+
+  /**
+   * @param straightMemoryBudget bytes of memory the raw records of the straight report may take
+   * before they are spilled to disk
+   */
+  public FanOutReportBuilder(Collection<ReportType> reportTypes, long straightMemoryBudget) {
+    this(reportTypes, straightMemoryBudget, Collections.emptyList());
+  }
+
+  /**
+   * @param percentiles percentiles of every channel the averaged rows get in
+   * {@link Record#percentiles}, none if empty
+   */
+  public FanOutReportBuilder(Collection<ReportType> reportTypes, long straightMemoryBudget,
+      List<Double> percentiles) {
+    final double[] percentileArray = percentiles.stream().mapToDouble(Double::doubleValue)
+        .toArray();
+    Set<ReportType> types = EnumSet.copyOf(reportTypes);
+    if (types.remove(ReportType.STRAIGHT)) {
+      addRoot(ReportType.STRAIGHT, new StraightReportBuilder(straightMemoryBudget));
+    }
+
+    final List<ReportType> finerTypes = new ArrayList<>(types.size());
+    for (ReportType type : types) {
+      final AvgReportBuilder builder = new AvgReportBuilder(type, percentileArray);
+      final ReportType source = findSource(finerTypes, type);
+      if (source != null) {
+        ((AvgReportBuilder) builders.get(source)).addCoarser(builder);
+        builders.put(type, builder);
+      } else {
+        addRoot(type, builder);
+      }
+      finerTypes.add(type);
+    }
+  }
+
+  /**
+   * Returns the longest of the finer periods that the period of the given type is made of, e.g.
+   * 5-minute buckets for the 15-minute report, since 10-minute ones cross its boundaries.
+   */
+  private static ReportType findSource(List<ReportType> finerTypes, ReportType type) {
+    for (int i = finerTypes.size() - 1; i >= 0; i--) {
+      if (type.intervalSeconds % finerTypes.get(i).intervalSeconds == 0) {
+        return finerTypes.get(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a builder of the buckets of a {@link #toPartialReport() partial report}. The straight
+   * report has no buckets to merge and cannot be built in parts.
+   */
+  public static FanOutReportBuilder partial(Collection<ReportType> reportTypes) {
+    return partial(reportTypes, Collections.emptyList());
+  }
+
+  public static FanOutReportBuilder partial(Collection<ReportType> reportTypes,
+      List<Double> percentiles) {
+    Validate.isTrue(!reportTypes.contains(ReportType.STRAIGHT),
+        "Прямой отчет нельзя формировать по частям");
+    final FanOutReportBuilder builder = new FanOutReportBuilder(reportTypes, percentiles);
+    builder.builders.values().forEach(avg -> ((AvgReportBuilder) avg).keepBuckets());
+    return builder;
+  }
+
+  private void addRoot(ReportType reportType, ReportBuilder builder) {
+    builders.put(reportType, builder);
+    roots.add(builder);
+  }
+
+  public Set<ReportType> getReportTypes() {
+    return builders.keySet();
+  }
+
+  public void consume(List<Record> rawRecords) {
+    roots.forEach(builder -> builder.consume(rawRecords));
+  }
+
+  public void onDroppedDuplicate() {
+    roots.forEach(ReportBuilder::onDroppedDuplicate);
+  }
+
+  public void flush() {
+    roots.forEach(ReportBuilder::flush);
+  }
+
+  public List<Record> getRecords(ReportType reportType) {
+    return builders.get(reportType).getRecords();
+  }
+
+  public List<Record> snapshot(ReportType reportType) {
+    return builders.get(reportType).snapshot();
+  }
+
+  /**
+   * Must be called after {@link #flush()} on a builder made by {@link #partial(Collection)}.
+   */
+  public PartialReport toPartialReport() {
+    final Map<ReportType, List<Bucket>> buckets = new EnumMap<>(ReportType.class);
+    builders.forEach((type, builder) ->
+        buckets.put(type, ((AvgReportBuilder) builder).getBuckets()));
+    return new PartialReport(buckets);
+  }
+
+  @Override
+  public void close() {
+    builders.values().forEach(ReportBuilder::close);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report.builder;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Buckets of averaged reports built from a part of the files, e.g. by a worker process. Parts
+ * are merged in any order; a bucket cut by the border of two parts is summed up from both.
+ *
+ * <p>Duplicates are dropped within a part only. Where files of two parts overlap in time, e.g.
+ * after a controller restart, the records of the same second on both sides of the border are all
+ * counted, neither as duplicates.
+ */
+public class PartialReport implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<ReportType, List<Bucket>> buckets = new EnumMap<>(ReportType.class);
+
+  PartialReport(Map<ReportType, List<Bucket>> buckets) {
+    this.buckets.putAll(buckets);
+  }
+
+  /**
+   * @return names of all the classes a serialized report consists of
+   */
+  public static List<String> getSerializedClasses() {
+    return Arrays.asList(PartialReport.class.getName(), EnumMap.class.getName(),
+        Enum.class.getName(), ReportType.class.getName(), ArrayList.class.getName(),
+        Bucket.class.getName(), QuantileSketch.class.getName(), QuantileSketch[].class.getName(),
+        QuantileSketch.Bins.class.getName(), double[].class.getName(), int[].class.getName(),
+        "java.time.Ser"); // the serial form of LocalDateTime
+  }
+
+  public Set<ReportType> getReportTypes() {
+    return buckets.keySet();
+  }
+
+  public void merge(PartialReport other) {
+    other.buckets.forEach((type, otherBuckets) ->
+        buckets.merge(type, otherBuckets, PartialReport::mergeBuckets));
+  }
+
+  /**
+   * @param first buckets sorted by time
+   * @param second buckets sorted by time
+   */
+  private static List<Bucket> mergeBuckets(List<Bucket> first, List<Bucket> second) {
+    final List<Bucket> result = new ArrayList<>(first.size() + second.size());
+    int i = 0;
+    int j = 0;
+    while (i < first.size() || j < second.size()) {
+      final int order = i == first.size() ? 1 : j == second.size() ? -1
+          : first.get(i).datetime.compareTo(second.get(j).datetime);
+      if (order < 0) {
+        result.add(first.get(i++));
+      } else if (order > 0) {
+        result.add(second.get(j++));
+      } else {
+        final Bucket bucket = first.get(i++);
+        bucket.merge(second.get(j++));
+        result.add(bucket);
+      }
+    }
+    return result;
+  }
+
+  public List<Record> getRecords(ReportType reportType) {
+    final List<Bucket> typeBuckets = buckets.getOrDefault(reportType, Collections.emptyList());
+    final List<Record> records = new ArrayList<>(typeBuckets.size());
+    for (Bucket bucket : typeBuckets) {
+      records.add(bucket.toRecord());
+    }
+    return records;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.report.builder;
+
+import java.io.Serializable;
+
+/**
+ * Distribution of the values of a channel within a bucket, counted in logarithmic bins as in
+ * DDSketch, so that a quantile is estimated within {@link #RELATIVE_ACCURACY} of its value and
+ * memory does not depend on the number of values. Sketches merge without loss: a daily bucket
+ * merged from hourly ones has the same quantiles as if it was built from the raw records.
+ *
+ * <p>Positive and negative values are binned by their magnitude in separate stores and zeros are
+ * only counted, so a sketch holds as many bins as the magnitudes of its values span. Only if they
+ * span more than {@link #MAX_BINS} bins, the bins of the smallest magnitudes are collapsed.
+ */
+class QuantileSketch implements Serializable {
+
+  private static final long serialVersionUID = 2L;
+
+  static final double RELATIVE_ACCURACY = 0.01;
+  static final int MAX_BINS = 2048;
+  private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+  private static final double LOG_GAMMA = Math.log(GAMMA);
+  private static final double MIN_MAGNITUDE = 1e-6; // values closer to zero are counted as zero
+
+  private final Bins positive = new Bins();
+  private final Bins negative = new Bins();
+  private long zeroCount;
+  private long count;
+  private float min = Float.POSITIVE_INFINITY;
+  private float max = Float.NEGATIVE_INFINITY;
+
+  void add(float value) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      return;
+    }
+    if (value >= MIN_MAGNITUDE) {
+      positive.add(key(value));
+    } else if (value <= -MIN_MAGNITUDE) {
+      negative.add(key(-value));
+    } else {
+      zeroCount++;
+    }
+    count++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  void merge(QuantileSketch other) {
+    if (other.count == 0) {
+      return;
+    }
+    positive.merge(other.positive);
+    negative.merge(other.negative);
+    zeroCount += other.zeroCount;
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * @param quantile from 0 to 1, the bounds give the exact minimum and maximum
+   * @return {@code NaN} if the sketch is empty
+   */
+  double getQuantile(double quantile) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (quantile <= 0 || quantile >= 1) {
+      return quantile <= 0 ? min : max;
+    }
+    final long rank = (long) (quantile * (count - 1));
+    final double estimate;
+    if (rank < negative.count) {
+      // the lowest values have the largest magnitudes
+      estimate = -value(negative.getKey(negative.count - 1 - rank));
+    } else if (rank < negative.count + zeroCount) {
+      estimate = 0;
+    } else {
+      estimate = value(positive.getKey(rank - negative.count - zeroCount));
+    }
+    return Math.max(min, Math.min(max, estimate));
+  }
+
+  int getBinsCount() {
+    return positive.size() + negative.size();
+  }
+
+  private static int key(double magnitude) {
+    return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+  }
+
+  /**
+   * @return the magnitude in the middle of the bin, by the relative error
+   */
+  private static double value(int key) {
+    return 2 * Math.pow(GAMMA, key) / (GAMMA + 1);
+  }
+
+  /**
+   * Counts of the magnitudes by key, kept for the keys from the lowest to the highest one seen.
+   */
+  static class Bins implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int[] EMPTY = new int[0];
+
+    private int[] counts = EMPTY; // by key - minKey
+    private int minKey;
+    private long count;
+
+    void add(int key) {
+      expand(key, key);
+      counts[Math.max(key, minKey) - minKey]++;
+      count++;
+    }
+
+    void merge(Bins other) {
+      if (other.count == 0) {
+        return;
+      }
+      expand(other.minKey, other.maxKey());
+      for (int i = 0; i < other.counts.length; i++) {
+        counts[Math.max(other.minKey + i, minKey) - minKey] += other.counts[i];
+      }
+      count += other.count;
+    }
+
+    /**
+     * @param rank of a magnitude from the lowest one, less than {@link #count}
+     */
+    int getKey(long rank) {
+      long cumulative = 0;
+      for (int i = 0; i < counts.length; i++) {
+        cumulative += counts[i];
+        if (cumulative > rank) {
+          return minKey + i;
+        }
+      }
+      return maxKey();
+    }
+
+    int size() {
+      return counts.length;
+    }
+
+    private int maxKey() {
+      return minKey + counts.length - 1;
+    }
+
+    /**
+     * Makes the bins cover the given keys. Bins below the last {@link #MAX_BINS} are added up to
+     * the lowest of them.
+     */
+    private void expand(int low, int high) {
+      final boolean isEmpty = counts.length == 0;
+      if (!isEmpty && low >= minKey && high <= maxKey()) {
+        return;
+      }
+      final int newMaxKey = isEmpty ? high : Math.max(high, maxKey());
+      final int newMinKey = Math.max(isEmpty ? low : Math.min(low, minKey),
+          newMaxKey - MAX_BINS + 1);
+      if (newMinKey == minKey && newMaxKey == maxKey()) {
+        return; // the lowest bins are already collapsed
+      }
+      final int[] newCounts = new int[newMaxKey - newMinKey + 1];
+      for (int i = 0; i < counts.length; i++) {
+        newCounts[Math.max(minKey + i, newMinKey) - newMinKey] += counts[i];
+      }
+      counts = newCounts;
+      minKey = newMinKey;
+    }
+  }
+}
@@ -0,0 +1,423 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.report.builder;
+
+import absaliks.logxl.log.Record;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.logging.Logger;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * List of records kept as fixed-width binary rows outside of the Java heap. Once the memory
+ * budget is used up the rows are sorted by time and spilled to a temporary file as a segment.
+ * After {@link #finish()} the list is ordered by time, reading it sequentially costs a disk read
+ * per block of rows.
+ */
+class RecordBuffer extends AbstractList<Record> implements RandomAccess, Closeable {
+
+  private static final Logger log = Logger.getLogger(RecordBuffer.class.getName());
+
+  static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+  private static final int HEADER_SIZE = 8 + 4 + 1; // epoch second, nanos, heater flags
+  private static final int IO_BLOCK_SIZE = 64 * 1024;
+  private static final byte HEATING_CABLE_FLAG = 1;
+  private static final byte HEATING_ELEMENT_FLAG = 2;
+
+  private final long memoryBudget;
+  private int valuesCount = -1;
+  private int recordSize;
+  private ByteBuffer memory; // direct, rows not spilled yet
+  private int memoryCount;
+
+  private File spillFile;
+  private FileChannel spillChannel;
+  private int spilledCount;
+  private final List<Integer> segmentStarts = new ArrayList<>();
+  private boolean isSpillOrdered = true;
+  private long lastSpilledKey = Long.MIN_VALUE;
+
+  private ByteBuffer readBlock;
+  private int readBlockStart;
+  private int readBlockCount;
+
+  RecordBuffer(long memoryBudget) {
+    Validate.isTrue(memoryBudget > 0, "Объем памяти буфера должен быть больше нуля");
+    this.memoryBudget = memoryBudget;
+  }
+
+  @Override
+  public synchronized boolean add(Record rec) {
+    if (memory == null) {
+      allocate(rec.values.length);
+    }
+    Validate.isTrue(rec.values.length == valuesCount,
+        "Количество значений записи " + rec.values.length + " вместо " + valuesCount);
+    if (!memory.hasRemaining()) {
+      spill();
+    }
+    write(rec, memory);
+    memoryCount++;
+    return true;
+  }
+
+  private void allocate(int valuesCount) {
+    this.valuesCount = valuesCount;
+    this.recordSize = HEADER_SIZE + 4 * valuesCount;
+    final long capacity = Math.max(1, Math.min(memoryBudget / recordSize,
+        Integer.MAX_VALUE / recordSize));
+    memory = ByteBuffer.allocateDirect((int) capacity * recordSize);
+  }
+
+  @Override
+  public synchronized Record get(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+    }
+    if (index >= spilledCount) {
+      return read(memory, (index - spilledCount) * recordSize);
+    }
+    if (index < readBlockStart || index >= readBlockStart + readBlockCount) {
+      readBlock(index);
+    }
+    return read(readBlock, (index - readBlockStart) * recordSize);
+  }
+
+  @Override
+  public synchronized int size() {
+    return spilledCount + memoryCount;
+  }
+
+  /**
+   * Orders the rows by time: merges the segments if they overlap. Rows already in memory stay
+   * there if they go after all the spilled ones.
+   */
+  synchronized void finish() {
+    if (memoryCount == 0 || (spilledCount > 0 && !isMemoryAfterSpill())) {
+      if (memoryCount > 0) {
+        spill();
+      }
+      if (!isSpillOrdered) {
+        mergeSegments();
+      }
+    } else {
+      sortMemory();
+    }
+  }
+
+  private boolean isMemoryAfterSpill() {
+    if (!isSpillOrdered || !isSorted(memory, memoryCount)) {
+      return false;
+    }
+    return key(memory, 0) >= lastSpilledKey;
+  }
+
+  @Override
+  public synchronized void close() {
+    memory = null;
+    readBlock = null;
+    memoryCount = 0;
+    spilledCount = 0;
+    segmentStarts.clear();
+    try {
+      if (spillChannel != null) {
+        spillChannel.close();
+      }
+    } catch (IOException e) {
+      log.warning("Не удалось закрыть временный файл " + spillFile + ": " + e.getMessage());
+    } finally {
+      spillChannel = null;
+      deleteSpillFile(spillFile);
+      spillFile = null;
+    }
+  }
+
+  private void spill() {
+    sortMemory();
+    try {
+      if (spillChannel == null) {
+        spillFile = File.createTempFile("logxl-records", ".bin");
+        spillFile.deleteOnExit();
+        spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        log.info("Буфер записей превысил " + memoryBudget / 1024 / 1024
+            + " МБ, сбрасываю записи на диск в " + spillFile.getAbsolutePath());
+      }
+      if (key(memory, 0) < lastSpilledKey) {
+        isSpillOrdered = false;
+      }
+      lastSpilledKey = key(memory, (memoryCount - 1) * recordSize);
+      memory.flip();
+      writeFully(spillChannel, memory, (long) spilledCount * recordSize);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось сбросить записи во временный файл", e);
+    }
+    segmentStarts.add(spilledCount);
+    spilledCount += memoryCount;
+    memoryCount = 0;
+    memory.clear();
+    readBlockCount = 0;
+  }
+
+  /**
+   * Rows come from the merger in time order, so the sort is a single check in most cases.
+   * Otherwise the rows are moved within the buffer along the cycles of the sorted order, so that
+   * no second buffer of the whole budget is needed.
+   */
+  private void sortMemory() {
+    if (isSorted(memory, memoryCount)) {
+      return;
+    }
+    final List<Integer> order = new ArrayList<>(memoryCount);
+    for (int i = 0; i < memoryCount; i++) {
+      order.add(i);
+    }
+    order.sort(Comparator.comparingLong(i -> key(memory, i * recordSize)));
+    final ByteBuffer rows = memory.duplicate();
+    rows.clear();
+    final byte[] first = new byte[recordSize];
+    final byte[] row = new byte[recordSize];
+    final boolean[] isPlaced = new boolean[memoryCount];
+    for (int start = 0; start < memoryCount; start++) {
+      if (isPlaced[start] || order.get(start) == start) {
+        continue;
+      }
+      getRow(rows, start, first);
+      int target = start;
+      for (int source = order.get(target); source != start; source = order.get(target)) {
+        getRow(rows, source, row);
+        putRow(rows, target, row);
+        isPlaced[target] = true;
+        target = source;
+      }
+      putRow(rows, target, first);
+      isPlaced[target] = true;
+    }
+  }
+
+  private void getRow(ByteBuffer rows, int index, byte[] row) {
+    rows.position(index * recordSize);
+    rows.get(row);
+  }
+
+  private void putRow(ByteBuffer rows, int index, byte[] row) {
+    rows.position(index * recordSize);
+    rows.put(row);
+  }
+
+  private boolean isSorted(ByteBuffer buffer, int count) {
+    for (int i = 1; i < count; i++) {
+      if (key(buffer, i * recordSize) < key(buffer, (i - 1) * recordSize)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void mergeSegments() {
+    log.info("Сегменты временного файла пересекаются по времени, объединяю "
+        + segmentStarts.size() + " сегментов");
+    final File mergedFile;
+    try {
+      mergedFile = File.createTempFile("logxl-records", ".bin");
+      mergedFile.deleteOnExit();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось создать временный файл", e);
+    }
+    try (FileChannel merged = FileChannel.open(mergedFile.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      final PriorityQueue<SegmentCursor> queue = new PriorityQueue<>(
+          Comparator.comparingLong(SegmentCursor::headKey).thenComparingInt(c -> c.segmentIx));
+      for (int s = 0; s < segmentStarts.size(); s++) {
+        final int end = s + 1 < segmentStarts.size() ? segmentStarts.get(s + 1) : spilledCount;
+        final SegmentCursor cursor = new SegmentCursor(s, segmentStarts.get(s), end);
+        if (cursor.advance()) {
+          queue.add(cursor);
+        }
+      }
+      final ByteBuffer out = ByteBuffer.allocateDirect(blockRecords() * recordSize);
+      long position = 0;
+      while (!queue.isEmpty()) {
+        final SegmentCursor cursor = queue.poll();
+        if (!out.hasRemaining()) {
+          out.flip();
+          position += writeFully(merged, out, position);
+          out.clear();
+        }
+        cursor.copyHead(out);
+        if (cursor.advance()) {
+          queue.add(cursor);
+        }
+      }
+      out.flip();
+      writeFully(merged, out, position);
+    } catch (IOException | RuntimeException e) {
+      deleteSpillFile(mergedFile);
+      throw e instanceof IOException
+          ? new UncheckedIOException("Не удалось объединить временные файлы", (IOException) e)
+          : (RuntimeException) e;
+    }
+
+    try {
+      spillChannel.close();
+      deleteSpillFile(spillFile);
+      spillFile = mergedFile;
+      spillChannel = FileChannel.open(mergedFile.toPath(), StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось открыть временный файл", e);
+    }
+    segmentStarts.clear();
+    segmentStarts.add(0);
+    isSpillOrdered = true;
+    readBlockCount = 0;
+  }
+
+  /**
+   * Reads the rows of a segment a block at a time.
+   */
+  private class SegmentCursor {
+    final int segmentIx;
+    final ByteBuffer block = ByteBuffer.allocate(blockRecords() * recordSize);
+    int next; // index of the next row to read
+    final int end;
+
+    SegmentCursor(int segmentIx, int start, int end) {
+      this.segmentIx = segmentIx;
+      this.next = start;
+      this.end = end;
+      block.limit(0);
+    }
+
+    boolean advance() throws IOException {
+      if (block.hasRemaining()) {
+        block.position(block.position() + recordSize);
+      }
+      if (!block.hasRemaining()) {
+        if (next == end) {
+          return false;
+        }
+        final int count = Math.min(blockRecords(), end - next);
+        block.clear().limit(count * recordSize);
+        readFully(spillChannel, block, (long) next * recordSize);
+        block.flip();
+        next += count;
+      }
+      return true;
+    }
+
+    long headKey() {
+      return key(block, block.position());
+    }
+
+    void copyHead(ByteBuffer out) {
+      final ByteBuffer head = block.duplicate();
+      head.limit(head.position() + recordSize);
+      out.put(head);
+    }
+  }
+
+  private void readBlock(int index) {
+    if (readBlock == null) {
+      readBlock = ByteBuffer.allocate(blockRecords() * recordSize);
+    }
+    final int count = Math.min(blockRecords(), spilledCount - index);
+    readBlock.clear().limit(count * recordSize);
+    try {
+      readFully(spillChannel, readBlock, (long) index * recordSize);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Не удалось прочитать временный файл", e);
+    }
+    readBlockStart = index;
+    readBlockCount = count;
+  }
+
+  private int blockRecords() {
+    return Math.max(1, IO_BLOCK_SIZE / recordSize);
+  }
+
+  private static void write(Record rec, ByteBuffer buffer) {
+    buffer.putLong(rec.datetime.toEpochSecond(ZoneOffset.UTC));
+    buffer.putInt(rec.datetime.getNano());
+    buffer.put((byte) ((rec.isHeatingCableOn ? HEATING_CABLE_FLAG : 0)
+        | (rec.isHeatingElementOn ? HEATING_ELEMENT_FLAG : 0)));
+    for (float value : rec.values) {
+      buffer.putFloat(value);
+    }
+  }
+
+  private Record read(ByteBuffer buffer, int offset) {
+    final Record rec = new Record();
+    rec.datetime = LocalDateTime.ofEpochSecond(buffer.getLong(offset), buffer.getInt(offset + 8),
+        ZoneOffset.UTC);
+    final byte flags = buffer.get(offset + 12);
+    rec.isHeatingCableOn = (flags & HEATING_CABLE_FLAG) != 0;
+    rec.isHeatingElementOn = (flags & HEATING_ELEMENT_FLAG) != 0;
+    rec.values = new float[valuesCount];
+    for (int i = 0; i < valuesCount; i++) {
+      rec.values[i] = buffer.getFloat(offset + HEADER_SIZE + 4 * i);
+    }
+    return rec;
+  }
+
+  /**
+   * Sort key of the row, nanos are always zero for log records.
+   */
+  private static long key(ByteBuffer buffer, int offset) {
+    return buffer.getLong(offset);
+  }
+
+  private static int writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    final int length = buffer.remaining();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    return length;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Неожиданный конец временного файла");
+      }
+      position += read;
+    }
+  }
+
+  private static void deleteSpillFile(File file) {
+    if (file != null && file.exists() && !file.delete()) {
+      log.warning("Не удалось удалить временный файл " + file.getAbsolutePath());
+    }
+  }
+}
@@ -20,11 +20,12 @@ package absaliks.logxl.report.builder;
 
 import absaliks.logxl.log.Record;
 import absaliks.logxl.report.ReportType;
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
 import lombok.Getter;
 
-public abstract class ReportBuilder {
+public abstract class ReportBuilder implements Closeable {
 
   @Getter
   protected final List<Record> records = new ArrayList<>();
@@ -38,5 +39,23 @@ public abstract class ReportBuilder {
 
   public abstract void consume(List<Record> rawRecords);
 
+  /**
+   * Called when the merger drops a record having the time of the last consumed one.
+   */
+  public void onDroppedDuplicate() {}
+
   public void flush() {}
+
+  /**
+   * Returns the records built so far including the one that is still being accumulated.
+   */
+  public List<Record> snapshot() {
+    return new ArrayList<>(records);
+  }
+
+  /**
+   * Releases the resources the records are kept in, the records are not available after that.
+   */
+  @Override
+  public void close() {}
 }
@@ -19,12 +19,47 @@
 package absaliks.logxl.report.builder;
 
 import absaliks.logxl.log.Record;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Keeps the raw records in a {@link RecordBuffer}, so that long periods do not have to fit into
+ * the heap.
+ */
 public class StraightReportBuilder extends ReportBuilder {
 
+  private final RecordBuffer buffer;
+
+  public StraightReportBuilder() {
+    this(RecordBuffer.DEFAULT_MEMORY_BUDGET);
+  }
+
+  public StraightReportBuilder(long memoryBudget) {
+    this.buffer = new RecordBuffer(memoryBudget);
+  }
+
   @Override
   public void consume(List<Record> rawRecords) {
-    this.records.addAll(rawRecords);
+    rawRecords.forEach(buffer::add);
+  }
+
+  @Override
+  public void flush() {
+    buffer.finish();
+  }
+
+  @Override
+  public List<Record> getRecords() {
+    return buffer;
+  }
+
+  @Override
+  public List<Record> snapshot() {
+    return new ArrayList<>(buffer);
+  }
+
+  @Override
+  public void close() {
+    buffer.close();
   }
 }
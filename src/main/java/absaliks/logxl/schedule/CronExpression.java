@@ -0,0 +1,156 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.schedule;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Five field cron expression: minute, hour, day of month, month and day of week (0 or 7 is
+ * Sunday). Fields accept {@code *}, numbers, ranges {@code 1-5}, lists {@code 1,15} and steps
+ * {@code *}{@code /10}. As in cron, when both day fields are restricted either of them matches.
+ */
+public final class CronExpression {
+
+  private static final int SEARCH_YEARS = 5;
+
+  private final String text;
+  private final BitSet minutes;
+  private final BitSet hours;
+  private final BitSet daysOfMonth;
+  private final BitSet months;
+  private final BitSet daysOfWeek;
+  private final boolean isDayOfMonthRestricted;
+  private final boolean isDayOfWeekRestricted;
+
+  private CronExpression(String text, String[] fields) {
+    this.text = text;
+    this.minutes = parseField(fields[0], 0, 59, "минуты");
+    this.hours = parseField(fields[1], 0, 23, "часы");
+    this.daysOfMonth = parseField(fields[2], 1, 31, "день месяца");
+    this.months = parseField(fields[3], 1, 12, "месяц");
+    this.daysOfWeek = parseField(fields[4], 0, 7, "день недели");
+    if (daysOfWeek.get(7)) {
+      daysOfWeek.set(0);
+    }
+    this.isDayOfMonthRestricted = !"*".equals(fields[2]);
+    this.isDayOfWeekRestricted = !"*".equals(fields[4]);
+  }
+
+  /**
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public static CronExpression parse(String text) {
+    final String[] fields = StringUtils.split(StringUtils.defaultString(text).trim());
+    if (fields.length != 5) {
+      throw new IllegalArgumentException(
+          "Расписание должно состоять из 5 полей (минуты часы день месяц день_недели): " + text);
+    }
+    return new CronExpression(text.trim(), fields);
+  }
+
+  /**
+   * @return the first matching minute strictly after the given time
+   * @throws IllegalStateException if nothing matches within several years, e.g. for 31st of
+   * February
+   */
+  public LocalDateTime next(LocalDateTime after) {
+    LocalDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+    final LocalDateTime limit = time.plusYears(SEARCH_YEARS);
+    while (time.isBefore(limit)) {
+      if (!months.get(time.getMonthValue())) {
+        time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+      } else if (!matchesDay(time)) {
+        time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+      } else if (!hours.get(time.getHour())) {
+        time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+      } else if (!minutes.get(time.getMinute())) {
+        time = time.plusMinutes(1);
+      } else {
+        return time;
+      }
+    }
+    throw new IllegalStateException("Расписание " + text + " не срабатывает ни разу");
+  }
+
+  private boolean matchesDay(LocalDateTime time) {
+    final boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+    final DayOfWeek dayOfWeek = time.getDayOfWeek();
+    final boolean weekday = daysOfWeek.get(dayOfWeek == DayOfWeek.SUNDAY ? 0 : dayOfWeek.getValue());
+    if (isDayOfMonthRestricted && isDayOfWeekRestricted) {
+      return dayOfMonth || weekday;
+    }
+    return dayOfMonth && weekday;
+  }
+
+  private static BitSet parseField(String field, int min, int max, String name) {
+    final BitSet values = new BitSet(max + 1);
+    for (String part : StringUtils.split(field, ',')) {
+      try {
+        parsePart(part, min, max, values);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Ошибка в поле \"" + name + "\" расписания: " + field);
+      }
+      if (values.nextSetBit(0) < min || values.length() - 1 > max) {
+        throw new IllegalArgumentException("Поле \"" + name + "\" расписания должно быть от "
+            + min + " до " + max + ": " + field);
+      }
+    }
+    if (values.isEmpty()) {
+      throw new IllegalArgumentException("Пустое поле \"" + name + "\" расписания");
+    }
+    return values;
+  }
+
+  private static void parsePart(String part, int min, int max, BitSet values) {
+    int step = 1;
+    String range = part;
+    final int slash = part.indexOf('/');
+    if (slash >= 0) {
+      step = Integer.parseInt(part.substring(slash + 1));
+      range = part.substring(0, slash);
+      if (step < 1) {
+        throw new NumberFormatException();
+      }
+    }
+    int from;
+    int to;
+    if ("*".equals(range)) {
+      from = min;
+      to = max;
+    } else {
+      final int dash = range.indexOf('-');
+      from = Integer.parseInt(dash >= 0 ? range.substring(0, dash) : range);
+      to = dash >= 0 ? Integer.parseInt(range.substring(dash + 1)) : (slash >= 0 ? max : from);
+    }
+    if (from > to) {
+      throw new NumberFormatException();
+    }
+    for (int value = from; value <= to; value += step) {
+      values.set(value);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.schedule;
+
+import absaliks.logxl.AbstractFactory;
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.concurrent.ThreadPools;
+import absaliks.logxl.config.Config;
+import absaliks.logxl.report.ReportService;
+import absaliks.logxl.report.ReportType;
+import absaliks.logxl.schedule.RunHistory.Status;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the scheduled jobs one at a time on a background thread. A run that is due while another
+ * one is still going waits for it, the firings missed meanwhile are skipped. A lock file keeps
+ * several copies of the program from running jobs at the same time.
+ */
+public class ReportScheduler {
+
+  private static final Logger log = Logger.getLogger(ReportScheduler.class.getName());
+
+  private static final File LOCK_FILE = new File(System.getProperty("user.dir"), "schedule.lock");
+  private static final File HISTORY_FILE = new File(System.getProperty("user.dir"),
+      "schedule-history.log");
+
+  private final AbstractFactory factory;
+  private final List<ScheduledJob> jobs;
+  private final Clock clock;
+  private final File lockFile;
+  private final RunHistory history;
+  private final ScheduledExecutorService executor =
+      ThreadPools.newBackgroundScheduler("logxl-scheduler");
+
+  public ReportScheduler(AbstractFactory factory, List<ScheduledJob> jobs) {
+    this(factory, jobs, Clock.systemDefaultZone(), LOCK_FILE, HISTORY_FILE);
+  }
+
+  ReportScheduler(AbstractFactory factory, List<ScheduledJob> jobs, Clock clock, File lockFile,
+      File historyFile) {
+    this.factory = factory;
+    this.jobs = new ArrayList<>(jobs);
+    this.clock = clock;
+    this.lockFile = lockFile;
+    this.history = new RunHistory(historyFile, clock);
+  }
+
+  public boolean hasJobs() {
+    return !jobs.isEmpty();
+  }
+
+  public void start() {
+    if (jobs.isEmpty()) {
+      log.fine("Нет заданий по расписанию");
+    }
+    for (ScheduledJob job : jobs) {
+      scheduleNext(job);
+    }
+  }
+
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  public void awaitTermination() throws InterruptedException {
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A job that can not be scheduled is left out, the others go on. The cron is matched against
+   * the local time, the delay is counted in the clock's zone, so that it stays right across a
+   * daylight saving change.
+   */
+  private void scheduleNext(ScheduledJob job) {
+    final ZonedDateTime now = ZonedDateTime.now(clock);
+    final LocalDateTime next;
+    try {
+      next = job.cron.next(now.toLocalDateTime());
+    } catch (RuntimeException e) {
+      log.log(Level.SEVERE, "Задание " + job.name + " не запланировано", e);
+      return;
+    }
+    final long delay =
+        Math.max(0, Duration.between(now, next.atZone(clock.getZone())).toMillis());
+    log.info("Задание " + job.name + " запланировано на " + next);
+    executor.schedule(() -> {
+      try {
+        run(job);
+      } finally {
+        if (!executor.isShutdown()) {
+          scheduleNext(job);
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void run(ScheduledJob job) {
+    final LocalDateTime start = LocalDateTime.now(clock);
+    try (RandomAccessFile lockStream = new RandomAccessFile(lockFile, "rw");
+        FileLock lock = lockStream.getChannel().tryLock()) {
+      if (lock == null) {
+        log.warning("Задание " + job.name + " пропущено, выполняется другой копией программы");
+        history.append(start, job.name, Status.SKIPPED, "выполняется другой копией программы");
+        return;
+      }
+      history.append(start, job.name, Status.OK, export(job, start.toLocalDate()));
+    } catch (Exception e) {
+      log.log(Level.SEVERE, "Задание " + job.name + " завершилось с ошибкой", e);
+      history.append(start, job.name, Status.FAILED, String.valueOf(e.getMessage()));
+    }
+  }
+
+  /**
+   * @return path of the exported report without the extension
+   */
+  String export(ScheduledJob job, LocalDate today) throws IOException {
+    final Config runConfig = createRunConfig(job, today);
+    log.info("Запуск задания " + job.name + " за период " + runConfig.dateFrom + " - "
+        + runConfig.dateTo);
+    final ReportService reportService = new ReportService(factory, runConfig);
+    try {
+      reportService.createReport(new Cancellation());
+    } finally {
+      reportService.shutdown();
+    }
+    return new File(runConfig.outputDirectory, runConfig.reportFileName).getPath();
+  }
+
+  /**
+   * Copy of the current settings for the whole days before the day of the run, written to the
+   * job's directory under a dated name.
+   */
+  private Config createRunConfig(ScheduledJob job, LocalDate today) throws IOException {
+    final Config runConfig = factory.getConfigSerializer().copy(factory.getConfig());
+    final List<ReportType> types = new ArrayList<>(job.reportTypes);
+    runConfig.reportType = types.get(0);
+    runConfig.additionalReportTypes.clear();
+    runConfig.additionalReportTypes.addAll(types.subList(1, types.size()));
+    runConfig.dateFrom = LocalDateTime.of(today.minusDays(job.days), LocalTime.MIN);
+    runConfig.dateTo = LocalDateTime.of(today, LocalTime.MIN).minusSeconds(1);
+    runConfig.outputDirectory = job.directory;
+    runConfig.reportFileName = job.name + "_" + runConfig.dateTo.toLocalDate();
+    final File directory = new File(job.directory);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Не удалось создать папку " + directory.getAbsolutePath());
+    }
+    return runConfig;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.schedule;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends a tab separated line per scheduled run: start time, job name, status, duration in
+ * seconds and details.
+ */
+class RunHistory {
+
+  private static final Logger log = Logger.getLogger(RunHistory.class.getName());
+
+  enum Status {
+    OK, FAILED, SKIPPED
+  }
+
+  private final File file;
+  private final Clock clock;
+
+  RunHistory(File file, Clock clock) {
+    this.file = file;
+    this.clock = clock;
+  }
+
+  synchronized void append(LocalDateTime start, String jobName, Status status, String details) {
+    final long seconds =
+        Duration.between(start.atZone(clock.getZone()), ZonedDateTime.now(clock)).getSeconds();
+    final String line = start.truncatedTo(ChronoUnit.SECONDS) + "\t" + jobName + "\t" + status
+        + "\t" + seconds + "\t" + details.replace('\n', ' ');
+    try {
+      Files.write(file.toPath(), Collections.singletonList(line), UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Не удалось записать историю запусков в " + file, e);
+    }
+  }
+}
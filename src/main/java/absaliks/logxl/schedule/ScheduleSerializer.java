@@ -0,0 +1,125 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.schedule;
+
+import absaliks.logxl.report.ReportType;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Reads jobs from {@code schedule.properties} next to {@code config.properties}, e.g.
+ * <pre>
+ * job.daily.cron=30 3 * * *
+ * job.daily.reportTypes=DAILY,HOURLY
+ * job.weekly.cron=0 4 * * 1
+ * job.weekly.reportTypes=DAILY
+ * job.weekly.days=7
+ * </pre>
+ */
+public class ScheduleSerializer {
+
+  private static final Logger log = Logger.getLogger(ScheduleSerializer.class.getName());
+
+  static final File SCHEDULE_FILE = new File(System.getProperty("user.dir"),
+      "schedule.properties");
+  private static final String JOB_PREFIX = "job.";
+  private static final String CRON = "cron";
+  private static final String REPORT_TYPES = "reportTypes";
+  private static final String DAYS = "days";
+  private static final String DIRECTORY = "directory";
+  private static final String DEFAULT_DIRECTORY = "reports";
+
+  public List<ScheduledJob> load() {
+    final List<ScheduledJob> jobs = new ArrayList<>();
+    if (!SCHEDULE_FILE.exists()) {
+      return jobs;
+    }
+    final Properties properties = new Properties();
+    try (InputStream stream = new FileInputStream(SCHEDULE_FILE)) {
+      properties.load(stream);
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Не удалось прочесть файл " + SCHEDULE_FILE, e);
+      return jobs;
+    }
+    for (String name : getJobNames(properties)) {
+      try {
+        jobs.add(parseJob(properties, name));
+      } catch (IllegalArgumentException e) {
+        log.warning("Задание " + name + " пропущено: " + e.getMessage());
+      }
+    }
+    return jobs;
+  }
+
+  private Set<String> getJobNames(Properties properties) {
+    final Set<String> names = new TreeSet<>();
+    for (String key : properties.stringPropertyNames()) {
+      final int nameEnd = key.lastIndexOf('.');
+      if (key.startsWith(JOB_PREFIX) && nameEnd > JOB_PREFIX.length()) {
+        names.add(key.substring(JOB_PREFIX.length(), nameEnd));
+      }
+    }
+    return names;
+  }
+
+  static ScheduledJob parseJob(Properties properties, String name) {
+    final ScheduledJob job = new ScheduledJob();
+    job.name = name;
+    job.cron = CronExpression.parse(properties.getProperty(jobKey(name, CRON)));
+    try {
+      job.cron.next(LocalDateTime.now());
+    } catch (IllegalStateException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+    job.reportTypes = parseReportTypes(properties.getProperty(jobKey(name, REPORT_TYPES)));
+    job.days = NumberUtils.toInt(properties.getProperty(jobKey(name, DAYS)), 1);
+    Validate.isTrue(job.days > 0, "Количество дней должно быть больше нуля");
+    job.directory = properties.getProperty(jobKey(name, DIRECTORY), DEFAULT_DIRECTORY);
+    return job;
+  }
+
+  private static Set<ReportType> parseReportTypes(String names) {
+    Validate.notBlank(names, "Не указаны типы отчета (reportTypes)");
+    final Set<ReportType> types = EnumSet.noneOf(ReportType.class);
+    for (String name : StringUtils.split(names, ", ")) {
+      try {
+        types.add(ReportType.valueOf(name.toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Неизвестный тип отчета " + name);
+      }
+    }
+    return types;
+  }
+
+  private static String jobKey(String name, String property) {
+    return JOB_PREFIX + name + "." + property;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.shard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads only objects of the given classes, so that whatever else turns up on the stream of another
+ * process, e.g. a worker started over ssh, is rejected before it is instantiated.
+ */
+class CheckedObjectInputStream extends ObjectInputStream {
+
+  private final Set<String> classNames;
+
+  CheckedObjectInputStream(InputStream in, Collection<String> classNames) throws IOException {
+    super(in);
+    this.classNames = new HashSet<>(classNames);
+  }
+
+  @Override
+  protected Class<?> resolveClass(ObjectStreamClass desc)
+      throws IOException, ClassNotFoundException {
+    if (!classNames.contains(desc.getName())) {
+      throw new InvalidClassException(desc.getName(), "Неожиданный класс в потоке обработчика");
+    }
+    return super.resolveClass(desc);
+  }
+
+  @Override
+  protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+    throw new InvalidClassException(String.join(", ", interfaces),
+        "Неожиданный класс в потоке обработчика");
+  }
+}
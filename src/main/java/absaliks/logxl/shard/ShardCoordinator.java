@@ -0,0 +1,223 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.shard;
+
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.concurrent.ThreadPools;
+import absaliks.logxl.config.Config;
+import absaliks.logxl.config.ConfigSerializer;
+import absaliks.logxl.report.builder.PartialReport;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Splits the files of a report run into contiguous parts of the period, has each part aggregated
+ * by a worker process and merges the partial reports. The workers are local JVMs unless
+ * {@code shardWorkerCommand} starts them some other way, e.g. over ssh; they are talked to through
+ * their standard input and output only.
+ *
+ * <p>The parts are cut by files, so records of files overlapping across a border are not checked
+ * for duplicates, see {@link PartialReport}.
+ */
+@RequiredArgsConstructor
+public class ShardCoordinator {
+
+  private static final Logger log = Logger.getLogger(ShardCoordinator.class.getName());
+
+  public static final String WORKER_ARGUMENT = "--worker";
+  private static final String MAIN_CLASS = "absaliks.logxl.Main";
+
+  private final ConfigSerializer configSerializer;
+  private final Config config;
+
+  /**
+   * Reads the workers on threads of their own, so that a run that is cancelled or out of time
+   * returns even if some process still holds a worker's output open.
+   */
+  public PartialReport build(List<String> fileList, Cancellation cancellation,
+      DoubleConsumer progressListener) throws IOException {
+    final List<List<String>> shards = split(fileList, config.shardWorkers);
+    log.info("Запускаю " + shards.size() + " обработчиков для " + fileList.size() + " файлов");
+    final Properties settings = configSerializer.toTransferProperties(config);
+    final List<Process> workers = new CopyOnWriteArrayList<>();
+    final List<CompletableFuture<PartialReport>> parts = new CopyOnWriteArrayList<>();
+    final Runnable destroy = () -> {
+      workers.forEach(ShardCoordinator::destroyTree);
+      parts.forEach(part -> part.cancel(false));
+    };
+    cancellation.onCancel(destroy);
+    final AtomicBoolean isTimedOut = new AtomicBoolean();
+    final ScheduledExecutorService watchdog =
+        ThreadPools.newBackgroundScheduler("logxl-shard-watchdog");
+    if (config.shardTimeoutMinutes > 0) {
+      watchdog.schedule(() -> {
+        log.warning("Обработчики не завершились за " + config.shardTimeoutMinutes + " мин");
+        isTimedOut.set(true);
+        destroy.run();
+      }, config.shardTimeoutMinutes, TimeUnit.MINUTES);
+    }
+    final ExecutorService readers = ThreadPools.newIoExecutor("logxl-shard", shards.size());
+    try {
+      for (List<String> shard : shards) {
+        final Process worker = start();
+        workers.add(worker);
+        try (OutputStream in = worker.getOutputStream()) {
+          final ObjectOutputStream objects = new ObjectOutputStream(in);
+          objects.writeObject(new ShardTask(settings, shard));
+          objects.flush();
+        }
+        final int workerIx = parts.size();
+        parts.add(CompletableFuture.supplyAsync(() -> read(worker, workerIx), readers));
+        if (cancellation.isCancelled() || isTimedOut.get()) {
+          destroy.run();
+        }
+      }
+      PartialReport result = null;
+      for (int i = 0; i < parts.size(); i++) {
+        final PartialReport part = await(parts.get(i), cancellation, isTimedOut);
+        if (result == null) {
+          result = part;
+        } else {
+          result.merge(part);
+        }
+        progressListener.accept((i + 1.0) / parts.size());
+      }
+      return result;
+    } finally {
+      watchdog.shutdownNow();
+      cancellation.removeOnCancel(destroy);
+      destroy.run();
+      readers.shutdownNow();
+    }
+  }
+
+  /**
+   * @return at most {@code count} parts of nearly the same number of files, in their order
+   */
+  static List<List<String>> split(List<String> fileList, int count) {
+    final int shardsCount = Math.max(1, Math.min(count, fileList.size()));
+    final List<List<String>> shards = new ArrayList<>(shardsCount);
+    for (int i = 0; i < shardsCount; i++) {
+      shards.add(fileList.subList(fileList.size() * i / shardsCount,
+          fileList.size() * (i + 1) / shardsCount));
+    }
+    return shards;
+  }
+
+  private Process start() throws IOException {
+    final List<String> command = new ArrayList<>();
+    if (StringUtils.isBlank(config.shardWorkerCommand)) {
+      command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(MAIN_CLASS);
+    } else {
+      command.addAll(Arrays.asList(StringUtils.split(config.shardWorkerCommand)));
+    }
+    command.add(WORKER_ARGUMENT);
+    return new ProcessBuilder(command)
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+  }
+
+  private PartialReport read(Process worker, int workerIx) {
+    final PartialReport part;
+    try (ObjectInputStream objects = new CheckedObjectInputStream(
+        new BufferedInputStream(worker.getInputStream()), PartialReport.getSerializedClasses())) {
+      part = (PartialReport) objects.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new UncheckedIOException(
+          new IOException("Обработчик " + (workerIx + 1) + " не вернул результат", e));
+    }
+    try {
+      if (worker.waitFor() != 0) {
+        throw new UncheckedIOException(new IOException(
+            "Обработчик " + (workerIx + 1) + " завершился с кодом " + worker.exitValue()));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(new IOException("Обработка прервана", e));
+    }
+    return part;
+  }
+
+  private PartialReport await(CompletableFuture<PartialReport> part, Cancellation cancellation,
+      AtomicBoolean isTimedOut) throws IOException {
+    try {
+      return part.get();
+    } catch (ExecutionException | CancellationException e) {
+      cancellation.throwIfCancelled();
+      if (isTimedOut.get()) {
+        throw new IOException(
+            "Обработчики не завершились за " + config.shardTimeoutMinutes + " мин и остановлены");
+      }
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IOException("Обработчик завершился с ошибкой", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Обработка прервана", e);
+    }
+  }
+
+  /**
+   * Stops the processes the worker command may have started too, e.g. a JVM run by a script,
+   * that would keep working for nothing. They are known since Java 9 only, so the handles are
+   * looked up reflectively.
+   */
+  private static void destroyTree(Process process) {
+    try {
+      final Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+      final Object handle = Process.class.getMethod("toHandle").invoke(process);
+      final Stream<?> descendants = (Stream<?>) handleClass.getMethod("descendants").invoke(handle);
+      final Method destroyForcibly = handleClass.getMethod("destroyForcibly");
+      for (Object descendant : descendants.toArray()) {
+        destroyForcibly.invoke(descendant);
+      }
+    } catch (ReflectiveOperationException e) {
+      log.log(Level.FINE, "Process handles are not available", e);
+    }
+    process.destroyForcibly();
+  }
+}
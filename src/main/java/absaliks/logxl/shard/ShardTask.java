@@ -0,0 +1,45 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.shard;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * What a worker process is given on its standard input: the settings of the run, passwords
+ * included, and the files of its part of the period.
+ */
+class ShardTask implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  static final List<String> SERIALIZED_CLASSES = Arrays.asList(ShardTask.class.getName(),
+      Properties.class.getName(), Hashtable.class.getName(), ArrayList.class.getName());
+
+  final Properties settings;
+  final ArrayList<String> files;
+
+  ShardTask(Properties settings, List<String> files) {
+    this.settings = settings;
+    this.files = new ArrayList<>(files);
+  }
+}
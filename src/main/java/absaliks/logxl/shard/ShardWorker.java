@@ -0,0 +1,85 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.shard;
+
+import absaliks.logxl.AbstractFactory;
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.config.Config;
+import absaliks.logxl.report.ReportService;
+import absaliks.logxl.report.builder.PartialReport;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Worker process of a sharded run: reads a {@link ShardTask} from the standard input, aggregates
+ * its files and writes the {@link PartialReport} to the standard output. Anything else the
+ * process prints goes to the standard error, so that it does not corrupt the result.
+ */
+@RequiredArgsConstructor
+public class ShardWorker {
+
+  private static final Logger log = Logger.getLogger(ShardWorker.class.getName());
+
+  private final AbstractFactory factory;
+
+  /**
+   * @return {@code false} if the task failed, the reason is logged
+   */
+  public boolean run() {
+    final PrintStream out = System.out;
+    System.setOut(System.err);
+    try {
+      run(System.in, out);
+      out.flush();
+      return true;
+    } catch (Exception e) {
+      log.log(Level.SEVERE, "Обработчик завершился с ошибкой", e);
+      return false;
+    }
+  }
+
+  void run(InputStream in, OutputStream out) throws IOException {
+    final ShardTask task;
+    try {
+      task = (ShardTask) new CheckedObjectInputStream(in, ShardTask.SERIALIZED_CLASSES)
+          .readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Неизвестное задание обработчика", e);
+    }
+    final Config config = factory.getConfigSerializer().fromTransferProperties(task.settings);
+    log.info("Обработчик получил " + task.files.size() + " файлов: " + task.files.get(0) + " - "
+        + task.files.get(task.files.size() - 1));
+    final ReportService service = new ReportService(factory, config);
+    try {
+      final PartialReport report = service.buildPartialReport(task.files, new Cancellation());
+      final ObjectOutputStream objects = new ObjectOutputStream(new BufferedOutputStream(out));
+      objects.writeObject(report);
+      objects.flush();
+    } finally {
+      service.shutdown();
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.ui;
+
+import absaliks.logxl.chart.ChartData;
+import absaliks.logxl.chart.ChartData.Series;
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.config.Config;
+import absaliks.logxl.report.Channels;
+import absaliks.logxl.report.ReportService;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.fxml.FXML;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.cell.CheckBoxListCell;
+import javafx.util.StringConverter;
+import javax.inject.Inject;
+
+public class ChartPresenter {
+
+  private static final Logger log = Logger.getLogger(ChartPresenter.class.getName());
+  private static final DateTimeFormatter TIME_LABEL_FORMATTER =
+      DateTimeFormatter.ofPattern("dd.MM.yy HH:mm");
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Cancellation cancellation = new Cancellation();
+
+  @FXML
+  private LineChart<Number, Number> chart;
+  @FXML
+  private NumberAxis timeAxis;
+  @FXML
+  private ListView<Integer> channels;
+  @FXML
+  private Label levelLabel;
+  @FXML
+  private ProgressBar progressBar;
+  @FXML
+  private Button loadButton;
+
+  @Inject
+  private Config config;
+
+  @Inject
+  private ReportService reportService;
+
+  private final List<BooleanProperty> selectedChannels = new ArrayList<>();
+  private ChartData data;
+
+  public void load() {
+    loadButton.setDisable(true);
+    executor.submit(() -> {
+      try (FanOutReportBuilder rollups = reportService.buildRollups(cancellation)) {
+        final ChartData loaded = new ChartData(rollups);
+        Platform.runLater(() -> {
+          data = loaded;
+          render();
+        });
+      } catch (CancellationException e) {
+        log.info("Загрузка данных графика отменена");
+      } catch (Exception e) {
+        log.log(Level.SEVERE, "Unable to load chart data with settings " + config, e);
+        Platform.runLater(() -> {
+          Alert alert = new Alert(AlertType.ERROR, e.getMessage());
+          alert.setTitle("Не удалось загрузить данные");
+          alert.setHeaderText(null);
+          alert.showAndWait();
+        });
+      } finally {
+        Platform.runLater(() -> loadButton.setDisable(false));
+      }
+    });
+  }
+
+  @FXML
+  private void initialize() {
+    initChannelsControl();
+    timeAxis.setTickLabelFormatter(new StringConverter<Number>() {
+      @Override
+      public String toString(Number second) {
+        return TIME_LABEL_FORMATTER.format(ChartData.fromEpochSecond(second.doubleValue()));
+      }
+
+      @Override
+      public Number fromString(String string) {
+        throw new UnsupportedOperationException();
+      }
+    });
+    chart.widthProperty().addListener(e -> render());
+    progressBar.progressProperty().bind(reportService.progress());
+  }
+
+  void shutdown() {
+    cancellation.cancel(false);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Lists the parsed channels only, items are indexes in {@link absaliks.logxl.log.Record#values}.
+   */
+  private void initChannelsControl() {
+    for (int i = 0; i < config.channels.size(); i++) {
+      BooleanProperty selected = new SimpleBooleanProperty(i == 0);
+      selected.addListener(e -> render());
+      selectedChannels.add(selected);
+    }
+    channels.getItems().addAll(
+        IntStream.range(0, config.channels.size()).boxed().collect(Collectors.toList()));
+    channels.setCellFactory(CheckBoxListCell.forListView(selectedChannels::get,
+        new StringConverter<Integer>() {
+          @Override
+          public String toString(Integer valueIx) {
+            return getChannelName(valueIx);
+          }
+
+          @Override
+          public Integer fromString(String string) {
+            throw new UnsupportedOperationException();
+          }
+        }));
+  }
+
+  /**
+   * Draws at most a point per pixel of every selected channel, so the cost does not depend on the
+   * length of the period.
+   */
+  private void render() {
+    if (data == null || data.isEmpty()) {
+      chart.getData().clear();
+      levelLabel.setText(data == null ? "" : "Нет данных за выбранный период");
+      return;
+    }
+    final int maxPoints = Math.max(3, (int) chart.getWidth());
+    final List<XYChart.Series<Number, Number>> seriesList = new ArrayList<>();
+    String level = "";
+    for (int channel = 0; channel < selectedChannels.size(); channel++) {
+      if (!selectedChannels.get(channel).get()) {
+        continue;
+      }
+      final Series sampled = data.sample(channel, data.getStart(), data.getEnd(), maxPoints);
+      final List<XYChart.Data<Number, Number>> points = new ArrayList<>(sampled.x.length);
+      for (int i = 0; i < sampled.x.length; i++) {
+        points.add(new XYChart.Data<>(sampled.x[i], sampled.y[i]));
+      }
+      final XYChart.Series<Number, Number> series = new XYChart.Series<>();
+      series.setName(getChannelName(channel));
+      series.getData().setAll(points);
+      seriesList.add(series);
+      level = sampled.level.description;
+    }
+    chart.getData().setAll(seriesList);
+    levelLabel.setText(level.isEmpty() ? "" : "Уровень: " + level);
+  }
+
+  private String getChannelName(int valueIx) {
+    return Channels.NAMES.get(config.channels.getChannel(valueIx));
+  }
+}
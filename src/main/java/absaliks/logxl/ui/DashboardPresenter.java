@@ -21,13 +21,16 @@ package absaliks.logxl.ui;
 import static absaliks.logxl.log.LogsSource.FTP;
 import static absaliks.logxl.log.LogsSource.LOCAL_DIR;
 
+import absaliks.logxl.concurrent.Cancellation;
 import absaliks.logxl.config.Config;
 import absaliks.logxl.log.LogsSource;
+import absaliks.logxl.report.LiveReportService;
 import absaliks.logxl.report.ReportService;
 import absaliks.logxl.report.ReportType;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -38,8 +41,11 @@ import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
+import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.ComboBox;
@@ -49,6 +55,8 @@ import javafx.scene.control.Spinner;
 import javafx.scene.control.SpinnerValueFactory.IntegerSpinnerValueFactory;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextFormatter;
+import javafx.scene.control.ToggleButton;
+import javafx.stage.Stage;
 import javax.inject.Inject;
 
 public class DashboardPresenter {
@@ -56,6 +64,7 @@ public class DashboardPresenter {
   private static final Logger log = Logger.getLogger(DashboardPresenter.class.getName());
   private static final TimeFormatter TIME_FORMATTER = new TimeFormatter();
   private ExecutorService executor = Executors.newSingleThreadExecutor();
+  private ExecutorService liveExecutor = Executors.newSingleThreadExecutor();
 
   @FXML
   private TextField userName;
@@ -88,6 +97,10 @@ public class DashboardPresenter {
   private CheckBox savePassword;
   @FXML
   private ProgressBar progressBar;
+  @FXML
+  private ToggleButton liveMode;
+  @FXML
+  private Button cancelButton;
 
   @Inject
   private Config config;
@@ -95,26 +108,101 @@ public class DashboardPresenter {
   @Inject
   private ReportService reportService;
 
+  @Inject
+  private LiveReportService liveReportService;
+
   private Future<?> future;
+  private Future<?> liveFuture;
+  private volatile Cancellation cancellation;
 
   public void generateReport() {
     if (future != null) {
       showAlert(AlertType.INFORMATION, null, "Дождитесь окончания генерации текущего отчета");
+      return;
     }
+    final Cancellation runCancellation = new Cancellation();
+    cancellation = runCancellation;
+    cancelButton.setDisable(false);
     future = executor.submit(() -> {
       try {
-        reportService.createReport();
-        Platform.runLater(() -> showAlert(AlertType.INFORMATION, "Выгрузка завершена", "Выгрузка завершена"));
+        final boolean isComplete = reportService.createReport(runCancellation);
+        final String message = isComplete ? "Выгрузка завершена"
+            : "Формирование отчета отменено, выгружены данные обработанные до отмены";
+        Platform.runLater(() -> showAlert(AlertType.INFORMATION, "Выгрузка завершена", message));
+      } catch (CancellationException e) {
+        log.info("Report generation has been cancelled");
+        Platform.runLater(() ->
+            showAlert(AlertType.INFORMATION, null, "Формирование отчета отменено"));
       } catch (Exception e) {
         log.log(Level.SEVERE, "Unable to create a report with settings " + config, e);
         Platform.runLater(() ->
             showAlert(AlertType.ERROR, "Не удалось создать отчет", e.getMessage()));
       } finally {
-        future = null;
+        // on the FX thread, after submit has returned and the future has been stored
+        Platform.runLater(() -> {
+          future = null;
+          cancellation = null;
+          cancelButton.setDisable(true);
+        });
       }
     });
   }
 
+  public void cancelReport() {
+    final Cancellation runCancellation = cancellation;
+    if (runCancellation == null) {
+      return;
+    }
+    final ButtonType exportPartial = new ButtonType("Выгрузить");
+    final ButtonType discard = new ButtonType("Не выгружать");
+    final Alert alert = new Alert(AlertType.CONFIRMATION,
+        "Выгрузить данные, обработанные до отмены?", exportPartial, discard, ButtonType.CANCEL);
+    alert.setTitle("Отмена формирования отчета");
+    alert.setHeaderText(null);
+    alert.showAndWait()
+        .filter(button -> button != ButtonType.CANCEL)
+        .ifPresent(button -> runCancellation.cancel(button == exportPartial));
+  }
+
+  public void toggleLiveMode() {
+    if (!liveMode.isSelected()) {
+      if (liveFuture != null) {
+        liveFuture.cancel(true);
+        liveFuture = null;
+      }
+      return;
+    }
+    liveFuture = liveExecutor.submit(() -> {
+      try {
+        liveReportService.run();
+      } catch (Exception e) {
+        log.log(Level.SEVERE, "Live report failed with settings " + config, e);
+        Platform.runLater(() -> {
+          liveMode.setSelected(false);
+          showAlert(AlertType.ERROR, "Режим реального времени остановлен", e.getMessage());
+        });
+      }
+    });
+  }
+
+  public void showChart() {
+    final ChartView view = new ChartView();
+    final Stage stage = new Stage();
+    stage.setTitle("График");
+    stage.setScene(new Scene(view.getView()));
+    stage.setOnHidden(e -> ((ChartPresenter) view.getPresenter()).shutdown());
+    stage.show();
+  }
+
+  public void showPreview() {
+    final PreviewView view = new PreviewView();
+    final Stage stage = new Stage();
+    stage.setTitle("Предпросмотр отчета");
+    stage.setScene(new Scene(view.getView()));
+    stage.setOnHidden(e -> ((PreviewPresenter) view.getPresenter()).shutdown());
+    stage.show();
+  }
+
   @FXML
   private void initialize() {
     initReportTypeControl();
@@ -134,6 +222,7 @@ public class DashboardPresenter {
 
   void shutdown() {
     executor.shutdown();
+    liveExecutor.shutdownNow();
   }
 
   private void initSavePasswordCheckbox() {
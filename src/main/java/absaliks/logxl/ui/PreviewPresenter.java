@@ -0,0 +1,256 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.ui;
+
+import absaliks.logxl.concurrent.Cancellation;
+import absaliks.logxl.config.Config;
+import absaliks.logxl.log.ChannelSelection;
+import absaliks.logxl.log.LogSchemas;
+import absaliks.logxl.log.Record;
+import absaliks.logxl.preview.PreviewTable;
+import absaliks.logxl.report.Channels;
+import absaliks.logxl.report.ReportService;
+import absaliks.logxl.report.ReportType;
+import java.text.DecimalFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javax.inject.Inject;
+import org.apache.commons.lang3.StringUtils;
+
+public class PreviewPresenter {
+
+  private static final Logger log = Logger.getLogger(PreviewPresenter.class.getName());
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Cancellation loading = new Cancellation();
+
+  @FXML
+  private TableView<Record> table;
+  @FXML
+  private Label summaryLabel;
+  @FXML
+  private ProgressBar progressBar;
+  @FXML
+  private Button loadButton;
+  @FXML
+  private Button exportButton;
+
+  @Inject
+  private Config config;
+
+  @Inject
+  private ReportService reportService;
+
+  private PreviewTable preview;
+  private String previewSettings;
+  private boolean isShutdown;
+
+  public void load() {
+    setButtonsDisabled(true);
+    final String settings = getPreviewSettings();
+    executor.submit(() -> {
+      try {
+        final PreviewTable loaded =
+            new PreviewTable(reportService.buildPreview(loading), config.reportType);
+        Platform.runLater(() -> {
+          if (isShutdown) {
+            loaded.close();
+            return;
+          }
+          show(loaded);
+          previewSettings = settings;
+        });
+      } catch (CancellationException e) {
+        log.info("Загрузка предпросмотра отменена");
+      } catch (Exception e) {
+        log.log(Level.SEVERE, "Unable to load preview with settings " + config, e);
+        Platform.runLater(() -> showAlert(AlertType.ERROR, "Не удалось загрузить данные",
+            e.getMessage()));
+      } finally {
+        Platform.runLater(() -> setButtonsDisabled(false));
+      }
+    });
+  }
+
+  /**
+   * Exports the previewed rows if the settings have not been changed since they were loaded,
+   * otherwise builds the report from scratch, as the dashboard does.
+   */
+  public void export() {
+    setButtonsDisabled(true);
+    final String settings = getPreviewSettings();
+    final PreviewTable exported =
+        settings != null && settings.equals(previewSettings) ? preview : null;
+    executor.submit(() -> {
+      try {
+        if (exported != null) {
+          reportService.exportPreview(exported, new Cancellation());
+        } else {
+          reportService.createReport();
+        }
+        Platform.runLater(() ->
+            showAlert(AlertType.INFORMATION, "Выгрузка завершена", "Выгрузка завершена"));
+      } catch (Exception e) {
+        log.log(Level.SEVERE, "Unable to export preview with settings " + config, e);
+        Platform.runLater(() -> showAlert(AlertType.ERROR, "Не удалось создать отчет",
+            e.getMessage()));
+      } finally {
+        Platform.runLater(() -> setButtonsDisabled(false));
+      }
+    });
+  }
+
+  @FXML
+  private void initialize() {
+    table.setPlaceholder(new Label("Нажмите «Загрузить данные»"));
+    progressBar.progressProperty().bind(reportService.progress());
+  }
+
+  /**
+   * Cancels loading, while an export that is already running is let finish: the preview it reads
+   * is closed on the same thread after it.
+   */
+  void shutdown() {
+    isShutdown = true;
+    loading.cancel(false);
+    final PreviewTable shown = preview;
+    if (shown != null) {
+      table.setItems(FXCollections.emptyObservableList());
+      preview = null;
+      executor.submit(shown::close);
+    }
+    executor.shutdown();
+  }
+
+  /**
+   * The table creates cells for the visible rows only and asks the preview for them as it is
+   * scrolled, so the rows are never copied into an observable list.
+   */
+  private void show(PreviewTable loaded) {
+    closePreview();
+    preview = loaded;
+    table.getColumns().setAll(createColumns(loaded));
+    table.setItems(FXCollections.observableList(loaded));
+    table.setPlaceholder(new Label("Нет данных за выбранный период"));
+    summaryLabel.setText(loaded.getReportType() + ", строк: " + loaded.size());
+  }
+
+  private List<TableColumn<Record, String>> createColumns(PreviewTable loaded) {
+    final List<TableColumn<Record, String>> columns = new ArrayList<>();
+    final DateTimeFormatter dateFormatter =
+        DateTimeFormatter.ofPattern(loaded.getReportType().getDateFormat());
+    columns.add(createColumn("Дата и время", rec -> dateFormatter.format(rec.datetime)));
+
+    final ChannelSelection channels = config.channels;
+    final LogSchemas schemas = LogSchemas.getInstance();
+    for (int i = 0; i < channels.size(); i++) {
+      final int valueIx = i;
+      final int channel = channels.getChannel(i);
+      final DecimalFormat format = createFormat(schemas.getDecimalPlaces(channel));
+      columns.add(createColumn(Channels.NAMES.get(channel),
+          rec -> format.format(rec.values[valueIx])));
+    }
+    if (channels.isHeatingCableSelected) {
+      columns.add(createColumn(Channels.HEATING_CABLE,
+          rec -> rec.isHeatingCableOn ? "ВКЛ" : "ВЫКЛ"));
+    }
+    if (channels.isHeatingElementSelected) {
+      columns.add(createColumn(Channels.HEATING_ELEMENT,
+          rec -> rec.isHeatingElementOn ? "ВКЛ" : "ВЫКЛ"));
+    }
+    if (loaded.getReportType() != ReportType.STRAIGHT) {
+      final int count = config.percentiles.size();
+      for (int i = 0; i < channels.size() * count; i++) {
+        final int percentileIx = i;
+        final int channel = channels.getChannel(i / count);
+        final DecimalFormat format = createFormat(schemas.getDecimalPlaces(channel));
+        columns.add(createColumn(
+            Channels.getPercentileName(channel, config.percentiles.get(i % count)),
+            rec -> rec.percentiles != null
+                ? format.format(rec.percentiles[percentileIx]) : ""));
+      }
+    }
+    return columns;
+  }
+
+  private static DecimalFormat createFormat(int decimalPlaces) {
+    return new DecimalFormat(
+        decimalPlaces > 0 ? "0." + StringUtils.repeat('#', decimalPlaces) : "0");
+  }
+
+  private static TableColumn<Record, String> createColumn(String name,
+      Function<Record, String> formatter) {
+    final TableColumn<Record, String> column = new TableColumn<>(name);
+    column.setSortable(false);
+    column.setCellValueFactory(cell ->
+        new ReadOnlyStringWrapper(formatter.apply(cell.getValue())).getReadOnlyProperty());
+    return column;
+  }
+
+  private void closePreview() {
+    if (preview != null) {
+      table.setItems(FXCollections.emptyObservableList());
+      preview.close();
+      preview = null;
+    }
+  }
+
+  /**
+   * Settings the previewed rows depend on, the preview is exported as is only if they have not
+   * changed. Additional report types and controllers are not previewed.
+   *
+   * @return {@code null} if the preview cannot be exported as the report
+   */
+  private String getPreviewSettings() {
+    if (config.getSources().size() > 1 || !config.additionalReportTypes.isEmpty()) {
+      return null;
+    }
+    return config.reportType + "|" + config.dateFrom + "|" + config.dateTo + "|"
+        + config.channels + "|" + config.rowFilter + "|" + config.getSources()
+        + "|" + config.dropDuplicates + "|" + config.percentiles;
+  }
+
+  private void setButtonsDisabled(boolean isDisabled) {
+    loadButton.setDisable(isDisabled);
+    exportButton.setDisable(isDisabled || preview == null);
+  }
+
+  private void showAlert(AlertType type, String title, String message) {
+    Alert alert = new Alert(type, message);
+    alert.setTitle(title);
+    alert.setHeaderText(null);
+    alert.showAndWait();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.chart;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LttbTest {
+
+  @Test
+  void keepsEndsAndPeaks() {
+    final double[] x = new double[1000];
+    final double[] y = new double[1000];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = i;
+      y[i] = i == 500 ? 100 : Math.sin(i / 50.0);
+    }
+
+    final int[] indexes = Lttb.downsample(x, y, 50);
+
+    assertEquals(50, indexes.length);
+    assertEquals(0, indexes[0]);
+    assertEquals(999, indexes[49]);
+    for (int i = 1; i < indexes.length; i++) {
+      assertTrue(indexes[i] > indexes[i - 1]);
+    }
+    assertTrue(contains(indexes, 500));
+  }
+
+  @Test
+  void shortSeriesIsNotSampled() {
+    assertArrayEquals(new int[] {0, 1, 2}, Lttb.downsample(new double[3], new double[3], 10));
+  }
+
+  @Test
+  void coarsestSufficientLevelIsChosen() {
+    final FanOutReportBuilder rollups = new FanOutReportBuilder(EnumSet.allOf(ReportType.class));
+    final List<Record> records = new ArrayList<>();
+    final LocalDateTime start = LocalDateTime.of(2020, 3, 1, 0, 0);
+    for (int i = 0; i < 2 * 24 * 3600; i += 10) {
+      Record rec = new Record();
+      rec.datetime = start.plusSeconds(i);
+      rec.values = new float[] {i};
+      records.add(rec);
+    }
+    rollups.consume(records);
+    rollups.flush();
+    final ChartData data = new ChartData(rollups);
+
+    assertEquals(ReportType.MINUTES_5, data.sample(0, data.getStart(), data.getEnd(), 500).level);
+    assertEquals(ReportType.HOURLY,
+        data.sample(0, data.getStart(), data.getEnd(), 40).level);
+    assertEquals(ReportType.STRAIGHT,
+        data.sample(0, start, start.plusMinutes(30), 100).level);
+  }
+
+  private static boolean contains(int[] values, int value) {
+    for (int v : values) {
+      if (v == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
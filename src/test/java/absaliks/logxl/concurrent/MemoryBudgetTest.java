@@ -0,0 +1,83 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class MemoryBudgetTest {
+
+  @Test
+  void filesAreAdmittedInOrderWithinLimit() throws Exception {
+    final MemoryBudget budget = new MemoryBudget(100);
+    try (MemoryBudget.Stream stream = budget.openStream(new Cancellation())) {
+      final CompletableFuture<Void> second = CompletableFuture.runAsync(
+          () -> stream.acquire(1, 60));
+      stream.acquire(0, 60);
+      Thread.sleep(100);
+      assertFalse(second.isDone(), "second file must wait for the memory");
+
+      stream.release(60, 0);
+      second.get(5, TimeUnit.SECONDS);
+      assertEquals(60, budget.getPeak());
+    }
+  }
+
+  @Test
+  void oversizedFileIsAdmittedWhenNothingIsInFlight() {
+    final MemoryBudget budget = new MemoryBudget(100);
+    try (MemoryBudget.Stream stream = budget.openStream(new Cancellation())) {
+      stream.acquire(0, 1000);
+      stream.adjust(1000, 400, 10);
+      assertEquals(1000, budget.getPeak());
+      assertEquals(10, budget.getPeakRows());
+    }
+  }
+
+  @Test
+  void failedFileLetsNextOnesThrough() {
+    final MemoryBudget budget = new MemoryBudget(100);
+    try (MemoryBudget.Stream stream = budget.openStream(new Cancellation())) {
+      stream.skip(0);
+      stream.acquire(1, 10);
+    }
+  }
+
+  @Test
+  void waitingIsCancelled() throws Exception {
+    final MemoryBudget budget = new MemoryBudget(100);
+    final Cancellation cancellation = new Cancellation();
+    try (MemoryBudget.Stream stream = budget.openStream(cancellation)) {
+      stream.acquire(0, 100);
+      final CompletableFuture<Void> waiting = CompletableFuture.runAsync(
+          () -> stream.acquire(1, 10));
+      Thread.sleep(100);
+      cancellation.cancel(false);
+
+      final Exception e = assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof CancellationException, e.toString());
+    }
+  }
+}
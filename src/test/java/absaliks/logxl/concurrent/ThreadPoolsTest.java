@@ -0,0 +1,63 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ThreadPoolsTest {
+
+  @Test
+  void ioExecutorFallsBackToDaemonPlatformThreads() throws Exception {
+    final ExecutorService executor =
+        ThreadPools.newIoExecutor("test-io", 2, "newMissingThreadPerTaskExecutor");
+    try {
+      final Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+
+      assertEquals("test-io-1", thread.getName());
+      assertTrue(thread.isDaemon());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void ioExecutorThreadsDoNotKeepApplicationRunning() throws Exception {
+    final ExecutorService executor = ThreadPools.newIoExecutor("test-io", 2);
+    try {
+      final Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+
+      assertTrue(thread.isDaemon(), "virtual threads are daemon ones too");
+      assertTrue(isVirtual(thread) || thread.getName().startsWith("test-io-"), thread.getName());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+    try {
+      return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+}
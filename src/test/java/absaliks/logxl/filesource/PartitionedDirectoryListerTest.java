@@ -0,0 +1,83 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.filesource;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PartitionedDirectoryListerTest {
+
+  @TempDir
+  File tempDir;
+
+  @BeforeEach
+  void givenArchive() throws IOException {
+    givenFiles("2019.12.31_23_00.csv", "2020.01.15_00_00.csv", "2020.01.15_00_00.csv.bak",
+        "notes.txt",
+        "2019/12/2019.12.30_00_00.csv",
+        "2020/01/2020.01.01_00_00.csv", "2020/01/2020.01.31_12_00.csv",
+        "2020/02/2020.02.01_00_00.csv",
+        "2020/2020.01.20_00_00.csv",
+        "2021/01/2021.01.01_00_00.csv");
+    Files.createDirectories(new File(tempDir, "2020/13").toPath());
+  }
+
+  @Test
+  void onlyPartitionsOfPeriodAreListed() throws IOException {
+    final List<String> names = list(LocalDateTime.of(2020, 1, 1, 0, 0),
+        LocalDateTime.of(2020, 1, 31, 23, 59));
+
+    assertEquals(asList("2020.01.15_00_00.csv", "2020/01/2020.01.01_00_00.csv",
+        "2020/01/2020.01.31_12_00.csv", "2020/2020.01.20_00_00.csv"), names);
+  }
+
+  @Test
+  void everyLogFileIsListedWithoutPeriod() throws IOException {
+    assertEquals(asList("2019.12.31_23_00.csv", "2019/12/2019.12.30_00_00.csv",
+        "2020.01.15_00_00.csv", "2020/01/2020.01.01_00_00.csv", "2020/01/2020.01.31_12_00.csv",
+        "2020/02/2020.02.01_00_00.csv", "2020/2020.01.20_00_00.csv",
+        "2021/01/2021.01.01_00_00.csv"), list(null, null));
+  }
+
+  private List<String> list(LocalDateTime from, LocalDateTime to) throws IOException {
+    final List<String> names =
+        new ArrayList<>(new PartitionedDirectoryLister(tempDir.toPath(), from, to).list());
+    Collections.sort(names);
+    return names;
+  }
+
+  private void givenFiles(String... paths) throws IOException {
+    for (String path : paths) {
+      final File file = new File(tempDir, path);
+      Files.createDirectories(file.getParentFile().toPath());
+      Files.createFile(file.toPath());
+    }
+  }
+}
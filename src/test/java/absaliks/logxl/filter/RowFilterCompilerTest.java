@@ -0,0 +1,82 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.filter;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import absaliks.logxl.filter.RowFilter.Row;
+import org.junit.jupiter.api.Test;
+
+class RowFilterCompilerTest {
+
+  @Test
+  void comparisonsAndBooleanLogic() {
+    final Row row = givenRow(true, false, 1.5f, -2, 10);
+
+    assertTrue(test("ch1 > 1", row));
+    assertTrue(test("ch1 >= 1,5", row));
+    assertFalse(test("ch1 < 1.5", row));
+    assertTrue(test("-3 < ch2", row));
+    assertTrue(test("ch3 == 10 && cable", row));
+    assertFalse(test("ch3 != 10 || heater", row));
+    assertTrue(test("!(heater || ch2 > 0) && ch1 <= ch3", row));
+    assertTrue(test("cable&&!heater", row));
+  }
+
+  @Test
+  void blankExpressionAcceptsAll() {
+    assertSame(RowFilter.ACCEPT_ALL, RowFilterCompiler.compile("  ", 3));
+    assertSame(RowFilter.ACCEPT_ALL, RowFilterCompiler.compile(null, 3));
+  }
+
+  @Test
+  void malformedExpressionIsRejected() {
+    assertThrows(IllegalArgumentException.class, () -> RowFilterCompiler.compile("ch4 > 1", 3));
+    assertThrows(IllegalArgumentException.class, () -> RowFilterCompiler.compile("ch1 >", 3));
+    assertThrows(IllegalArgumentException.class, () -> RowFilterCompiler.compile("(cable", 3));
+    assertThrows(IllegalArgumentException.class, () -> RowFilterCompiler.compile("cable x", 3));
+    assertThrows(IllegalArgumentException.class, () -> RowFilterCompiler.compile("ch1 = 2", 3));
+  }
+
+  private static boolean test(String expression, Row row) {
+    return RowFilterCompiler.compile(expression, 3).test(row);
+  }
+
+  private static Row givenRow(boolean cable, boolean heater, float... values) {
+    return new Row() {
+      @Override
+      public float getValue(int channel) {
+        return values[channel];
+      }
+
+      @Override
+      public boolean isHeatingCableOn() {
+        return cable;
+      }
+
+      @Override
+      public boolean isHeatingElementOn() {
+        return heater;
+      }
+    };
+  }
+}
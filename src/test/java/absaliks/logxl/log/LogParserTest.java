@@ -18,26 +18,35 @@
 
 package absaliks.logxl.log;
 
-import static absaliks.logxl.log.LogFileProperties.COLUMNS_COUNT;
 import static absaliks.logxl.log.LogFileProperties.COLUMNS_SEPARATOR;
 import static absaliks.logxl.log.LogParser.FORMATTER;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import absaliks.logxl.concurrent.Cancellation;
 import absaliks.logxl.config.Config;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Test;
 
 class LogParserTest {
 
+  private static final int COLUMNS_COUNT = LogSchemas.getInstance().getDefault().getColumnsCount();
+
   private static final String DATATABLE_HEADER = "Timestamp;";
   private static final List<String> LINES = asList(
       DATATABLE_HEADER,
@@ -107,6 +116,73 @@ class LogParserTest {
     assertEquals(singletonList(expectedRecord), parse(csvBuilder.toString()));
   }
 
+  @Test
+  void parseLinesSpanningReadBuffers() throws IOException {
+    final List<String> lines = new ArrayList<>(LINES);
+    lines.addAll(Collections.nCopies(5_000, LINES.get(2)));
+    final List<Record> records = parse(String.join("\r\n", lines));
+
+    assertEquals(5_002, records.size());
+    assertEquals(createExpectedRecordList().get(1), records.get(records.size() - 1));
+  }
+
+  @Test
+  void filteredOutLinesAreSkipped() throws IOException {
+    final Config config = givenConfig();
+    config.rowFilter = "ch1 < 0 && cable";
+    final List<Record> records =
+        new LogParser(new ByteArrayInputStream(GIVEN_CSV.getBytes()), config).parse();
+
+    assertEquals(singletonList(createExpectedRecordList().get(1)), records);
+  }
+
+  @Test
+  void onlySelectedChannelsAreParsed() throws IOException {
+    final Config config = givenConfig();
+    config.channels = ChannelSelection.parse("30, 1, heater, 9");
+    final List<Record> records =
+        new LogParser(new ByteArrayInputStream(GIVEN_CSV.getBytes()), config).parse();
+
+    final Record first = records.get(0);
+    assertArrayEquals(new float[]{3.5f, 44, -11}, first.values);
+    assertFalse(first.isHeatingCableOn);
+    assertTrue(first.isHeatingElementOn);
+    assertEquals("1,9,30,heater", config.channels.toString());
+  }
+
+  @Test
+  void malformedLinesAreSummarizedInSilentMode() throws IOException {
+    final Config config = givenConfig();
+    config.isSilent = true;
+    final String csv = String.join(System.lineSeparator(), LINES.get(0), LINES.get(1),
+        LINES.get(2).replace(";-16;", ";-1x6;"),
+        LINES.get(2).replace("2018.06.02_15:02:07", "2018.13.02_15:02:07"),
+        "2018.06.02_15:02:08;1;2",
+        LINES.get(2));
+    final LogParser parser = new LogParser(new ByteArrayInputStream(csv.getBytes()), config);
+    final List<Record> records = parser.parse();
+
+    assertEquals(createExpectedRecordList(), records);
+    final ParseErrors errors = parser.getErrors();
+    assertEquals(3, errors.getCount());
+    assertEquals(1, errors.getCount(ParseErrors.Kind.BAD_NUMBER));
+    assertEquals(1, errors.getCount(ParseErrors.Kind.BAD_TIMESTAMP));
+    assertEquals(1, errors.getCount(ParseErrors.Kind.NOT_ENOUGH_COLUMNS));
+    assertEquals(asList(3, 4, 5), errors.getLineNumbers());
+  }
+
+  @Test
+  void cancelledParserStops() {
+    final String csv = String.join(System.lineSeparator(),
+        Collections.nCopies(10_000, LINES.get(1)));
+    final LogParser parser = new LogParser(new ByteArrayInputStream(csv.getBytes()), givenConfig());
+    final Cancellation cancellation = new Cancellation();
+    cancellation.cancel(false);
+    parser.setCancellation(cancellation);
+
+    assertThrows(CancellationException.class, parser::parse);
+  }
+
   private List<Record> parse(String givenCsv) throws IOException {
     InputStream stream = new ByteArrayInputStream(givenCsv.getBytes());
     return new LogParser(stream, givenConfig()).parse();
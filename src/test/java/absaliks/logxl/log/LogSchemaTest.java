@@ -0,0 +1,126 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import absaliks.logxl.config.Config;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogSchemaTest {
+
+  private static final String DATA_LINE = "2020.05.04_10:00:00;1;2;3;4,5;5;1";
+
+  private final LogSchema defaultSchema = LogSchemas.getInstance().getDefault();
+
+  @Test
+  void schemaIsSelectedByHeader() throws IOException {
+    final LogSchema shuffled = givenSchema("Timestamp;Flow", "value,2,1", "value,1,3");
+    final LogSchema straight = givenSchema(null, "value,1,2", "value,2,2");
+    final LogSchemas schemas =
+        new LogSchemas(Arrays.asList(defaultSchema, straight, shuffled));
+
+    final LogParser parser = givenParser("Timestamp;Flow;Pressure;x;y;z;Heater", schemas);
+    final List<Record> records = parser.parse();
+
+    assertSame(shuffled, parser.getSchema());
+    assertArrayEquals(new float[] {2, 1}, Arrays.copyOf(records.get(0).values, 2));
+    assertTrue(Float.isNaN(records.get(0).values[2]));
+    assertTrue(records.get(0).isHeatingCableOn);
+    assertEquals(3, schemas.getDecimalPlaces(0));
+    assertEquals(2, schemas.getDecimalPlaces(1));
+  }
+
+  @Test
+  void schemaIsSelectedByDataColumnsWithoutHeader() throws IOException {
+    final LogSchema straight = givenSchema("Timestamp;Pressure", "value,1,2", "value,2,2");
+    final LogSchemas schemas = new LogSchemas(Arrays.asList(defaultSchema, straight));
+
+    final LogParser parser = givenParser(null, schemas);
+    final List<Record> records = parser.parse();
+
+    assertSame(straight, parser.getSchema());
+    assertArrayEquals(new float[] {1, 2}, Arrays.copyOf(records.get(0).values, 2));
+  }
+
+  @Test
+  void inconsistentDescriptorIsRejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> givenSchema(null, "value,1,2", "value,1,2"));
+    assertThrows(IllegalArgumentException.class,
+        () -> givenSchema(null, "value,32,2", "value,1,2"));
+    assertThrows(IllegalArgumentException.class,
+        () -> givenSchema(null, "number,1,2", "value,2,2"));
+  }
+
+  @Test
+  void editedDescriptorChangesFingerprint(@TempDir File directory) throws IOException {
+    final File descriptor = new File(directory, "custom.properties");
+    Files.write(descriptor.toPath(),
+        "columns=2\ncolumn.0=timestamp\ncolumn.1=value,1,2\n".getBytes(StandardCharsets.UTF_8));
+    final String before = LogSchemas.load(directory).getFingerprint();
+    assertEquals(before, LogSchemas.load(directory).getFingerprint());
+
+    Files.write(descriptor.toPath(),
+        "columns=2\ncolumn.0=timestamp\ncolumn.1=value,1,3\n".getBytes(StandardCharsets.UTF_8));
+
+    assertNotEquals(before, LogSchemas.load(directory).getFingerprint());
+  }
+
+  /**
+   * Seven columns: the timestamp, two channels, three skipped ones and the heating cable.
+   */
+  private LogSchema givenSchema(String header, String first, String second) {
+    final Properties properties = new Properties();
+    properties.setProperty("columns", "7");
+    if (header != null) {
+      properties.setProperty("header", header);
+    }
+    properties.setProperty("column.0", "timestamp");
+    properties.setProperty("column.1", first);
+    properties.setProperty("column.2", second);
+    properties.setProperty("column.6", "heatingCable");
+    return LogSchema.parse(header != null ? "with-header" : "no-header", properties);
+  }
+
+  private LogParser givenParser(String header, LogSchemas schemas) {
+    final String csv = header != null ? header + "\n" + DATA_LINE : DATA_LINE;
+    final Config config = new Config();
+    config.dateFrom = LocalDateTime.MIN;
+    config.dateTo = LocalDateTime.MAX;
+    final LogParser parser = new LogParser(new ByteArrayInputStream(csv.getBytes()), config);
+    parser.setSchemas(schemas);
+    return parser;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import absaliks.logxl.config.Config;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogTailTest {
+
+  private static final String HEADER = "Timestamp;\n";
+  private static final String LINE_1 =
+      "2020.02.14_12:05:15;1;2;3;4;5;6;7;8;9;10;11;12;13;14;15;16;17;18;19;20;21;22;23;24;25;26;27;28;29;30;31;32;0;1\n";
+  private static final String LINE_2 =
+      "2020.02.14_12:05:16;1;2;3;4;5;6;7;8;9;10;11;12;13;14;15;16;17;18;19;20;21;22;23;24;25;26;27;28;29;30;31;32;1;0\n";
+
+  @TempDir
+  File tempDir;
+
+  @Test
+  void readsOnlyAppendedCompleteLines() throws IOException {
+    final File file = new File(tempDir, "2020.02.14_12_00.csv");
+    final LogTail tail = new LogTail(givenConfig());
+
+    append(file, HEADER + LINE_1 + LINE_2.substring(0, 30));
+    List<Record> records = tail.readAppended(file.getName(), file);
+    assertEquals(1, records.size());
+    assertEquals(LocalDateTime.of(2020, 2, 14, 12, 5, 15), records.get(0).datetime);
+
+    assertTrue(tail.readAppended(file.getName(), file).isEmpty());
+
+    append(file, LINE_2.substring(30));
+    records = tail.readAppended(file.getName(), file);
+    assertEquals(1, records.size());
+    assertEquals(LocalDateTime.of(2020, 2, 14, 12, 5, 16), records.get(0).datetime);
+  }
+
+  private void append(File file, String text) throws IOException {
+    try (FileOutputStream stream = new FileOutputStream(file, true)) {
+      stream.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  private Config givenConfig() {
+    val config = new Config();
+    config.dateFrom = LocalDateTime.MIN;
+    config.dateTo = LocalDateTime.MAX;
+    return config;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class RecordMergerTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2020, 3, 1, 12, 0);
+
+  @Test
+  void overlappingFilesAreMergedInTimeOrder() {
+    final List<Record> merged = new ArrayList<>();
+    final RecordMerger merger = new RecordMerger(true, merged::addAll);
+    merger.add(givenRecords(0, 1, 2, 4, 6));
+    merger.add(givenRecords(2, 3, 5));
+    merger.add(givenRecords(6, 7));
+    merger.add(givenRecords());
+    merger.add(givenRecords(9));
+    merger.flush();
+
+    assertEquals(asList(0, 1, 2, 3, 4, 5, 6, 7, 9), seconds(merged));
+    assertEquals(5f, merged.get(2).values[0]); // taken from the first file
+  }
+
+  @Test
+  void duplicatesAreKeptWhenRequested() {
+    final List<Record> merged = new ArrayList<>();
+    final RecordMerger merger = new RecordMerger(false, merged::addAll);
+    merger.add(givenRecords(0, 1, 2));
+    merger.add(givenRecords(1, 2));
+    merger.flush();
+
+    assertEquals(asList(0, 1, 1, 2, 2), seconds(merged));
+  }
+
+  private static List<Record> givenRecords(int... seconds) {
+    final List<Record> records = new ArrayList<>();
+    for (int second : seconds) {
+      Record rec = new Record();
+      rec.datetime = START.plusSeconds(second);
+      rec.values = new float[] {seconds.length};
+      records.add(rec);
+    }
+    return records;
+  }
+
+  private static List<Integer> seconds(List<Record> records) {
+    return records.stream().map(rec -> rec.datetime.getSecond()).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class StructuralIndexTest {
+
+  private static final byte[] ALPHABET = "0123456789,-;\n\rÿ".getBytes(
+      java.nio.charset.StandardCharsets.ISO_8859_1);
+
+  @Test
+  void findsSameDelimitersAsScalarScan() {
+    final Random random = new Random(42);
+    final StructuralIndex index = new StructuralIndex();
+    for (int attempt = 0; attempt < 100; attempt++) {
+      final byte[] buffer = new byte[random.nextInt(3000)];
+      for (int i = 0; i < buffer.length; i++) {
+        buffer[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+      }
+      final int from = buffer.length == 0 ? 0 : random.nextInt(buffer.length);
+      final int to = from + random.nextInt(buffer.length - from + 1);
+
+      index.scan(buffer, from, to);
+
+      final List<Integer> actual = new ArrayList<>();
+      for (int i = 0; i < index.size(); i++) {
+        actual.add(index.get(i));
+      }
+      assertEquals(scalarScan(buffer, from, to), actual);
+    }
+  }
+
+  @Test
+  void zeroBytes() {
+    assertEquals(0x8000_0000_0080_0080L, StructuralIndex.zeroBytes(0x0001_FFFF_0100_0100L));
+    assertEquals(0, StructuralIndex.zeroBytes(0x0101_0101_8080_FFFFL));
+  }
+
+  private static List<Integer> scalarScan(byte[] buffer, int from, int to) {
+    final List<Integer> positions = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      if (buffer[i] == ';' || buffer[i] == '\n') {
+        positions.add(i);
+      }
+    }
+    return positions;
+  }
+}
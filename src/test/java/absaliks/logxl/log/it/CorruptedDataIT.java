@@ -20,10 +20,12 @@ package absaliks.logxl.log.it;
 
 import static absaliks.logxl.log.TestUtils.getResourceAsStream;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import absaliks.logxl.config.Config;
 import absaliks.logxl.log.LogParser;
+import absaliks.logxl.log.ParseErrors.Kind;
 import absaliks.logxl.log.Record;
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -43,10 +45,15 @@ public class CorruptedDataIT {
   @Test
   void corruptedTable_silent_ignoresParsingErrors() throws IOException {
     try (val stream = getResourceAsStream(CORRUPTED_TABLE_LOGFILE)) {
-      List<Record> records = new LogParser(stream, givenConfig(true)).parse();
+      final LogParser parser = new LogParser(stream, givenConfig(true));
+      List<Record> records = parser.parse();
       assertEquals(2, records.size());
       assertEquals(LocalDateTime.of(2018, 12, 13, 18, 46, 56), records.get(0).datetime);
       assertEquals(LocalDateTime.of(2018, 12, 13, 18, 46, 57), records.get(1).datetime);
+      assertFalse(parser.getErrors().isEmpty());
+      assertEquals(parser.getErrors().getCount(), parser.getErrors().getCount(Kind.BAD_TIMESTAMP)
+          + parser.getErrors().getCount(Kind.BAD_NUMBER)
+          + parser.getErrors().getCount(Kind.NOT_ENOUGH_COLUMNS));
     }
   }
 
@@ -0,0 +1,83 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.preview;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PreviewTableTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2020, 3, 1, 0, 0);
+
+  @Test
+  void averagedRowsSurviveCompaction() {
+    final FanOutReportBuilder builder = givenBuilder(ReportType.MINUTELY, 3600 * 10);
+    final List<Record> expected = new ArrayList<>(builder.getRecords(ReportType.MINUTELY));
+
+    try (PreviewTable preview = new PreviewTable(builder, ReportType.MINUTELY)) {
+      assertEquals(600, preview.size());
+      assertEquals(expected, preview);
+      assertEquals(expected.get(PreviewTable.PAGE_SIZE + 1),
+          preview.get(PreviewTable.PAGE_SIZE + 1));
+    }
+  }
+
+  @Test
+  void straightRowsAreReadFromTheBuilder() {
+    final List<Record> expected = givenRecords(PreviewTable.PAGE_SIZE * 3 + 5);
+    final FanOutReportBuilder builder = new FanOutReportBuilder(EnumSet.of(ReportType.STRAIGHT));
+    builder.consume(expected);
+    builder.flush();
+
+    try (PreviewTable preview = new PreviewTable(builder, ReportType.STRAIGHT)) {
+      assertEquals(expected.size(), preview.size());
+      for (int i = preview.size() - 1; i >= 0; i--) {
+        assertEquals(expected.get(i), preview.get(i));
+      }
+      assertThrows(IndexOutOfBoundsException.class, () -> preview.get(preview.size()));
+    }
+  }
+
+  private FanOutReportBuilder givenBuilder(ReportType reportType, int count) {
+    final FanOutReportBuilder builder = new FanOutReportBuilder(EnumSet.of(reportType));
+    builder.consume(givenRecords(count));
+    builder.flush();
+    return builder;
+  }
+
+  private List<Record> givenRecords(int count) {
+    final List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Record rec = new Record();
+      rec.datetime = START.plusSeconds(i);
+      rec.values = new float[] {i % 60, i % 7 * 0.5f};
+      rec.isHeatingElementOn = i % 3 == 0;
+      records.add(rec);
+    }
+    return records;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import absaliks.logxl.log.Record;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class AlignedRecordTest {
+
+  @Test
+  void alignsRecordsByTimestamp() {
+    final Record a1 = givenRecord(1), a3 = givenRecord(3);
+    final Record b2 = givenRecord(2), b3 = givenRecord(3);
+
+    final List<AlignedRecord> aligned = AlignedRecord.align(asList(asList(a1, a3), asList(b2, b3)));
+
+    assertEquals(3, aligned.size());
+    assertSame(a1, aligned.get(0).records[0]);
+    assertNull(aligned.get(0).records[1]);
+    assertNull(aligned.get(1).records[0]);
+    assertSame(b2, aligned.get(1).records[1]);
+    assertSame(a3, aligned.get(2).records[0]);
+    assertSame(b3, aligned.get(2).records[1]);
+  }
+
+  private Record givenRecord(int minute) {
+    Record rec = new Record();
+    rec.datetime = LocalDateTime.of(2020, 5, 1, 10, minute);
+    rec.values = new float[] {minute};
+    return rec;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportCacheTest {
+
+  @TempDir
+  File tempDir;
+
+  @Test
+  void storedReportsAreRestoredByFingerprint() throws IOException {
+    final ReportCache cache = new ReportCache(new File(tempDir, "cache"), 5);
+    final List<File> outputs = asList(givenFile("report.xlsx", "hourly"),
+        givenFile("report_daily.xlsx", "daily"));
+    cache.store("hourly,daily|2020-01-01", outputs);
+    outputs.forEach(File::delete);
+
+    assertFalse(cache.restore("hourly,daily|2020-01-02", outputs));
+    assertTrue(cache.restore("hourly,daily|2020-01-01", outputs));
+    assertEquals("hourly", read(outputs.get(0)));
+    assertEquals("daily", read(outputs.get(1)));
+  }
+
+  @Test
+  void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+    final File cacheDirectory = new File(tempDir, "cache");
+    final ReportCache cache = new ReportCache(cacheDirectory, 2);
+    final List<File> outputs = asList(givenFile("report.csv", "1"));
+    cache.store("first", outputs);
+    cache.store("second", outputs);
+    for (File entry : cacheDirectory.listFiles()) {
+      assertTrue(entry.setLastModified(entry.lastModified() - 60_000));
+    }
+    assertTrue(cache.restore("first", outputs));
+    cache.store("third", outputs);
+
+    assertEquals(2, cacheDirectory.listFiles().length);
+    assertTrue(cache.restore("first", outputs));
+    assertFalse(cache.restore("second", outputs));
+    assertTrue(cache.restore("third", outputs));
+  }
+
+  private File givenFile(String name, String content) throws IOException {
+    final File file = new File(tempDir, name);
+    Files.write(file.toPath(), content.getBytes(UTF_8));
+    return file;
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), UTF_8);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.report;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import absaliks.logxl.config.Config;
+import absaliks.logxl.log.Record;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportExporterTest {
+
+  @TempDir
+  File tempDir;
+
+  /**
+   * A log schema with the first two channels only leaves NaN in the others.
+   */
+  @Test
+  void channelMissingInSchemaIsNotAvailable() throws IOException {
+    final Record rec = new Record();
+    rec.datetime = LocalDateTime.of(2020, 3, 1, 0, 0);
+    rec.values = new float[31];
+    Arrays.fill(rec.values, Float.NaN);
+    rec.values[0] = 1.5f;
+    rec.values[1] = 2.5f;
+    final File file = new File(tempDir, "report.xlsx");
+
+    new ReportExporter(new Config(), ReportType.MINUTELY, file, false, Collections.emptyList())
+        .export(Collections.singletonList(rec));
+
+    try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(file))) {
+      final Row row = workbook.getSheetAt(0).getRow(8);
+      assertEquals(1.5, row.getCell(1).getNumericCellValue());
+      assertEquals(2.5, row.getCell(2).getNumericCellValue());
+      assertEquals(CellType.ERROR, row.getCell(3).getCellType());
+      assertEquals(FormulaError.NA.getCode(), row.getCell(3).getErrorCellValue());
+    }
+  }
+
+  /**
+   * The sketch of a channel missing in every line of the bucket is empty.
+   */
+  @Test
+  void percentileOfEmptySketchIsNotAvailable() throws IOException {
+    final Record rec = new Record();
+    rec.datetime = LocalDateTime.of(2020, 3, 1, 0, 0);
+    rec.values = new float[31];
+    rec.percentiles = new float[31];
+    Arrays.fill(rec.percentiles, Float.NaN);
+    rec.percentiles[0] = 1.5f;
+    final File file = new File(tempDir, "report.xlsx");
+
+    new ReportExporter(new Config(), ReportType.MINUTELY, file, false,
+        Collections.singletonList(0.5)).export(Collections.singletonList(rec));
+
+    try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(file))) {
+      final Row row = workbook.getSheet("Процентили").getRow(1);
+      assertEquals(1.5, row.getCell(1).getNumericCellValue());
+      assertEquals(CellType.ERROR, row.getCell(2).getCellType());
+      assertEquals(FormulaError.NA.getCode(), row.getCell(2).getErrorCellValue());
+    }
+  }
+}
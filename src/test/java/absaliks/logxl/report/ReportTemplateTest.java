@@ -0,0 +1,44 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.report;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class ReportTemplateTest {
+
+  @Test
+  void everyExportTakesWorkbookOfItsOwn() throws IOException {
+    ReportTemplate.warmUp();
+    final ReportTemplate first = ReportTemplate.take();
+    final ReportTemplate second = ReportTemplate.take();
+
+    assertNotSame(first.workbook, second.workbook);
+    assertEquals(first.workbook.getNumCellStyles(), second.workbook.getNumCellStyles());
+    assertEquals(second.workbook.getCellStyleAt(second.borderedCellStyle.getIndex()),
+        second.borderedCellStyle);
+    assertSame(first.getDateStyle(ReportType.HOURLY), first.getDateStyle(ReportType.MINUTELY));
+    assertNotSame(first.getDateStyle(ReportType.HOURLY), first.getDateStyle(ReportType.DAILY));
+    first.workbook.close();
+    second.workbook.close();
+  }
+}
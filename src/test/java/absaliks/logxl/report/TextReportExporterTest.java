@@ -0,0 +1,103 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import absaliks.logxl.log.ChannelSelection;
+import absaliks.logxl.log.Record;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TextReportExporterTest {
+
+  @TempDir
+  File tempDir;
+
+  @Test
+  void appendRounded() {
+    assertEquals("24.98", rounded(24.98f, 2));
+    assertEquals("24.98", rounded(24.979f, 2));
+    assertEquals("-3", rounded(-2.9996f, 3));
+    assertEquals("0.005", rounded(0.005f, 3));
+    assertEquals("1.5", rounded(1.5f, 2));
+    assertEquals("0", rounded(-0.001f, 2));
+    assertEquals("10", rounded(10, 1));
+  }
+
+  @Test
+  void rowsKeepOrderAcrossChunks() throws IOException {
+    final List<Record> records = new ArrayList<>();
+    final LocalDateTime start = LocalDateTime.of(2020, 3, 1, 0, 0);
+    for (int i = 0; i < 10_000; i++) {
+      Record rec = new Record();
+      rec.datetime = start.plusSeconds(i);
+      rec.values = new float[31];
+      rec.values[0] = i;
+      rec.isHeatingCableOn = true;
+      records.add(rec);
+    }
+    final File file = new File(tempDir, "report.tsv.gz");
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      new TextReportExporter(ExportFormat.TSV, true, ChannelSelection.ALL, false,
+          Collections.emptyList(), ReportType.STRAIGHT, file, executor)
+          .export(records);
+    } finally {
+      executor.shutdown();
+    }
+
+    final List<String> lines;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+      lines = reader.lines().collect(Collectors.toList());
+    }
+    assertEquals(10_001, lines.size());
+    assertEquals(Arrays.asList("Дата/Время", "РТ001, МПа", "ТТ001, °C"),
+        Arrays.asList(lines.get(0).split("\t")).subList(0, 3));
+    for (int i = 0; i < records.size(); i++) {
+      String[] fields = lines.get(i + 1).split("\t");
+      assertEquals(Integer.toString(i), fields[1]);
+      assertEquals(34, fields.length);
+    }
+    assertEquals("01.03.2020 00:00:01\t1", lines.get(2).substring(0, 21));
+    assertEquals("ВКЛ\tВЫКЛ", lines.get(1).substring(lines.get(1).length() - 8));
+  }
+
+  private static String rounded(float value, int decimalPlaces) {
+    StringBuilder line = new StringBuilder();
+    TextReportExporter.appendRounded(value, decimalPlaces, line);
+    return line.toString();
+  }
+}
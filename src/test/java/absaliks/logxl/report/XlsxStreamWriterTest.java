@@ -0,0 +1,74 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+class XlsxStreamWriterTest {
+
+  @Test
+  void streamsRowsAfterTemplateHeader() throws IOException {
+    final ByteArrayOutputStream template = new ByteArrayOutputStream();
+    final String partName;
+    final short style;
+    try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+      workbook.createSheet().createRow(0).createCell(0).setCellValue("Заголовок");
+      partName = workbook.getSheetAt(0).getPackagePart().getPartName().getName().substring(1);
+      CellStyle cellStyle = workbook.createCellStyle();
+      cellStyle.setDataFormat(workbook.createDataFormat().getFormat("0.##"));
+      style = cellStyle.getIndex();
+      workbook.write(template);
+    }
+    final LocalDateTime datetime = LocalDateTime.of(2020, 3, 1, 12, 30);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    XlsxStreamWriter.write(template.toByteArray(), singletonMap(partName, rows -> {
+      rows.startRow(1);
+      rows.addDateCell(0, 0, datetime);
+      rows.addNumberCell(1, style, 24.98f);
+      rows.addStringCell(3, 0, "ВКЛ & <ВЫКЛ>");
+      rows.endRow();
+    }), out);
+
+    try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+      Sheet sheet = workbook.getSheetAt(0);
+      assertEquals("Заголовок", sheet.getRow(0).getCell(0).getStringCellValue());
+      Row row = sheet.getRow(1);
+      assertEquals(DateUtil.getExcelDate(java.sql.Timestamp.valueOf(datetime)),
+          row.getCell(0).getNumericCellValue(), 1e-9);
+      assertEquals(24.98, row.getCell(1).getNumericCellValue());
+      assertEquals("0.##", row.getCell(1).getCellStyle().getDataFormatString());
+      assertNull(row.getCell(2));
+      assertEquals("ВКЛ & <ВЫКЛ>", row.getCell(3).getStringCellValue());
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report.builder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import absaliks.logxl.log.DataQuality;
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FanOutReportBuilderTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2020, 3, 1, 23, 58, 30);
+
+  @Test
+  void cascadedAveragesMatchDirectOnes() {
+    final List<Record> records = givenRecords(7200);
+    final EnumSet<ReportType> types = EnumSet.complementOf(EnumSet.of(ReportType.STRAIGHT));
+    final FanOutReportBuilder fanOut = new FanOutReportBuilder(types);
+    fanOut.consume(records);
+    fanOut.flush();
+
+    for (ReportType type : types) {
+      final ReportBuilder direct = ReportBuilder.create(type);
+      direct.consume(records);
+      direct.flush();
+      assertEquals(direct.getRecords(), fanOut.getRecords(type), type.name());
+    }
+  }
+
+  @Test
+  void straightReportReceivesRawRecords() {
+    final List<Record> records = givenRecords(100);
+    final FanOutReportBuilder fanOut =
+        new FanOutReportBuilder(EnumSet.of(ReportType.STRAIGHT, ReportType.HOURLY));
+    fanOut.consume(records);
+    fanOut.flush();
+
+    assertEquals(records, fanOut.getRecords(ReportType.STRAIGHT));
+    assertEquals(2, fanOut.getRecords(ReportType.HOURLY).size());
+  }
+
+  @Test
+  void bucketsAreAlignedToMidnight() {
+    final FanOutReportBuilder fanOut =
+        new FanOutReportBuilder(EnumSet.of(ReportType.MINUTES_15, ReportType.SHIFT_8H));
+    fanOut.consume(givenRecords(7200));
+    fanOut.flush();
+
+    final List<Record> quarters = fanOut.getRecords(ReportType.MINUTES_15);
+    assertEquals(LocalDateTime.of(2020, 3, 1, 23, 45), quarters.get(0).datetime);
+    assertEquals(LocalDateTime.of(2020, 3, 2, 0, 0), quarters.get(1).datetime);
+    assertEquals(LocalDateTime.of(2020, 3, 2, 1, 45), quarters.get(quarters.size() - 1).datetime);
+    final List<Record> shifts = fanOut.getRecords(ReportType.SHIFT_8H);
+    assertEquals(LocalDateTime.of(2020, 3, 1, 16, 0), shifts.get(0).datetime);
+    assertEquals(LocalDateTime.of(2020, 3, 2, 0, 0), shifts.get(1).datetime);
+  }
+
+  @Test
+  void qualityIsCountedPerBucketAndCascaded() {
+    final List<Record> records = new ArrayList<>();
+    for (int second : new int[] {30, 31, 31, 33, 32, 90}) {
+      Record rec = new Record();
+      rec.datetime = START.plusSeconds(second);
+      rec.values = new float[] {second};
+      records.add(rec);
+    }
+    final FanOutReportBuilder fanOut =
+        new FanOutReportBuilder(EnumSet.of(ReportType.MINUTELY, ReportType.HOURLY));
+    fanOut.consume(records);
+    fanOut.onDroppedDuplicate();
+    fanOut.flush();
+
+    final DataQuality first = fanOut.getRecords(ReportType.MINUTELY).get(0).quality;
+    assertEquals(5, first.samples);
+    assertEquals(56, first.missingSeconds); // 32 comes out of order but is there
+    assertEquals(1, first.duplicates);
+    assertEquals(1, first.outOfOrder);
+    final DataQuality second = fanOut.getRecords(ReportType.MINUTELY).get(1).quality;
+    assertEquals(1, second.samples);
+    assertEquals(1, second.duplicates);
+    final DataQuality hour = fanOut.getRecords(ReportType.HOURLY).get(0).quality;
+    assertEquals(5, hour.samples);
+    assertEquals(3600 - 4, hour.missingSeconds);
+    assertEquals(1, hour.duplicates);
+    assertEquals(1, hour.outOfOrder);
+    assertEquals(1, fanOut.getRecords(ReportType.HOURLY).get(1).quality.duplicates);
+  }
+
+  @Test
+  void cascadedPercentilesMatchDirectOnes() {
+    final List<Record> records = givenRecords(7200);
+    final List<Double> percentiles = Arrays.asList(50.0, 95.0);
+    final FanOutReportBuilder fanOut = new FanOutReportBuilder(
+        EnumSet.of(ReportType.MINUTELY, ReportType.HOURLY), percentiles);
+    fanOut.consume(records);
+    fanOut.flush();
+
+    final AvgReportBuilder direct = new AvgReportBuilder(ReportType.HOURLY, new double[] {50, 95});
+    direct.consume(records);
+    direct.flush();
+    final List<Record> hours = fanOut.getRecords(ReportType.HOURLY);
+    assertEquals(direct.getRecords(), hours);
+    final Record minute = fanOut.getRecords(ReportType.MINUTELY).get(1); // values 0..59
+    assertEquals(4, minute.percentiles.length);
+    assertEquals(29, minute.percentiles[0], 29 * QuantileSketch.RELATIVE_ACCURACY); // median
+    assertEquals(56, minute.percentiles[1], 56 * QuantileSketch.RELATIVE_ACCURACY); // p95
+  }
+
+  private List<Record> givenRecords(int count) {
+    final List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Record rec = new Record();
+      rec.datetime = START.plusSeconds(i);
+      rec.values = new float[] {i % 60, i % 7 * 0.5f};
+      rec.isHeatingCableOn = i % 1000 == 0;
+      records.add(rec);
+    }
+    return records;
+  }
+}
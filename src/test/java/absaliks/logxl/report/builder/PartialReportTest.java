@@ -0,0 +1,117 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.report.builder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PartialReportTest {
+
+  private static final EnumSet<ReportType> TYPES =
+      EnumSet.complementOf(EnumSet.of(ReportType.STRAIGHT));
+
+  @Test
+  void mergedPartsMatchSingleRun() throws Exception {
+    final List<Record> records = givenRecords(20_000);
+    final FanOutReportBuilder whole = new FanOutReportBuilder(TYPES);
+    whole.consume(records);
+    whole.flush();
+
+    // the borders cut buckets of every type
+    final PartialReport first = buildPart(records.subList(0, 7_777));
+    final PartialReport second = buildPart(records.subList(7_777, 12_345));
+    final PartialReport third = roundTrip(buildPart(records.subList(12_345, records.size())));
+    third.merge(first);
+    third.merge(second);
+
+    for (ReportType type : TYPES) {
+      assertEquals(whole.getRecords(type), third.getRecords(type), type.name());
+    }
+  }
+
+  /**
+   * Duplicates are dropped within a part only: a record of the same second at the border of two
+   * parts, e.g. from files overlapping after a controller restart, is counted by both.
+   */
+  @Test
+  void duplicateAtBorderIsCountedInBothParts() {
+    final List<Record> records = givenRecords(100);
+    final List<Record> overlapping = new ArrayList<>(records.subList(50, records.size()));
+    overlapping.add(0, records.get(49));
+
+    final PartialReport first = buildPart(records.subList(0, 50));
+    first.merge(buildPart(overlapping));
+
+    final Record minute = first.getRecords(ReportType.MINUTELY).get(2);
+    assertEquals(LocalDateTime.of(2020, 3, 2, 0, 0), minute.datetime);
+    assertEquals(21, minute.quality.samples); // 20 records of the minute and the duplicate
+    assertEquals(0, minute.quality.duplicates);
+  }
+
+  @Test
+  void straightReportIsNotBuiltInParts() {
+    assertThrows(IllegalArgumentException.class,
+        () -> FanOutReportBuilder.partial(EnumSet.of(ReportType.STRAIGHT, ReportType.HOURLY)));
+  }
+
+  private PartialReport buildPart(List<Record> records) {
+    final FanOutReportBuilder builder = FanOutReportBuilder.partial(TYPES);
+    builder.consume(records);
+    builder.flush();
+    return builder.toPartialReport();
+  }
+
+  private PartialReport roundTrip(PartialReport report)
+      throws IOException, ClassNotFoundException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(report);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (PartialReport) in.readObject();
+    }
+  }
+
+  private List<Record> givenRecords(int count) {
+    final LocalDateTime start = LocalDateTime.of(2020, 3, 1, 23, 58, 30);
+    final List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Record rec = new Record();
+      rec.datetime = start.plusSeconds(i * 3);
+      rec.values = new float[] {i % 60, i % 7 * 0.5f};
+      rec.isHeatingElementOn = i % 5000 == 0;
+      records.add(rec);
+    }
+    return records;
+  }
+}
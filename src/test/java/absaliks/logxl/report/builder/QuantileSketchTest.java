@@ -0,0 +1,122 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.report.builder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchTest {
+
+  private static final double[] QUANTILES = {0, 0.05, 0.5, 0.95, 0.99, 1};
+
+  @Test
+  void quantilesAreWithinRelativeAccuracy() {
+    final Random random = new Random(1);
+    final float[] values = new float[10_000];
+    final QuantileSketch sketch = new QuantileSketch();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (float) (random.nextGaussian() * 20 + 5); // both signs
+      sketch.add(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double quantile : QUANTILES) {
+      final double exact = values[(int) (quantile * (values.length - 1))];
+      final double estimate = sketch.getQuantile(quantile);
+      assertTrue(Math.abs(estimate - exact) <= QuantileSketch.RELATIVE_ACCURACY * Math.abs(exact),
+          "q" + quantile + ": " + estimate + " instead of " + exact);
+    }
+  }
+
+  @Test
+  void mergedSketchEqualsSketchOfAllValues() {
+    final QuantileSketch all = new QuantileSketch();
+    final QuantileSketch merged = new QuantileSketch();
+    for (int part = 0; part < 24; part++) {
+      final QuantileSketch hour = new QuantileSketch();
+      for (int i = 0; i < 3600; i++) {
+        final float value = (float) (part * 0.1 + Math.sin(i / 100.0));
+        hour.add(value);
+        all.add(value);
+      }
+      merged.merge(hour);
+    }
+
+    for (double quantile : QUANTILES) {
+      assertEquals(all.getQuantile(quantile), merged.getQuantile(quantile));
+    }
+  }
+
+  @Test
+  void zerosTakeNoBins() {
+    final QuantileSketch sketch = new QuantileSketch();
+    for (int i = 0; i < 100; i++) {
+      sketch.add(i < 30 ? 0 : 50);
+    }
+
+    assertEquals(1, sketch.getBinsCount());
+    assertEquals(0, sketch.getQuantile(0.1));
+    assertEquals(0, sketch.getQuantile(0.29));
+    assertEquals(50, sketch.getQuantile(0.5), QuantileSketch.RELATIVE_ACCURACY * 50);
+  }
+
+  @Test
+  void rangeCrossingZeroKeepsBothSigns() {
+    final QuantileSketch sketch = new QuantileSketch();
+    sketch.add(-1000);
+    sketch.add(1000);
+    sketch.add(1000);
+    final QuantileSketch symmetric = new QuantileSketch();
+    symmetric.add(-20);
+    symmetric.add(20);
+
+    assertEquals(2, sketch.getBinsCount());
+    assertEquals(-1000, sketch.getQuantile(0.1), QuantileSketch.RELATIVE_ACCURACY * 1000);
+    assertEquals(1000, sketch.getQuantile(0.5), QuantileSketch.RELATIVE_ACCURACY * 1000);
+    assertEquals(2, symmetric.getBinsCount());
+    assertEquals(-20, symmetric.getQuantile(0.4), QuantileSketch.RELATIVE_ACCURACY * 20);
+  }
+
+  @Test
+  void wideRangeCollapsesLowestBins() {
+    final QuantileSketch sketch = new QuantileSketch();
+    for (int i = 0; i < 100; i++) {
+      sketch.add(1e-5f);
+    }
+    for (int i = 0; i < 900; i++) {
+      sketch.add((1000 + i) * 1e27f);
+    }
+
+    assertEquals(QuantileSketch.MAX_BINS, sketch.getBinsCount());
+    assertEquals(1e-5f, sketch.getQuantile(0), 0);
+    final double median = sketch.getQuantile(0.5);
+    assertTrue(Math.abs(median - 1399e27) <= QuantileSketch.RELATIVE_ACCURACY * 1399e27,
+        Double.toString(median));
+  }
+
+  @Test
+  void emptySketchHasNoQuantiles() {
+    final QuantileSketch sketch = new QuantileSketch();
+    sketch.add(Float.NaN);
+    assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.report.builder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import absaliks.logxl.log.Record;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RecordBufferTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2020, 3, 1, 23, 58, 30);
+  private static final long SMALL_BUDGET = 1000; // ~50 records of 21 bytes
+
+  @Test
+  void orderedRecordsAreSpilledAndReadBack() {
+    final List<Record> records = givenRecords(5000);
+    try (RecordBuffer buffer = new RecordBuffer(SMALL_BUDGET)) {
+      buffer.addAll(records);
+      buffer.finish();
+
+      assertEquals(records, buffer);
+      assertEquals(records.get(4321), buffer.get(4321));
+      assertEquals(records.get(7), buffer.get(7));
+    }
+  }
+
+  @Test
+  void overlappingSegmentsAreMerged() {
+    final List<Record> records = givenRecords(3000);
+    final List<Record> shuffled = new ArrayList<>(records);
+    Collections.shuffle(shuffled, new Random(42));
+    try (RecordBuffer buffer = new RecordBuffer(SMALL_BUDGET)) {
+      buffer.addAll(shuffled);
+      buffer.finish();
+
+      assertEquals(records, buffer);
+    }
+  }
+
+  @Test
+  void recordsFittingIntoMemoryAreSorted() {
+    final List<Record> records = givenRecords(10);
+    final List<Record> reversed = new ArrayList<>(records);
+    reversed.sort(Comparator.comparing((Record rec) -> rec.datetime).reversed());
+    try (RecordBuffer buffer = new RecordBuffer(RecordBuffer.DEFAULT_MEMORY_BUDGET)) {
+      buffer.addAll(reversed);
+      buffer.finish();
+
+      assertEquals(records, buffer);
+    }
+  }
+
+  private List<Record> givenRecords(int count) {
+    final List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Record rec = new Record();
+      rec.datetime = START.plusSeconds(i);
+      rec.values = new float[] {i % 60, -i * 0.25f};
+      rec.isHeatingCableOn = i % 3 == 0;
+      rec.isHeatingElementOn = i % 5 == 0;
+      records.add(rec);
+    }
+    return records;
+  }
+}
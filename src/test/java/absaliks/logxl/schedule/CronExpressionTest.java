@@ -0,0 +1,70 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+
+class CronExpressionTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2020, 3, 4, 10, 15, 42); // Wednesday
+
+  @Test
+  void dailyAtNight() {
+    final CronExpression cron = CronExpression.parse("30 3 * * *");
+    assertEquals(LocalDateTime.of(2020, 3, 5, 3, 30), cron.next(NOW));
+    assertEquals(LocalDateTime.of(2020, 3, 6, 3, 30), cron.next(cron.next(NOW)));
+  }
+
+  @Test
+  void weeklyOnMonday() {
+    assertEquals(LocalDateTime.of(2020, 3, 9, 4, 0),
+        CronExpression.parse("0 4 * * 1").next(NOW));
+    assertEquals(LocalDateTime.of(2020, 3, 8, 0, 0),
+        CronExpression.parse("0 0 * * 7").next(NOW));
+  }
+
+  @Test
+  void stepsRangesAndLists() {
+    assertEquals(LocalDateTime.of(2020, 3, 4, 10, 20),
+        CronExpression.parse("*/10 * * * *").next(NOW));
+    assertEquals(LocalDateTime.of(2020, 3, 4, 22, 5),
+        CronExpression.parse("5 0-6,22-23 * * *").next(NOW));
+    assertEquals(LocalDateTime.of(2020, 4, 1, 0, 0),
+        CronExpression.parse("0 0 1 1-12/3 *").next(NOW));
+  }
+
+  @Test
+  void eitherRestrictedDayMatches() {
+    // 15th of the month or any Friday
+    assertEquals(LocalDateTime.of(2020, 3, 6, 0, 0),
+        CronExpression.parse("0 0 15 * 5").next(NOW));
+  }
+
+  @Test
+  void malformedExpressionsAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 3 * *"));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("60 3 * * *"));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 x * * *"));
+    assertThrows(IllegalStateException.class,
+        () -> CronExpression.parse("0 0 31 2 *").next(NOW));
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import absaliks.logxl.report.ReportType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportSchedulerTest {
+
+  // a tenth of a second before the minute, so that a job of every minute is due at once
+  private static final LocalDateTime START = LocalDateTime.of(2020, 3, 4, 10, 0, 59, 900_000_000);
+
+  private static final Duration LATER = Duration.ofSeconds(30);
+
+  @TempDir
+  File tempDir;
+
+  private final TestClock clock = new TestClock(START, ZoneOffset.UTC);
+
+  @Test
+  void firingsMissedDuringLongRunAreSkipped() throws Exception {
+    final CountDownLatch secondRun = new CountDownLatch(2);
+    final ReportScheduler scheduler = givenScheduler(
+        Collections.singletonList(givenJob("minutely", "* * * * *")), (job, today) -> {
+          // 10:02, 10:03 and 10:04 are missed, after the second run nothing is due for a while
+          clock.advance(secondRun.getCount() == 2 ? Duration.ofMinutes(4) : LATER);
+          secondRun.countDown();
+        });
+
+    scheduler.start();
+    assertTrue(secondRun.await(5, TimeUnit.SECONDS));
+    scheduler.stop();
+    scheduler.awaitTermination();
+
+    assertEquals(Arrays.asList("2020-03-04T10:00:59\tminutely\tOK\t240",
+        "2020-03-04T10:04:59\tminutely\tOK\t30"), readHistory());
+  }
+
+  @Test
+  void jobsDueTogetherRunOneAtATime() throws Exception {
+    final CountDownLatch runs = new CountDownLatch(3);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final ReportScheduler scheduler = givenScheduler(Arrays.asList(givenJob("a", "* * * * *"),
+        givenJob("b", "* * * * *"), givenJob("c", "* * * * *")), (job, today) -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          sleep(100);
+          running.decrementAndGet();
+          runs.countDown();
+        });
+
+    scheduler.start();
+    assertTrue(runs.await(5, TimeUnit.SECONDS));
+    scheduler.stop();
+    scheduler.awaitTermination();
+
+    assertEquals(1, maxRunning.get());
+  }
+
+  @Test
+  void jobThatNeverFiresDoesNotStopOthers() throws Exception {
+    final CountDownLatch run = new CountDownLatch(1);
+    final ReportScheduler scheduler = givenScheduler(Arrays.asList(
+        givenJob("never", "0 0 31 2 *"), givenJob("minutely", "* * * * *")),
+        (job, today) -> {
+          clock.advance(LATER);
+          run.countDown();
+        });
+
+    scheduler.start();
+    assertTrue(run.await(5, TimeUnit.SECONDS));
+    scheduler.stop();
+    scheduler.awaitTermination();
+
+    assertEquals(Collections.singletonList("2020-03-04T10:00:59\tminutely\tOK\t30"),
+        readHistory());
+  }
+
+  @Test
+  void delayIsCountedAcrossDaylightSavingChange() throws Exception {
+    // clocks in Berlin go from 02:00 to 03:00, 03:00 is a tenth of a second away
+    final TestClock berlinClock = new TestClock(LocalDateTime.of(2020, 3, 29, 1, 59, 59,
+        900_000_000), ZoneId.of("Europe/Berlin"));
+    final CountDownLatch run = new CountDownLatch(1);
+    final ReportScheduler scheduler = givenScheduler(berlinClock,
+        Collections.singletonList(givenJob("night", "0 3 * * *")), (job, today) -> {
+          berlinClock.advance(LATER);
+          run.countDown();
+        });
+
+    scheduler.start();
+    assertTrue(run.await(5, TimeUnit.SECONDS));
+    scheduler.stop();
+    scheduler.awaitTermination();
+  }
+
+  interface Export {
+    void run(ScheduledJob job, LocalDate today) throws Exception;
+  }
+
+  private ReportScheduler givenScheduler(List<ScheduledJob> jobs, Export export) {
+    return givenScheduler(clock, jobs, export);
+  }
+
+  private ReportScheduler givenScheduler(Clock clock, List<ScheduledJob> jobs, Export export) {
+    return new ReportScheduler(null, jobs, clock, new File(tempDir, "schedule.lock"),
+        new File(tempDir, "history.log")) {
+      @Override
+      String export(ScheduledJob job, LocalDate today) throws IOException {
+        try {
+          export.run(job, today);
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+        return job.name;
+      }
+    };
+  }
+
+  private static ScheduledJob givenJob(String name, String cron) {
+    final ScheduledJob job = new ScheduledJob();
+    job.name = name;
+    job.cron = CronExpression.parse(cron);
+    job.reportTypes = Collections.singleton(ReportType.DAILY);
+    job.days = 1;
+    return job;
+  }
+
+  /**
+   * Start time, job name, status and duration of every run, without the details.
+   */
+  private List<String> readHistory() throws IOException {
+    return Files.readAllLines(new File(tempDir, "history.log").toPath()).stream()
+        .map(line -> String.join("\t", Arrays.asList(line.split("\t")).subList(0, 4)))
+        .collect(Collectors.toList());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class TestClock extends Clock {
+
+    private final ZoneId zone;
+    private volatile Instant instant;
+
+    TestClock(LocalDateTime start, ZoneId zone) {
+      this.zone = zone;
+      instant = start.atZone(zone).toInstant();
+    }
+
+    void advance(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package absaliks.logxl.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import absaliks.logxl.report.ReportType;
+import java.util.Collections;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+class ScheduleSerializerTest {
+
+  @Test
+  void jobIsParsed() {
+    final ScheduledJob job = ScheduleSerializer.parseJob(givenJob("30 3 * * *"), "daily");
+    assertEquals(Collections.singleton(ReportType.DAILY), job.reportTypes);
+    assertEquals(1, job.days);
+  }
+
+  @Test
+  void cronThatNeverFiresIsRejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> ScheduleSerializer.parseJob(givenJob("0 0 31 2 *"), "daily"));
+  }
+
+  private static Properties givenJob(String cron) {
+    final Properties properties = new Properties();
+    properties.setProperty("job.daily.cron", cron);
+    properties.setProperty("job.daily.reportTypes", "daily");
+    return properties;
+  }
+}
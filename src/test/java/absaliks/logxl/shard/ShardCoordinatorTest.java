@@ -0,0 +1,95 @@
+/*
+ * LogXL is a program that reads log files from FTP and exports in Excel
+ * Copyright (C) 2020  Shamil Absalikov
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package absaliks.logxl.shard;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import absaliks.logxl.log.Record;
+import absaliks.logxl.report.ReportType;
+import absaliks.logxl.report.builder.FanOutReportBuilder;
+import absaliks.logxl.report.builder.PartialReport;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+class ShardCoordinatorTest {
+
+  @Test
+  void filesAreSplitIntoContiguousParts() {
+    final List<String> files = asList("a", "b", "c", "d", "e", "f", "g");
+
+    assertEquals(asList(asList("a", "b"), asList("c", "d"), asList("e", "f", "g")),
+        ShardCoordinator.split(files, 3));
+    assertEquals(asList(singletonList("a"), singletonList("b")),
+        ShardCoordinator.split(files.subList(0, 2), 4));
+    assertEquals(singletonList(files), ShardCoordinator.split(files, 1));
+  }
+
+  @Test
+  void onlyTaskAndReportClassesAreRead() throws Exception {
+    final Properties settings = new Properties();
+    settings.setProperty("reportType", "HOURLY");
+    final ShardTask task = read(write(new ShardTask(settings, asList("a", "b"))),
+        ShardTask.SERIALIZED_CLASSES);
+    assertEquals(asList("a", "b"), task.files);
+
+    final Record rec = new Record();
+    rec.datetime = LocalDateTime.of(2020, 3, 1, 0, 0);
+    rec.values = new float[] {-1, 0, 1};
+    final FanOutReportBuilder builder = FanOutReportBuilder.partial(
+        EnumSet.of(ReportType.MINUTELY, ReportType.HOURLY), asList(50.0, 95.0));
+    builder.consume(singletonList(rec));
+    builder.flush();
+    final PartialReport report = builder.toPartialReport();
+    final PartialReport copy = read(write(report), PartialReport.getSerializedClasses());
+    assertEquals(report.getRecords(ReportType.HOURLY), copy.getRecords(ReportType.HOURLY));
+
+    assertThrows(InvalidClassException.class,
+        () -> read(write(new HashMap<>()), PartialReport.getSerializedClasses()));
+  }
+
+  private static byte[] write(Object object) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(object);
+    }
+    return bytes.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T read(byte[] bytes, List<String> classNames)
+      throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in =
+        new CheckedObjectInputStream(new ByteArrayInputStream(bytes), classNames)) {
+      return (T) in.readObject();
+    }
+  }
+}